@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest.benchmark;
+
+/**
+ * fact of the synthetic rules of {@link ListenerOverheadBenchmark}
+ */
+public class BenchmarkFact {
+	private String id;
+	private int bucket;
+	private int value;
+
+	public BenchmarkFact() {
+	}
+
+	public BenchmarkFact(String id, int bucket) {
+		this.id = id;
+		this.bucket = bucket;
+	}
+
+	public String getId() {
+		return id;
+	}
+	public void setId(String id) {
+		this.id = id;
+	}
+	public int getBucket() {
+		return bucket;
+	}
+	public void setBucket(int bucket) {
+		this.bucket = bucket;
+	}
+	public int getValue() {
+		return value;
+	}
+	public void setValue(int value) {
+		this.value = value;
+	}
+
+	@Override
+	public String toString() {
+		return "BenchmarkFact [id=" + id + ", bucket=" + bucket + ", value=" + value + "]";
+	}
+}
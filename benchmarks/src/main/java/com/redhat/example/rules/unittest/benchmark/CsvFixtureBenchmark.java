@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.example.rules.unittest.CsvTestHelper;
+import com.redhat.example.rules.unittest.ExpectedRecord;
+
+/**
+ * CsvFixtureBenchmark measures the CSV fixture layer of CsvTestHelper.<BR>
+ * <BR>
+ * the data sets are scaled from testdata/{scenario} by {@link ScaledFixture} to about {rows} input rows.<BR>
+ * - loadCsv / loadCsvIgnoreNull : the first IN file by {@link CsvTestHelper#loadCsv(String, Class, boolean)}<BR>
+ * - loadInputMap : all IN files with their parent / child relations<BR>
+ * - readExpectedCsv : the first EX file<BR>
+ * - assertExpectCSV : the first top level EX file checked with its own records<BR>
+ * - assertExpectCSVs : all EX files checked with their own records loaded by Files_self.csv<BR>
+ * <BR>
+ * run with "-prof gc" to see the allocation rate.<BR>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class CsvFixtureBenchmark {
+	@Param({ "parentChild2", "map2", "checkByIndex" })
+	public String scenario;
+
+	@Param({ "100", "10000", "1000000" })
+	public int rows;
+
+	private ScaledFixture fixture;
+
+	private String inFile;
+	private Class<?> inClass;
+
+	private String exFile;
+	private Class<?> exClass;
+	private Class<?> exKeyClass;
+
+	private String rootExFile;
+	private Class<?> rootExClass;
+	private boolean rootExCheckByIndex;
+	private List<?> rootActuals;
+
+	private List<String> rootExPaths = new ArrayList<String>();
+	private Map<String, List<?>> selfActualsMap;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		fixture = ScaledFixture.create("testdata/" + scenario + "/" + ScaledFixture.FILE_LIST, rows);
+		for (List<String> entry : fixture.getFiles()) {
+			String type = entry.get(0);
+			String file = fixture.getFile(entry.get(1));
+			Class<?> clazz = Class.forName(entry.get(2));
+			String path = entry.get(3);
+			Map<String, String> optionMap = CsvTestHelper.getOptionMap(entry.size() > 5 ? entry.get(5) : null);
+			if ("IN".equals(type) && inFile == null) {
+				inFile = file;
+				inClass = clazz;
+			} else if ("EX".equals(type)) {
+				if (exFile == null) {
+					exFile = file;
+					exClass = clazz;
+					String keyType = optionMap.get(CsvTestHelper.OPTION_KEY_TYPE);
+					exKeyClass = (keyType != null) ? Class.forName(keyType) : null;
+				}
+				if (path.indexOf('.') < 0) {
+					if (rootExFile == null) {
+						rootExFile = file;
+						rootExClass = clazz;
+						rootExCheckByIndex = "true".equalsIgnoreCase(optionMap.get(CsvTestHelper.OPTION_CHECK_BY_INDEX));
+					}
+					rootExPaths.add(path);
+				}
+			}
+		}
+		rootActuals = CsvTestHelper.loadCsv(rootExFile, rootExClass, false);
+		selfActualsMap = CsvTestHelper.loadInputMap(fixture.getSelfFileList());
+	}
+
+	@Benchmark
+	public List<?> loadCsv() {
+		return CsvTestHelper.loadCsv(inFile, inClass, false);
+	}
+
+	@Benchmark
+	public List<?> loadCsvIgnoreNull() {
+		return CsvTestHelper.loadCsv(inFile, inClass, true);
+	}
+
+	@Benchmark
+	public Map<String, List<?>> loadInputMap() {
+		return CsvTestHelper.loadInputMap(fixture.getFileList());
+	}
+
+	@Benchmark
+	public List<ExpectedRecord> readExpectedCsv() {
+		return CsvTestHelper.readExpectedCsv(exFile, exClass, exKeyClass);
+	}
+
+	@Benchmark
+	public Integer[] assertExpectCSV() {
+		return CsvTestHelper.assertExpectCSV(rootActuals, rootExFile, rootExClass, null, rootExCheckByIndex);
+	}
+
+	@Benchmark
+	public void assertExpectCSVs() {
+		for (String path : rootExPaths) {
+			CsvTestHelper.assertExpectCSVs(selfActualsMap.get(path), fixture.getFileList(), path);
+		}
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.api.builder.ReleaseId;
+import org.kie.api.command.Command;
+import org.kie.api.command.KieCommands;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.StatelessKieSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.example.rules.unittest.CsvTestHelper;
+import com.redhat.example.rules.unittest.RuleCoverageLogger;
+import com.redhat.example.rules.unittest.RuleExecutionLogger;
+import com.redhat.example.rules.unittest.RuleFactWatcher;
+import com.redhat.example.rules.unittest.RuleflowTestHelper;
+
+/**
+ * ListenerOverheadBenchmark measures the cost of the listeners per rule activation.<BR>
+ * <BR>
+ * a KieBase of synthetic rules is built in memory: a ruleflow of {@value #GROUPS} ruleflow-groups,<BR>
+ * {@value #RULES} rules in each group, and each of {@value #FACTS} facts activates one rule of each group,<BR>
+ * so an operation fires exactly {@value #ACTIVATIONS} activations.<BR>
+ * <BR>
+ * - listeners : none, coverage (RuleCoverageLogger), execution (RuleExecutionLogger),<BR>
+ *   watcher (RuleFactWatcher), ruleflow (RuleflowTestHelper) or all of them<BR>
+ * - session : stateful (KieSession) or stateless (StatelessKieSession)<BR>
+ * - debugLog : debug level of the tool, the messages are created but not written<BR>
+ * <BR>
+ * the score is ns/activation, "-prof gc" reports gc.alloc.rate.norm as bytes/activation.<BR>
+ * the cost of a listener is the difference from "none".<BR>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class ListenerOverheadBenchmark {
+	static final int FACTS = 1000;
+	static final int GROUPS = 4;
+	static final int RULES = 10;
+	static final int ACTIVATIONS = FACTS * GROUPS;
+
+	private static final String PACKAGE = "com.redhat.example.rules.unittest.benchmark";
+	private static final String RULE_FLOW = PACKAGE + ".flow";
+	private static final String FIXTURE_FOLDER = "target/benchmark-fixtures/listener";
+
+	@Param({ "none", "coverage", "execution", "watcher", "ruleflow", "all" })
+	public String listeners;
+
+	@Param({ "stateful", "stateless" })
+	public String session;
+
+	@Param({ "false", "true" })
+	public boolean debugLog;
+
+	private KieBase kieBase;
+	private KieCommands kieCommands;
+	private StatelessKieSession statelessSession;
+	private RuleCoverageLogger ruleCoverageLogger;
+	private RuleExecutionLogger ruleExecutionLogger;
+	private RuleFactWatcher ruleFactWatcher;
+	private List<BenchmarkFact> facts;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		((ch.qos.logback.classic.Logger)LoggerFactory.getLogger("com.redhat.example.rules.unittest")).setLevel(
+				debugLog ? ch.qos.logback.classic.Level.DEBUG : ch.qos.logback.classic.Level.INFO);
+		KieServices ks = KieServices.Factory.get();
+		kieBase = buildKieBase(ks);
+		kieCommands = ks.getCommands();
+		if (has("coverage")) {
+			ruleCoverageLogger = new RuleCoverageLogger();
+		}
+		if (has("execution")) {
+			ruleExecutionLogger = new RuleExecutionLogger();
+		}
+		if (has("watcher")) {
+			ruleFactWatcher = CsvTestHelper.createRuleFactWatcher(writeExpectedCsv(), BenchmarkFact.class);
+		}
+		if ("stateless".equals(session)) {
+			statelessSession = kieBase.newStatelessKieSession();
+			if (ruleCoverageLogger != null) {
+				ruleCoverageLogger.setSession(statelessSession);
+			}
+			if (ruleExecutionLogger != null) {
+				statelessSession.addEventListener(ruleExecutionLogger);
+			}
+			if (has("ruleflow")) {
+				RuleflowTestHelper.setSkipAfterRuleGroup(statelessSession, lastGroup());
+			}
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void setUpFacts() {
+		facts = new ArrayList<BenchmarkFact>(FACTS);
+		for (int i = 0; i < FACTS; i++) {
+			facts.add(new BenchmarkFact("f" + i, i % RULES));
+		}
+		if (ruleFactWatcher != null && statelessSession != null) {
+			// forget the facts of the previous invocation
+			ruleFactWatcher.resetRuntime();
+			ruleFactWatcher.setRuntime(statelessSession);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ACTIVATIONS)
+	public int execute() {
+		if (statelessSession != null) {
+			List<Command<?>> cmds = new ArrayList<Command<?>>();
+			cmds.add(kieCommands.newInsertElements(facts));
+			cmds.add(kieCommands.newStartProcess(RULE_FLOW));
+			cmds.add(kieCommands.newFireAllRules());
+			statelessSession.execute(kieCommands.newBatchExecution(cmds));
+			return facts.get(FACTS - 1).getValue();
+		}
+		KieSession kieSession = kieBase.newKieSession();
+		try {
+			if (ruleCoverageLogger != null) {
+				ruleCoverageLogger.setSession(kieSession);
+			}
+			if (ruleExecutionLogger != null) {
+				kieSession.addEventListener(ruleExecutionLogger);
+			}
+			if (ruleFactWatcher != null) {
+				ruleFactWatcher.setRuntime(kieSession);
+			}
+			if (has("ruleflow")) {
+				RuleflowTestHelper.setSkipAfterRuleGroup(kieSession, lastGroup());
+			}
+			for (BenchmarkFact fact : facts) {
+				kieSession.insert(fact);
+			}
+			kieSession.startProcess(RULE_FLOW);
+			return kieSession.fireAllRules();
+		} finally {
+			if (ruleFactWatcher != null) {
+				ruleFactWatcher.resetRuntime();
+			}
+			kieSession.dispose();
+		}
+	}
+
+	private boolean has(String listener) {
+		return listeners.equals(listener) || listeners.equals("all");
+	}
+
+	private static String lastGroup() {
+		return "group_" + (GROUPS - 1);
+	}
+
+	/**
+	 * build the KieBase of the synthetic rules and ruleflow
+	 */
+	static KieBase buildKieBase(KieServices ks) {
+		ReleaseId releaseId = ks.newReleaseId("com.redhat.example", "rules-unitTest-benchmark-rules", "1.0.0");
+		KieFileSystem kfs = ks.newKieFileSystem();
+		kfs.generateAndWritePomXML(releaseId);
+		kfs.write("src/main/resources/" + PACKAGE.replace('.', '/') + "/Benchmark.drl", createDrl());
+		kfs.write("src/main/resources/" + PACKAGE.replace('.', '/') + "/Benchmark.bpmn2", createRuleFlow());
+		KieBuilder kieBuilder = ks.newKieBuilder(kfs).buildAll();
+		if (kieBuilder.getResults().hasMessages(Message.Level.ERROR)) {
+			throw new IllegalStateException("fail to build the rules: " + kieBuilder.getResults().getMessages());
+		}
+		return ks.newKieContainer(releaseId).getKieBase();
+	}
+
+	private static String createDrl() {
+		StringBuilder drl = new StringBuilder();
+		drl.append("package ").append(PACKAGE).append(";\n\n");
+		for (int g = 0; g < GROUPS; g++) {
+			for (int r = 0; r < RULES; r++) {
+				drl.append("rule \"rule_").append(g).append('_').append(r).append("\"\n");
+				drl.append("\truleflow-group \"group_").append(g).append("\"\n");
+				drl.append("\twhen\n");
+				drl.append("\t\t$f : BenchmarkFact(bucket == ").append(r).append(")\n");
+				drl.append("\tthen\n");
+				drl.append("\t\t$f.setValue($f.getValue() + 1);\n");
+				drl.append("end\n\n");
+			}
+		}
+		return drl.toString();
+	}
+
+	private static String createRuleFlow() {
+		StringBuilder bpmn = new StringBuilder();
+		bpmn.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		bpmn.append("<definitions id=\"Definition\" targetNamespace=\"http://www.jboss.org/drools\"")
+			.append(" typeLanguage=\"http://www.java.com/javaTypes\" expressionLanguage=\"http://www.mvel.org/2.0\"")
+			.append(" xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\"")
+			.append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"")
+			.append(" xmlns:g=\"http://www.jboss.org/drools/flow/gpd\"")
+			.append(" xmlns:tns=\"http://www.jboss.org/drools\">\n");
+		bpmn.append("  <process processType=\"Private\" isExecutable=\"true\" id=\"").append(RULE_FLOW)
+			.append("\" name=\"flow\" tns:packageName=\"").append(PACKAGE).append("\">\n");
+		bpmn.append("    <startEvent id=\"_start\" name=\"Start\" />\n");
+		String previous = "_start";
+		for (int g = 0; g < GROUPS; g++) {
+			String id = "_group_" + g;
+			bpmn.append("    <businessRuleTask id=\"").append(id).append("\" name=\"group_").append(g)
+				.append("\" g:ruleFlowGroup=\"group_").append(g).append("\" />\n");
+			bpmn.append("    <sequenceFlow id=\"").append(previous).append('-').append(id)
+				.append("\" sourceRef=\"").append(previous).append("\" targetRef=\"").append(id).append("\" />\n");
+			previous = id;
+		}
+		bpmn.append("    <endEvent id=\"_end\" name=\"End\"><terminateEventDefinition /></endEvent>\n");
+		bpmn.append("    <sequenceFlow id=\"").append(previous).append("-_end\" sourceRef=\"").append(previous)
+			.append("\" targetRef=\"_end\" />\n");
+		bpmn.append("  </process>\n");
+		bpmn.append("</definitions>\n");
+		return bpmn.toString();
+	}
+
+	/**
+	 * write the expected values of all facts for RuleFactWatcher
+	 * @return the expected CSV file
+	 */
+	private static String writeExpectedCsv() throws IOException {
+		File folder = new File(FIXTURE_FOLDER);
+		folder.mkdirs();
+		try (Writer writer = new OutputStreamWriter(
+				new FileOutputStream(new File(folder, "BenchmarkFact.def")), CsvTestHelper.FILE_ENCODING)) {
+			writer.write("columnName,option,format,testPK,testSkip\n");
+			writer.write("id,,,Y,Y\n");
+			writer.write("value,,,,\n");
+		}
+		File csv = new File(folder, "ex_BenchmarkFact_1.csv");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(csv), CsvTestHelper.FILE_ENCODING)) {
+			writer.write("id,value\n");
+			for (int i = 0; i < FACTS; i++) {
+				writer.write("f" + i + "," + GROUPS + "\n");
+			}
+		}
+		return csv.getPath();
+	}
+}
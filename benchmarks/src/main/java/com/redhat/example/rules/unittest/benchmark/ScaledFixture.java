@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.prefs.CsvPreference;
+
+import com.redhat.example.rules.unittest.CsvFixtureGenerator;
+import com.redhat.example.rules.unittest.CsvTestHelper;
+
+/**
+ * ScaledFixture creates a large test data set by replicating a seed test data set (Files_*.csv).<BR>
+ * <BR>
+ * - every IN / EX file is replicated "factor" times by {@link CsvFixtureGenerator}, so the shape of the seed<BR>
+ *   (parent / child fan-out, map entries, lists checked by index) is kept.<BR>
+ * - Files_1.csv lists the files as the seed. Files_self.csv lists the EX files also as IN,<BR>
+ *   so the expected records can be loaded as the actual records.<BR>
+ * - the data set is created under target/benchmark-fixtures once, and reused by the next runs.<BR>
+ *   set "-Drules.unittest.benchmark.regenerate=true" to create it again.<BR>
+ */
+public class ScaledFixture {
+	public static final String FILE_LIST = "Files_1.csv";
+	public static final String SELF_FILE_LIST = "Files_self.csv";
+
+	private static final String FIXTURE_ROOT = "target/benchmark-fixtures";
+	private static final String COMPLETED = ".completed";
+	private static final String[] FILE_LIST_HEADER = { "type", "file", "clazz", "path", "parentAtr", "options" };
+
+	private final File folder;
+	private final int factor;
+
+	private ScaledFixture(File folder, int factor) {
+		this.folder = folder;
+		this.factor = factor;
+	}
+
+	/**
+	 * create (or reuse) a scaled data set.
+	 * @param seedFileList Files_*.csv of the seed data set
+	 * @param rows number of the input rows of the scaled data set (at least one copy of the seed)
+	 * @return the scaled data set
+	 */
+	public static ScaledFixture create(String seedFileList, int rows) throws IOException {
+		File seedFolder = new File(seedFileList).getAbsoluteFile().getParentFile();
+		// count the input rows of the seed
+		int seedRows = 0;
+		for (List<String> entry : readCsv(new File(seedFileList))) {
+			if ("IN".equals(entry.get(0))) {
+				seedRows += readCsv(new File(seedFolder, entry.get(1))).size();
+			}
+		}
+		int factor = Math.max(1, (int)Math.round((double)rows / Math.max(seedRows, 1)));
+		File folder = new File(FIXTURE_ROOT, seedFolder.getName() + "_" + rows);
+		ScaledFixture fixture = new ScaledFixture(folder, factor);
+		if (Boolean.getBoolean("rules.unittest.benchmark.regenerate") || !new File(folder, COMPLETED).exists()) {
+			fixture.generate(seedFileList);
+		}
+		return fixture;
+	}
+
+	private void generate(String seedFileList) throws IOException {
+		folder.mkdirs();
+		new File(folder, COMPLETED).delete();
+		File fileList = new File(new CsvFixtureGenerator(seedFileList)
+				.setCopies(factor).setExpected(true).generate(folder.getPath()));
+		if (!fileList.getName().equals(FILE_LIST)) {
+			Files.move(fileList.toPath(), new File(folder, FILE_LIST).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		List<List<String>> selfList = new ArrayList<List<String>>();
+		for (List<String> entry : getFiles()) {
+			if ("EX".equals(entry.get(0))) {
+				List<String> self = new ArrayList<String>(entry);
+				self.set(0, "IN");
+				selfList.add(self);
+			}
+		}
+		writeCsv(new File(folder, SELF_FILE_LIST), selfList);
+		new File(folder, COMPLETED).createNewFile();
+	}
+
+	private static List<List<String>> readCsv(File file) throws IOException {
+		List<List<String>> rows = new ArrayList<List<String>>();
+		try (CsvListReader reader = new CsvListReader(new InputStreamReader(
+				new FileInputStream(file), CsvTestHelper.FILE_ENCODING), CsvPreference.STANDARD_PREFERENCE)) {
+			reader.getHeader(true);
+			List<String> row;
+			while ((row = reader.read()) != null) {
+				rows.add(new ArrayList<String>(row));
+			}
+		}
+		return rows;
+	}
+
+	private static void writeCsv(File file, List<List<String>> rows) throws IOException {
+		try (CsvListWriter writer = new CsvListWriter(new OutputStreamWriter(
+				new FileOutputStream(file), CsvTestHelper.FILE_ENCODING), CsvPreference.STANDARD_PREFERENCE)) {
+			writer.writeHeader(FILE_LIST_HEADER);
+			for (List<String> row : rows) {
+				writer.write(row);
+			}
+		}
+	}
+
+	/**
+	 * @return path of Files_1.csv of the scaled data set
+	 */
+	public String getFileList() {
+		return new File(folder, FILE_LIST).getPath();
+	}
+
+	/**
+	 * @return path of Files_self.csv (the EX files listed as IN) of the scaled data set
+	 */
+	public String getSelfFileList() {
+		return new File(folder, SELF_FILE_LIST).getPath();
+	}
+
+	/**
+	 * @param fileName a file of the seed data set
+	 * @return path of the file in the scaled data set
+	 */
+	public String getFile(String fileName) {
+		return new File(folder, fileName).getPath();
+	}
+
+	/**
+	 * @return number of the copies of the seed
+	 */
+	public int getFactor() {
+		return factor;
+	}
+
+	/**
+	 * @return (type, file, clazz, path, parentAtr, options) of the files of the data set
+	 */
+	public List<List<String>> getFiles() throws IOException {
+		return readCsv(new File(getFileList()));
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import org.supercsv.cellprocessor.ift.CellProcessor;
+import org.supercsv.exception.SuperCsvException;
+import org.supercsv.util.CsvContext;
+
+/**
+ * BeanBinder populates a bean of the fact class directly from the cells of a CSV row.<BR>
+ * It is created once per (fact class, .def file) pair and replaces the Dozer mapping of CsvDozerBeanReader:<BR>
+ * - the constructor and the setters are resolved to MethodHandles in advance.<BR>
+ * - the converter of each column (String -> property type) is chosen in advance.<BR>
+ * - ignoreNull is applied while binding, empty cells are not set and the default values of the bean are kept.<BR>
+ * <BR>
+ * {@link #create(Class, String[], CellProcessor[])} returns null if a column can't be bound without Dozer<BR>
+ * (nested attributes such as "child.name", attributes without setters, unknown property types).
+ */
+public class BeanBinder<T> {
+	private final Class<T> clazz;
+	private final MethodHandle constructor;
+	private final CellProcessor[] processors;
+	private final Column[] columns;
+
+	private BeanBinder(Class<T> clazz, MethodHandle constructor, CellProcessor[] processors, Column[] columns) {
+		this.clazz = clazz;
+		this.constructor = constructor;
+		this.processors = processors;
+		this.columns = columns;
+	}
+
+	/**
+	 * create a binder for the class.
+	 * @param clazz the fact class
+	 * @param fieldMapping attribute names of the columns, null for meta columns
+	 * @param processors cell processors of the columns
+	 * @return the binder, null if the class or a column is not supported
+	 */
+	public static <T> BeanBinder<T> create(Class<T> clazz, String[] fieldMapping, CellProcessor[] processors) {
+		MethodHandle constructor;
+		try {
+			constructor = MethodHandles.publicLookup().findConstructor(clazz, MethodType.methodType(void.class))
+					.asType(MethodType.methodType(Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+		Column[] columns = new Column[fieldMapping.length];
+		for (int i = 0; i < fieldMapping.length; i++) {
+			String name = fieldMapping[i];
+			if (name == null) {
+				continue;
+			}
+			if (name.indexOf('.') != -1 || name.indexOf('[') != -1 || name.indexOf('(') != -1) {
+				return null;
+			}
+			MethodHandle setter = PropertyAccessors.getSetter(clazz, name);
+			Class<?> type = PropertyAccessors.getPropertyType(clazz, name);
+			Function<Object, Object> converter = (type != null) ? createConverter(type) : null;
+			if (setter == null || converter == null) {
+				return null;
+			}
+			columns[i] = new Column(name, setter, converter, type.isPrimitive());
+		}
+		return new BeanBinder<T>(clazz, constructor, processors, columns);
+	}
+
+	/**
+	 * @return the fact class
+	 */
+	public Class<T> getBeanClass() {
+		return clazz;
+	}
+
+	/**
+	 * create a bean from the cells of a row.
+	 * @param row raw cells of the row (null for empty cells)
+	 * @param lineNumber line number of the row in the file
+	 * @param rowNumber row number of the row in the file
+	 * @param ignoreNull true -> empty cells are not set into the bean
+	 * @return the bean
+	 */
+	@SuppressWarnings("unchecked")
+	public T bind(List<String> row, int lineNumber, int rowNumber, boolean ignoreNull) {
+		if (row.size() != processors.length) {
+			throw new SuperCsvException("the number of columns to be processed (" + row.size()
+					+ ") must match the number of CellProcessors (" + processors.length + ")",
+					new CsvContext(lineNumber, rowNumber, 1));
+		}
+		T bean;
+		try {
+			bean = (T)constructor.invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("fail to create instance: " + clazz.getName(), t);
+		}
+		CsvContext context = null;
+		for (int i = 0; i < processors.length; i++) {
+			String raw = row.get(i);
+			Object value = raw;
+			if (processors[i] != null) {
+				if (context == null) {
+					context = new CsvContext(lineNumber, rowNumber, i + 1);
+				} else {
+					context.setColumnNumber(i + 1);
+				}
+				value = processors[i].execute(raw, context);
+			}
+			Column column = columns[i];
+			if (column == null || (ignoreNull && raw == null)) {
+				continue;
+			}
+			column.set(bean, value);
+		}
+		return bean;
+	}
+
+	/**
+	 * create the converter of a cell value (String or Date) to the property type.
+	 * @param type property type
+	 * @return the converter, null if the type is not supported
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Function<Object, Object> createConverter(Class<?> type) {
+		if (type == String.class || type == Object.class) {
+			return v -> v;
+		} else if (type == Integer.class || type == int.class) {
+			return v -> (v instanceof String) ? Integer.valueOf(((String)v).trim()) : v;
+		} else if (type == Long.class || type == long.class) {
+			return v -> (v instanceof String) ? Long.valueOf(((String)v).trim()) : v;
+		} else if (type == Short.class || type == short.class) {
+			return v -> (v instanceof String) ? Short.valueOf(((String)v).trim()) : v;
+		} else if (type == Byte.class || type == byte.class) {
+			return v -> (v instanceof String) ? Byte.valueOf(((String)v).trim()) : v;
+		} else if (type == Double.class || type == double.class) {
+			return v -> (v instanceof String) ? Double.valueOf(((String)v).trim()) : v;
+		} else if (type == Float.class || type == float.class) {
+			return v -> (v instanceof String) ? Float.valueOf(((String)v).trim()) : v;
+		} else if (type == BigDecimal.class) {
+			return v -> (v instanceof String) ? new BigDecimal(((String)v).trim()) : v;
+		} else if (type == BigInteger.class) {
+			return v -> (v instanceof String) ? new BigInteger(((String)v).trim()) : v;
+		} else if (type == Boolean.class || type == boolean.class) {
+			return v -> (v instanceof String) ? parseBoolean((String)v) : v;
+		} else if (type == Character.class || type == char.class) {
+			return v -> (v instanceof String && ((String)v).length() > 0) ? ((String)v).charAt(0) : v;
+		} else if (type.isEnum()) {
+			Class<? extends Enum> enumType = (Class<? extends Enum>)type;
+			return v -> (v instanceof String) ? Enum.valueOf(enumType, ((String)v).trim()) : v;
+		} else if (Date.class.isAssignableFrom(type)) {
+			// the date option of .def file parses the value into Date
+			return v -> v;
+		}
+		return null;
+	}
+
+	private static Boolean parseBoolean(String value) {
+		String v = value.trim().toLowerCase();
+		if (v.equals("true") || v.equals("yes") || v.equals("y") || v.equals("on") || v.equals("1")) {
+			return Boolean.TRUE;
+		} else if (v.equals("false") || v.equals("no") || v.equals("n") || v.equals("off") || v.equals("0")) {
+			return Boolean.FALSE;
+		}
+		throw new IllegalArgumentException("Can't convert value '" + value + "' to a Boolean");
+	}
+
+	/**
+	 * a column bound to a property
+	 */
+	private static class Column {
+		final String name;
+		final MethodHandle setter;
+		final Function<Object, Object> converter;
+		final boolean primitive;
+
+		Column(String name, MethodHandle setter, Function<Object, Object> converter, boolean primitive) {
+			this.name = name;
+			this.setter = setter;
+			this.converter = converter;
+			this.primitive = primitive;
+		}
+
+		void set(Object bean, Object value) {
+			Object converted = (value != null) ? converter.apply(value) : null;
+			if (converted == null && primitive) {
+				// same as Dozer, null is not set into primitive attributes
+				return;
+			}
+			try {
+				setter.invokeExact(bean, converted);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException("fail to set attribute: " + name, t);
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.supercsv.cellprocessor.ift.CellProcessor;
+
+import com.redhat.example.rules.unittest.CsvTestHelper.CsvColumnDef;
+
+/**
+ * CompiledColumnDef is a column definition file (.def) which is parsed once<BR>
+ * with everything CsvTestHelper derives from it (field mapping, cell processors, testPK / testSkip flags).<BR>
+ * <BR>
+ * Compiled definitions are cached process-wide by the canonical path of the .def file<BR>
+ * and compiled again when the modification time of the file is changed.<BR>
+ * Arrays and collections held by an instance are shared, callers must not modify them.
+ */
+public class CompiledColumnDef {
+	private static final Logger logger = LoggerFactory.getLogger(CompiledColumnDef.class);
+
+	/**
+	 * cache of canonical path of .def file -> compiled definition
+	 */
+	private static final Map<String, CompiledColumnDef> cache =
+			new ConcurrentHashMap<String, CompiledColumnDef>();
+
+	private final String path;
+	private final long lastModified;
+	private final List<CsvColumnDef> columnDefs;
+	private final String[] fileMapping;
+	private final CellProcessor[] readProcessors;
+	private final CellProcessor[] writeProcessors;
+	private final Map<String, Boolean> testPKMap;
+	private final Map<String, Boolean> testSkipMap;
+	private final List<String> testPKColumns;
+	/**
+	 * fact class -> bean binder (Optional.empty() if the class needs Dozer)
+	 */
+	private final Map<Class<?>, Optional<BeanBinder<?>>> binders =
+			new ConcurrentHashMap<Class<?>, Optional<BeanBinder<?>>>();
+
+	private CompiledColumnDef(String path, long lastModified, List<CsvColumnDef> columnDefs) {
+		this.path = path;
+		this.lastModified = lastModified;
+		this.columnDefs = Collections.unmodifiableList(columnDefs);
+		this.fileMapping = CsvTestHelper.createFileMappingForBean(columnDefs);
+		this.readProcessors = CsvTestHelper.createCellProcessorArray(columnDefs, true);
+		this.writeProcessors = CsvTestHelper.createCellProcessorArray(columnDefs, false);
+		this.testPKMap = Collections.unmodifiableMap(CsvTestHelper.createTestPKMap(columnDefs));
+		this.testSkipMap = Collections.unmodifiableMap(CsvTestHelper.createTestSkipMap(columnDefs));
+		List<String> pkColumns = new ArrayList<String>();
+		for (Map.Entry<String, Boolean> entry : testPKMap.entrySet()) {
+			if (entry.getValue()) {
+				pkColumns.add(entry.getKey());
+			}
+		}
+		this.testPKColumns = Collections.unmodifiableList(pkColumns);
+	}
+
+	/**
+	 * get the compiled column definition for the class.
+	 *
+	 * @param fileName file name of the target. (only use its folder information)
+	 * @param className class name of the POJO.
+	 * @return compiled column definition (cached)
+	 */
+	public static CompiledColumnDef get(String fileName, String className) {
+		String defPath = null;
+		try {
+			defPath = new File(new File(fileName).getParentFile(), className + CsvTestHelper.DEFINITION_FILE_EXT).getCanonicalPath();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("fail at access: " + className + CsvTestHelper.DEFINITION_FILE_EXT);
+		}
+		long lastModified = new File(defPath).lastModified();
+		CompiledColumnDef compiled = cache.get(defPath);
+		if (compiled == null || compiled.lastModified != lastModified) {
+			logger.debug("compiling column definition: {}", defPath);
+			compiled = new CompiledColumnDef(defPath, lastModified, CsvTestHelper.readColumnDef(defPath));
+			cache.put(defPath, compiled);
+		}
+		return compiled;
+	}
+
+	/**
+	 * invalidate the cached definition of a .def file.
+	 * @param defFileName file name of the .def file
+	 */
+	public static void invalidate(String defFileName) {
+		try {
+			cache.remove(new File(defFileName).getCanonicalPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * clear all cached definitions.
+	 */
+	public static void clearCache() {
+		cache.clear();
+	}
+
+	/**
+	 * @return canonical path of the .def file
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return list of column definitions
+	 */
+	public List<CsvColumnDef> getColumnDefs() {
+		return columnDefs;
+	}
+
+	/**
+	 * @return field mapping for beans, null for meta columns
+	 */
+	String[] getFileMapping() {
+		return fileMapping;
+	}
+
+	/**
+	 * @return cell processors to read CSV files
+	 */
+	CellProcessor[] getReadProcessors() {
+		return readProcessors;
+	}
+
+	/**
+	 * @return cell processors to write CSV files
+	 */
+	CellProcessor[] getWriteProcessors() {
+		return writeProcessors;
+	}
+
+	/**
+	 * get the bean binder of the fact class for this definition.
+	 * @param clazz the fact class
+	 * @return the binder (created once per class), null if the class must be loaded by Dozer
+	 */
+	@SuppressWarnings("unchecked")
+	<T> BeanBinder<T> getBinder(Class<T> clazz) {
+		Optional<BeanBinder<?>> binder = binders.get(clazz);
+		if (binder == null) {
+			binder = Optional.<BeanBinder<?>>ofNullable(BeanBinder.create(clazz, fileMapping, readProcessors));
+			if (!binder.isPresent()) {
+				logger.debug("no bean binder for {}, use Dozer", clazz.getName());
+			}
+			binders.put(clazz, binder);
+		}
+		return (BeanBinder<T>)binder.orElse(null);
+	}
+
+	/**
+	 * @return map of column name -> testPK flag
+	 */
+	public Map<String, Boolean> getTestPKMap() {
+		return testPKMap;
+	}
+
+	/**
+	 * @return map of column name -> testSkip flag
+	 */
+	public Map<String, Boolean> getTestSkipMap() {
+		return testSkipMap;
+	}
+
+	/**
+	 * @return column names of testPK columns in the order of the .def file
+	 */
+	public List<String> getTestPKColumns() {
+		return testPKColumns;
+	}
+}
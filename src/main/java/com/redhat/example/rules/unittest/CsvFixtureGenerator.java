@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.prefs.CsvPreference;
+
+import com.redhat.example.rules.unittest.CsvTestHelper.CsvFiles;
+import com.redhat.example.rules.unittest.CsvTestHelper.TestFileType;
+
+/**
+ * CsvFixtureGenerator generates large input files (in_*.csv) from a small seed test data set (Files_*.csv).<BR>
+ * <BR>
+ * - the rows of a top level path are the rows of the seed file repeated up to the specified row count,<BR>
+ *   or the specified copies of the rows of the seed file.<BR>
+ * - each generated parent row has the children of its seed row, so the parent# fan-out of the seed is kept.<BR>
+ *   key# and type# columns of Map type files are copied, so the keys of a map stay unique.<BR>
+ * - the last testPK column (in the .def file) of bean classes is suffixed by the copy number ("_N")<BR>
+ *   from the second copy of the seed, so the testPK values stay unique.<BR>
+ * - rows are written one by one, only the seed files are kept in memory.<BR>
+ * - the .def files are copied, and the CSV file list lists the generated files.<BR>
+ * - the expected files (ex_*.csv) are generated in the same way by setExpected(true).<BR>
+ *   use setCopies() with them, so the copy N of an expected record is the copy N of the input record.<BR>
+ * <BR>
+ * <pre>
+ *   String fileList = new CsvFixtureGenerator("testdata/parentChild2/Files_1.csv")
+ *           .setRows(1000000).generate("target/fixtures/parentChild2");
+ *   Map&lt;String, List&lt;?&gt;&gt; inputMap = CsvTestHelper.loadInputMap(fileList);
+ * </pre>
+ * or "java com.redhat.example.rules.unittest.CsvFixtureGenerator seedFileList outputFolder rows".<BR>
+ */
+public class CsvFixtureGenerator {
+	private static final Logger logger = LoggerFactory.getLogger(CsvFixtureGenerator.class);
+
+	private static final String PARENT_ROW = "parent#";
+	private static final String[] FILE_LIST_HEADER = { "type", "file", "clazz", "path", "parentAtr", "options" };
+
+	private final String seedFileListCsvPath;
+	private long rows = 0;
+	private int copies = 0;
+	private boolean expected = false;
+	private final Map<String, Long> rowsMap = new HashMap<String, Long>();
+
+	/**
+	 * @param seedFileListCsvPath CSV file list (Files_*.csv) of the seed test data set
+	 */
+	public CsvFixtureGenerator(String seedFileListCsvPath) {
+		this.seedFileListCsvPath = seedFileListCsvPath;
+	}
+
+	/**
+	 * @param rows rows of each top level path, 0 for the rows of the seed (default)
+	 */
+	public CsvFixtureGenerator setRows(long rows) {
+		this.rows = rows;
+		return this;
+	}
+
+	/**
+	 * @param path a top level path in the CSV file list
+	 * @param rows rows of the path
+	 */
+	public CsvFixtureGenerator setRows(String path, long rows) {
+		rowsMap.put(path, rows);
+		return this;
+	}
+
+	/**
+	 * @param copies copies of the seed rows of each top level path, 0 to use the rows (default)
+	 */
+	public CsvFixtureGenerator setCopies(int copies) {
+		this.copies = copies;
+		return this;
+	}
+
+	/**
+	 * @param expected true to generate the expected files (EX) also, false for the input files only (default)
+	 */
+	public CsvFixtureGenerator setExpected(boolean expected) {
+		this.expected = expected;
+		return this;
+	}
+
+	/**
+	 * generate the input files, the column definitions and the CSV file list into the folder.
+	 * @param outputFolder folder of the generated files
+	 * @return path of the generated CSV file list
+	 */
+	public String generate(String outputFolder) {
+		File seedFolder = new File(seedFileListCsvPath).getAbsoluteFile().getParentFile();
+		File folder = new File(outputFolder);
+		folder.mkdirs();
+		List<CsvFiles> csvFiles = new ArrayList<CsvFiles>();
+		for (CsvFiles csvFile : CsvTestHelper.readCsvListFiles(seedFileListCsvPath)) {
+			if (csvFile.getType() == TestFileType.IN || (expected && csvFile.getType() == TestFileType.EX)) {
+				csvFiles.add(csvFile);
+			}
+		}
+		// files sorted by "path", parents come first. (type, path) -> seed file
+		List<CsvFiles> sortedFiles = new ArrayList<CsvFiles>(csvFiles);
+		Collections.sort(sortedFiles, (o1, o2) -> o1.getPath().compareTo(o2.getPath()));
+		Map<String, SeedFile> seedFiles = new LinkedHashMap<String, SeedFile>();
+		for (CsvFiles csvFile : sortedFiles) {
+			SeedFile parent = seedFiles.get(csvFile.getType() + ":" + CsvTestHelper.separateParentPath(csvFile.getPath())[0]);
+			seedFiles.put(csvFile.getType() + ":" + csvFile.getPath(),
+					new SeedFile(new File(seedFolder, csvFile.getFile()), csvFile, parent));
+		}
+		try {
+			File[] defs = seedFolder.listFiles((dir, name) -> name.endsWith(CsvTestHelper.DEFINITION_FILE_EXT));
+			if (defs != null) {
+				for (File def : defs) {
+					Files.copy(def.toPath(), new File(folder, def.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			for (SeedFile seedFile : seedFiles.values()) {
+				long count = writeFile(seedFile, new File(folder, seedFile.csvFile.getFile()));
+				logger.debug("generated {} rows of \"{}\" : {}", count, seedFile.csvFile.getPath(), seedFile.csvFile.getFile());
+			}
+			File fileList = new File(folder, new File(seedFileListCsvPath).getName());
+			try (CsvListWriter writer = new CsvListWriter(new OutputStreamWriter(
+					new FileOutputStream(fileList), CsvTestHelper.FILE_ENCODING), CsvPreference.STANDARD_PREFERENCE)) {
+				writer.writeHeader(FILE_LIST_HEADER);
+				for (CsvFiles csvFile : csvFiles) {
+					writer.write(csvFile.getType().name(), csvFile.getFile(), csvFile.getClazz(), csvFile.getPath(),
+							csvFile.getParentAttr(), csvFile.getOptions());
+				}
+			}
+			return fileList.getPath();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("fail at generate(" + outputFolder + ") from " + seedFileListCsvPath);
+			return null;
+		}
+	}
+
+	private long writeFile(SeedFile seedFile, File target) throws IOException {
+		try (CsvListWriter writer = new CsvListWriter(new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(target), CsvTestHelper.FILE_ENCODING), 256 * 1024), CsvPreference.STANDARD_PREFERENCE)) {
+			writer.writeHeader(seedFile.header);
+			long[] count = { 0 };
+			walk(seedFile, (seedIndex, copy, rowNumber, parentRowNumber) -> {
+				List<String> row = new ArrayList<String>(seedFile.rows.get(seedIndex));
+				if (seedFile.parentColumn >= 0 && parentRowNumber > 0) {
+					row.set(seedFile.parentColumn, String.valueOf(parentRowNumber));
+				}
+				if (copy > 0 && seedFile.pkColumn >= 0) {
+					String value = row.get(seedFile.pkColumn);
+					if (value != null && !value.startsWith("[")) {
+						row.set(seedFile.pkColumn, value + "_" + copy);
+					}
+				}
+				writer.write(row);
+				count[0]++;
+			});
+			return count[0];
+		}
+	}
+
+	/**
+	 * visit the generated rows of a file in the order of the rows.<BR>
+	 * the rows of a child file are visited by visiting the rows of its parent file again, instead of keeping them.
+	 */
+	private void walk(SeedFile seedFile, RowVisitor visitor) throws IOException {
+		if (seedFile.parent == null) {
+			long count = getRows(seedFile);
+			int seedRows = seedFile.rows.size();
+			for (long i = 0; i < count; i++) {
+				visitor.visit((int)(i % seedRows), i / seedRows, i + 1, 0);
+			}
+			return;
+		}
+		long[] rowNumber = { 0 };
+		walk(seedFile.parent, (parentSeedIndex, copy, parentRowNumber, grandParentRowNumber) -> {
+			List<Integer> children = seedFile.childrenByParent.get(parentSeedIndex);
+			if (children != null) {
+				for (int seedIndex : children) {
+					visitor.visit(seedIndex, copy, ++rowNumber[0], parentRowNumber);
+				}
+			}
+		});
+	}
+
+	private long getRows(SeedFile seedFile) {
+		Long count = rowsMap.get(seedFile.csvFile.getPath());
+		if (copies > 0) {
+			count = (long)copies * seedFile.rows.size();
+		} else if (count == null) {
+			count = (rows > 0) ? rows : seedFile.rows.size();
+		}
+		return seedFile.rows.isEmpty() ? 0 : count;
+	}
+
+	/**
+	 * a generated row
+	 */
+	private interface RowVisitor {
+		/**
+		 * @param seedIndex index of the seed row (0 origin)
+		 * @param copy copy number of the top level seed rows
+		 * @param rowNumber row number in the generated file (1 origin)
+		 * @param parentRowNumber row number of the parent in the generated parent file, 0 for top level rows
+		 */
+		void visit(int seedIndex, long copy, long rowNumber, long parentRowNumber) throws IOException;
+	}
+
+	/**
+	 * an input file of the seed
+	 */
+	private static class SeedFile {
+		final CsvFiles csvFile;
+		final SeedFile parent;
+		final String[] header;
+		final List<List<String>> rows = new ArrayList<List<String>>();
+		final int parentColumn;
+		final int pkColumn;
+		/** index of the parent seed row -> indexes of the seed rows */
+		final Map<Integer, List<Integer>> childrenByParent = new HashMap<Integer, List<Integer>>();
+
+		SeedFile(File file, CsvFiles csvFile, SeedFile parent) {
+			this.csvFile = csvFile;
+			this.parent = parent;
+			String[] header = null;
+			try (CsvListReader reader = new CsvListReader(new InputStreamReader(
+					new FileInputStream(file), CsvTestHelper.FILE_ENCODING), CsvPreference.STANDARD_PREFERENCE)) {
+				header = reader.getHeader(true);
+				List<String> row;
+				while ((row = reader.read()) != null) {
+					rows.add(new ArrayList<String>(row));
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				fail("fail at access: " + file);
+			}
+			this.header = header;
+			List<String> columns = Arrays.asList(header);
+			parentColumn = columns.indexOf(PARENT_ROW);
+			pkColumn = columns.indexOf(getLastTestPK(file.getPath(), csvFile.getClazz()));
+			if (parent != null) {
+				if (parentColumn < 0 && parent.rows.size() > 1) {
+					fail("parent# column is required to generate: " + csvFile.getFile());
+				}
+				for (int i = 0; i < rows.size(); i++) {
+					String parentRow = (parentColumn >= 0) ? rows.get(i).get(parentColumn) : null;
+					int parentIndex = StringUtils.isBlank(parentRow) ? 0 : Integer.parseInt(parentRow.trim()) - 1;
+					List<Integer> children = childrenByParent.get(parentIndex);
+					if (children == null) {
+						children = new ArrayList<Integer>();
+						childrenByParent.put(parentIndex, children);
+					}
+					children.add(i);
+				}
+			}
+		}
+
+		/**
+		 * @return the last testPK column of the .def file, null for immutable classes
+		 */
+		private static String getLastTestPK(String fileName, String className) {
+			if (className.startsWith("java.")) {
+				return null;
+			}
+			String pk = null;
+			String simpleName = className.substring(className.lastIndexOf('.') + 1);
+			for (String column : CompiledColumnDef.get(fileName, simpleName).getTestPKColumns()) {
+				if (column.indexOf("#") == -1) {
+					pk = column;
+				}
+			}
+			return pk;
+		}
+	}
+
+	/**
+	 * generate a test data set.
+	 * @param args seed CSV file list, output folder, rows of each top level path
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("usage: CsvFixtureGenerator seedFileList outputFolder rows");
+			System.exit(1);
+		}
+		String fileList = new CsvFixtureGenerator(args[0]).setRows(Long.parseLong(args[2])).generate(args[1]);
+		System.out.println("generated: " + fileList);
+	}
+}
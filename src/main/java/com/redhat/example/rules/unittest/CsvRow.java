@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.util.Map;
+
+/**
+ * CsvRow is a row of a CSV file read by {@link CsvRowReader}.<BR>
+ * - fact : the loaded object of the row.<BR>
+ * - rowNumber : row number in the file (1 origin, header is not counted).<BR>
+ * - parentRow : value of the parent# column, null if the file has no parent# column or it's empty.<BR>
+ * - keyMap : values of the key# columns (for Map type files).<BR>
+ * - type : value of the type# column, null if the file has no type# column.<BR>
+ * - cells : values of all columns by the header names, only if the reader is opened to keep them.<BR>
+ */
+public class CsvRow<T> {
+	private final T fact;
+	private final int rowNumber;
+	private final Integer parentRow;
+	private final Map<String, Object> keyMap;
+	private final String type;
+	private final Map<String, Object> cells;
+
+	CsvRow(T fact, int rowNumber, Integer parentRow, Map<String, Object> keyMap,
+			String type, Map<String, Object> cells) {
+		this.fact = fact;
+		this.rowNumber = rowNumber;
+		this.parentRow = parentRow;
+		this.keyMap = keyMap;
+		this.type = type;
+		this.cells = cells;
+	}
+
+	public T getFact() {
+		return fact;
+	}
+
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	public Integer getParentRow() {
+		return parentRow;
+	}
+
+	public Map<String, Object> getKeyMap() {
+		return keyMap;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public Map<String, Object> getCells() {
+		return cells;
+	}
+}
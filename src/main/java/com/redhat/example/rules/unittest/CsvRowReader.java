@@ -0,0 +1,283 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.Reader;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.io.IOUtils;
+import org.supercsv.cellprocessor.Optional;
+import org.supercsv.cellprocessor.ift.CellProcessor;
+import org.supercsv.io.dozer.CsvDozerBeanReader;
+import org.supercsv.io.dozer.ICsvDozerBeanReader;
+import org.supercsv.prefs.CsvPreference;
+import org.supercsv.util.CsvContext;
+
+/**
+ * CsvRowReader reads a CSV file for the fact class (clazz) row by row<BR>
+ * based on the definition file (.def) of columns.<BR>
+ * Only one row is held in memory, so files of any size can be read.<BR>
+ * Each row has the loaded object and the meta columns (parent#, key#, type#) of the row,<BR>
+ * so the file is parsed only once for all of them.<BR>
+ * Classes which can't be bound by {@link BeanBinder} are loaded by Dozer, which reads the same file in step.<BR>
+ * Rows are read from {@link CsvRowSource#open(String)} (compiled fixture, memory-mapped tokenizer or Super CSV),<BR>
+ * only the mapped columns and the meta columns are decoded if possible.<BR>
+ * <BR>
+ * usage:<BR>
+ * <pre>
+ * try (CsvRowReader&lt;Fact&gt; reader = CsvRowReader.open("in_Fact_1.csv", Fact.class, true)) {
+ *     while (reader.hasNext()) {
+ *         CsvRow&lt;Fact&gt; row = reader.next();
+ *     }
+ * }
+ * </pre>
+ */
+public class CsvRowReader<T> implements Iterator<CsvRow<T>>, Closeable {
+	private static final CellProcessor tokenProcessor =
+			new Optional(CsvTestHelper.createNullAndEmptyProcessor(new Optional()));
+
+	private final String fileName;
+	private final Class<T> clazz;
+	private final boolean ignoreNull;
+	private final boolean withCells;
+	private final BeanBinder<T> binder;
+	private CsvRowSource rows;
+	private boolean[] wanted;
+	private ICsvDozerBeanReader dozerReader;
+	private String[] header;
+	private String[] fieldMapping;
+	private CellProcessor[] processors;
+	private int parentRowIndex = -1;
+	private int valueIndex = -1;
+	private int typeIndex = -1;
+	private CellProcessor valueProcessor = tokenProcessor;
+	private String[] keyColumns;
+	private int[] keyIndexes;
+	private List<String> nextRow;
+	private int rowNumber = 0;
+
+	private CsvRowReader(String fileName, Class<T> clazz, boolean ignoreNull, boolean withCells) {
+		this.fileName = fileName;
+		this.clazz = clazz;
+		this.ignoreNull = ignoreNull;
+		this.withCells = withCells;
+		CompiledColumnDef columnDef = CompiledColumnDef.get(fileName, clazz.getSimpleName());
+		this.fieldMapping = columnDef.getFileMapping();
+		this.processors = columnDef.getReadProcessors();
+		if (RuleFactWatcher.isImmutable(clazz)) {
+			this.binder = null;
+			for (int i = 0; i < fieldMapping.length; i++) {
+				if (Date.class.isAssignableFrom(clazz) &&
+						RuleFactWatcher.Constants.valueAttributeStr.equals(fieldMapping[i])) {
+					valueProcessor = processors[i];
+				}
+			}
+		} else {
+			this.binder = columnDef.getBinder(clazz);
+		}
+		try {
+			rows = CsvRowSource.open(fileName);
+			header = rows.getHeader();
+			if (binder == null && !RuleFactWatcher.isImmutable(clazz)) {
+				Reader dozerFileReader = new InputStreamReader(new FileInputStream(fileName), CsvTestHelper.FILE_ENCODING);
+				dozerReader = new CsvDozerBeanReader(dozerFileReader, CsvPreference.STANDARD_PREFERENCE);
+				dozerReader.getHeader(true);
+				dozerReader.configureBeanMapping(clazz, fieldMapping);
+			}
+			int keyCount = 0;
+			for (String column : header) {
+				if (column != null && column.startsWith(RuleFactWatcher.Constants.keyAttributeStr)) {
+					keyCount++;
+				}
+			}
+			keyColumns = new String[keyCount];
+			keyIndexes = new int[keyCount];
+			keyCount = 0;
+			for (int i = 0; i < header.length; i++) {
+				if (header[i] == null) {
+					continue;
+				} else if (RuleFactWatcher.Constants.parentRowKey.equals(header[i])) {
+					parentRowIndex = i;
+				} else if (RuleFactWatcher.Constants.valueAttributeStr.equals(header[i])) {
+					valueIndex = i;
+				} else if (RuleFactWatcher.Constants.typeAttributeStr.equals(header[i])) {
+					typeIndex = i;
+				} else if (header[i].startsWith(RuleFactWatcher.Constants.keyAttributeStr)) {
+					keyColumns[keyCount] = header[i];
+					keyIndexes[keyCount] = i;
+					keyCount++;
+				}
+			}
+			if (!withCells) {
+				// decode the mapped columns and the meta columns only
+				wanted = new boolean[header.length];
+				for (int i = 0; i < header.length; i++) {
+					wanted[i] = (i < fieldMapping.length && fieldMapping[i] != null)
+							|| i == parentRowIndex || i == valueIndex || i == typeIndex;
+				}
+				for (int keyIndex : keyIndexes) {
+					wanted[keyIndex] = true;
+				}
+			}
+		} catch (Exception e) {
+			close();
+			e.printStackTrace();
+			fail("fail to load: " + fileName);
+		}
+	}
+
+	/**
+	 * open a CSV file for the fact class (clazz).
+	 * @param fileName file name to load
+	 * @param clazz POJO class to load to
+	 * @param ignoreNull true -> ignore null value to set into beans
+	 * @return the reader, must be closed
+	 */
+	public static <T> CsvRowReader<T> open(String fileName, Class<T> clazz, boolean ignoreNull) {
+		return new CsvRowReader<T>(fileName, clazz, ignoreNull, false);
+	}
+
+	/**
+	 * open a CSV file for the fact class (clazz), keeping the raw cells of each row.
+	 * @param fileName file name to load
+	 * @param clazz POJO class to load to
+	 * @param ignoreNull true -> ignore null value to set into beans
+	 * @param withCells true -> {@link CsvRow#getCells()} has the cells of the row
+	 * @return the reader, must be closed
+	 */
+	static <T> CsvRowReader<T> open(String fileName, Class<T> clazz, boolean ignoreNull, boolean withCells) {
+		return new CsvRowReader<T>(fileName, clazz, ignoreNull, withCells);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextRow == null && rows != null) {
+			try {
+				nextRow = rows.read(wanted);
+			} catch (Exception e) {
+				e.printStackTrace();
+				fail("fail to load: " + fileName);
+			}
+			if (nextRow == null) {
+				close();
+			}
+		}
+		return nextRow != null;
+	}
+
+	@Override
+	public CsvRow<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		List<String> row = nextRow;
+		nextRow = null;
+		rowNumber++;
+		T fact = null;
+		try {
+			fact = createFact(row);
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail("fail to load: " + fileName + " (row " + rowNumber + ")");
+		}
+		Integer parentRow = null;
+		if (parentRowIndex >= 0 && row.get(parentRowIndex) != null) {
+			parentRow = Integer.valueOf(row.get(parentRowIndex).trim());
+		}
+		Map<String, Object> keyMap = Collections.emptyMap();
+		if (keyColumns.length > 0) {
+			keyMap = new LinkedHashMap<String, Object>();
+			for (int i = 0; i < keyColumns.length; i++) {
+				keyMap.put(keyColumns[i], row.get(keyIndexes[i]));
+			}
+		}
+		String type = (typeIndex >= 0) ? row.get(typeIndex) : null;
+		Map<String, Object> cells = null;
+		if (withCells) {
+			cells = new LinkedHashMap<String, Object>();
+			for (int i = 0; i < header.length && i < row.size(); i++) {
+				if (header[i] != null) {
+					cells.put(header[i], row.get(i));
+				}
+			}
+		}
+		return new CsvRow<T>(fact, rowNumber, parentRow, keyMap, type, cells);
+	}
+
+	@SuppressWarnings("unchecked")
+	private T createFact(List<String> row) throws Exception {
+		int lineNumber = rows.getLineNumber();
+		if (binder != null) {
+			return binder.bind(row, lineNumber, rowNumber + 1, ignoreNull);
+		} else if (dozerReader != null) {
+			return createFactByDozer(row);
+		}
+		// support of Immutable classes. java.lang.*, Date, BigDecimal, BigInteger
+		String strV = (valueIndex >= 0) ? row.get(valueIndex) : null;
+		CsvContext context = new CsvContext(lineNumber, rowNumber + 1, valueIndex + 1);
+		if (Date.class.isAssignableFrom(clazz)) {
+			return (T)valueProcessor.execute(strV, context);
+		}
+		strV = (String)tokenProcessor.execute(strV, context);
+		if (clazz == Object.class) {
+			String typeV = (typeIndex >= 0) ? (String)tokenProcessor.execute(row.get(typeIndex), context) : null;
+			Class<?> clazzActual = (typeV != null) ? Class.forName(typeV) : null;
+			return (T)CsvTestHelper.getImmutableObject(clazzActual, strV);
+		}
+		return (T)CsvTestHelper.getImmutableObject(clazz, strV);
+	}
+
+	private T createFactByDozer(List<String> row) throws Exception {
+		T loadedBean = dozerReader.read(clazz, processors);
+		if (!ignoreNull) {
+			return loadedBean;
+		}
+		// copy the attributes which have values only
+		T bean = clazz.newInstance();
+		for (int i = 0; i < fieldMapping.length && i < row.size(); i++) {
+			if (fieldMapping[i] != null && row.get(i) != null) {
+				CsvTestHelper.setProperty(bean, fieldMapping[i], RuleFactWatcher.getProperty(loadedBean, fieldMapping[i]));
+			}
+		}
+		return bean;
+	}
+
+	/**
+	 * @return number of rows read so far
+	 */
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	@Override
+	public void close() {
+		IOUtils.closeQuietly(rows);
+		IOUtils.closeQuietly(dozerReader);
+		rows = null;
+		dozerReader = null;
+	}
+}
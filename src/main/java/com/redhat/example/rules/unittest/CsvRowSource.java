@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+/**
+ * CsvRowSource is a source of the cells of CSV rows.<BR>
+ * {@link #open(String)} selects the source of a file:<BR>
+ * - the compiled fixture ({@link FixtureCache}) if it's valid for the file.<BR>
+ * - {@link MappedCsvTokenizer} if the encoding is ASCII compatible and the file can be mapped.<BR>
+ * - Super CSV otherwise.<BR>
+ */
+interface CsvRowSource extends Closeable {
+
+	/**
+	 * read the header (the first row).
+	 * @return all cells of the header, null if the file is empty
+	 */
+	String[] getHeader() throws IOException;
+
+	/**
+	 * read the next row.
+	 * @param wanted flags of the columns which must be read, null for all columns.<BR>
+	 *        cells of the other columns may be null.
+	 * @return cells of the row (null for empty cells), null at the end of file
+	 */
+	List<String> read(boolean[] wanted) throws IOException;
+
+	/**
+	 * @return line number of the end of the last row (1 origin)
+	 */
+	int getLineNumber();
+
+	/**
+	 * open the row source of a CSV file in CsvTestHelper.FILE_ENCODING.
+	 * @param fileName CSV file
+	 * @return the row source, must be closed
+	 */
+	static CsvRowSource open(String fileName) throws IOException {
+		Charset charset = Charset.forName(CsvTestHelper.FILE_ENCODING);
+		FixtureCache cache = FixtureCache.getDefault();
+		if (cache != null) {
+			CsvRowSource compiled = cache.open(fileName, charset);
+			if (compiled != null) {
+				return compiled;
+			}
+		}
+		CsvRowSource source = openCsv(fileName, charset);
+		if (cache != null) {
+			source = cache.record(fileName, charset, source);
+		}
+		return source;
+	}
+
+	/**
+	 * open the parser of a CSV file without the compiled fixture.
+	 * @param fileName CSV file
+	 * @param charset encoding of the file
+	 * @return {@link MappedCsvTokenizer} if it can read the file, Super CSV otherwise
+	 */
+	static CsvRowSource openCsv(String fileName, Charset charset) throws IOException {
+		if (CsvTestHelper.USE_MAPPED_CSV && MappedCsvTokenizer.isSupported(charset)
+				&& new File(fileName).length() <= MappedCsvTokenizer.MAX_FILE_SIZE) {
+			return new MappedCsvTokenizer(fileName, charset);
+		}
+		return new SuperCsvRowSource(fileName, charset);
+	}
+
+	/**
+	 * rows read by Super CSV
+	 */
+	static class SuperCsvRowSource implements CsvRowSource {
+		private final ICsvListReader listReader;
+
+		SuperCsvRowSource(String fileName, Charset charset) throws IOException {
+			listReader = new CsvListReader(new InputStreamReader(new FileInputStream(fileName), charset),
+					CsvPreference.STANDARD_PREFERENCE);
+		}
+
+		@Override
+		public String[] getHeader() throws IOException {
+			return listReader.getHeader(true);
+		}
+
+		@Override
+		public List<String> read(boolean[] wanted) throws IOException {
+			return listReader.read();
+		}
+
+		@Override
+		public int getLineNumber() {
+			return listReader.getLineNumber();
+		}
+
+		@Override
+		public void close() throws IOException {
+			listReader.close();
+		}
+	}
+}
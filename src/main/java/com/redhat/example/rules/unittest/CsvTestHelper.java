@@ -39,13 +39,21 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
@@ -54,12 +62,9 @@ import org.slf4j.LoggerFactory;
 import org.supercsv.cellprocessor.FmtDate;
 import org.supercsv.cellprocessor.Optional;
 import org.supercsv.cellprocessor.ParseDate;
-import org.supercsv.cellprocessor.ParseInt;
 import org.supercsv.cellprocessor.Token;
 import org.supercsv.cellprocessor.constraint.NotNull;
 import org.supercsv.cellprocessor.ift.CellProcessor;
-import org.supercsv.io.CsvMapReader;
-import org.supercsv.io.ICsvMapReader;
 import org.supercsv.io.dozer.CsvDozerBeanReader;
 import org.supercsv.io.dozer.CsvDozerBeanWriter;
 import org.supercsv.io.dozer.ICsvDozerBeanReader;
@@ -72,13 +77,19 @@ public class CsvTestHelper {
 	/**
 	 * extension name of column definition files
 	 */
-	private static final String DEFINITION_FILE_EXT = ".def";
+	static final String DEFINITION_FILE_EXT = ".def";
 	
 	/**
 	 * default encoding of CSV files
 	 */
 	public static String FILE_ENCODING = "Shift_JIS";
 
+	/**
+	 * true -> read fixture files by memory-mapped tokenizer (if FILE_ENCODING is ASCII compatible)<BR>
+	 * set "-Drules.unittest.mappedcsv=false" to read them by Super CSV.
+	 */
+	public static boolean USE_MAPPED_CSV = !"false".equalsIgnoreCase(System.getProperty("rules.unittest.mappedcsv"));
+
 	/**
 	 * attribute type option for Date type
 	 */
@@ -113,20 +124,38 @@ public class CsvTestHelper {
 	 * @return a list of the POJO instances
 	 */
 	public static <T> List<T> loadCsv(String fileName, Class<T> clazz, boolean ignoreNull) {
-		List<CsvColumnDef> columnDefList = null;
-		try {
-			columnDefList = readColumnDef(fileName, clazz.getSimpleName());
-		} catch (Exception e) {
-			e.printStackTrace();
-			fail("fail at readColumnDef() for class: " + clazz.getSimpleName());
+		List<T> resultList = new ArrayList<T>();
+		try (CsvRowReader<T> reader = CsvRowReader.open(fileName, clazz, ignoreNull)) {
+			while (reader.hasNext()) {
+				resultList.add(reader.next().getFact());
+			}
 		}
+		return resultList;
+	}
 
-		String[] fileMapping = createFileMappingForBean(columnDefList);
-		CellProcessor[] proccessors = createCellProcessorArray(columnDefList, true);
-		return loadCsv(fileName, clazz, fileMapping, ignoreNull, proccessors);
+	/**
+	 * load CSV file for the fact class (clazz) as a stream<BR>
+	 * based on the definition file (.def) of columns.<BR>
+	 * rows are read while the stream is consumed, so the file is not loaded into memory at once.<BR>
+	 * the stream must be closed (try-with-resources) if it is not consumed to the end.
+	 * @param <T>
+	 *
+	 * @param fileName
+	 *            file name to load
+	 * @param clazz
+	 *            POJO class to load to
+	 * @param ignoreNull
+	 *            true -> ignore null value to set into beans
+	 * @return a stream of the POJO instances
+	 */
+	public static <T> Stream<T> loadCsvAsStream(String fileName, Class<T> clazz, boolean ignoreNull) {
+		CsvRowReader<T> reader = CsvRowReader.open(fileName, clazz, ignoreNull);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED), false)
+				.map(row -> row.getFact())
+				.onClose(reader::close);
 	}
 
-	private static CellProcessor[] createCellProcessorArray(List<CsvColumnDef> columnDefs, boolean isRead) {
+	static CellProcessor[] createCellProcessorArray(List<CsvColumnDef> columnDefs, boolean isRead) {
 		CellProcessor[] processors = new CellProcessor[columnDefs.size()];		
 
 		for (int i=0; i < columnDefs.size(); i++) {
@@ -155,13 +184,13 @@ public class CsvTestHelper {
 		return processors;
 	}
 
-	private static CellProcessor createNullAndEmptyProcessor(CellProcessor p) {
+	static CellProcessor createNullAndEmptyProcessor(CellProcessor p) {
 		CellProcessor pro = new Token(RuleFactWatcher.Constants.nullCheckStr, null, p);
 		pro = new Token(RuleFactWatcher.Constants.emptyCheckStr, "", pro);
 		return pro;
 	}
 
-	private static String[] createFileMappingForBean(List<CsvColumnDef> columnDefList) {
+	static String[] createFileMappingForBean(List<CsvColumnDef> columnDefList) {
 		String[] fileMapping = new String[columnDefList.size()];
 		for (int i=0; i < columnDefList.size(); i++) {
 			CsvColumnDef def = columnDefList.get(i);
@@ -177,80 +206,46 @@ public class CsvTestHelper {
 	}
 
 	/**
-	 * load definition file (.def) of columns.
+	 * load definition file (.def) of columns.<BR>
+	 * use {@link CompiledColumnDef#get(String, String)} to get the cached definition.
 	 *
-	 * @param fileName file name of the target. (only use its folder information)
-	 * @param className class name of the POJO.
+	 * @param defPath canonical path of the definition file.
 	 * @return list of column definitions.
 	 */
-	private static List<CsvColumnDef> readColumnDef(String fileName, String className) {
-		File path = new File(fileName);
+	static List<CsvColumnDef> readColumnDef(String defPath) {
 		String[] fileMappng = { "columnName", "option", "format", "testPK", "testSkip" };
 		CellProcessor[] processors = new CellProcessor[] { new NotNull(), new Optional(), new Optional(), new Optional(), new Optional() };
-		List<CsvColumnDef> ret = null;
-		try {
-			ret = loadCsv(new File(path.getParentFile(), className + DEFINITION_FILE_EXT).getCanonicalPath(),
-					CsvColumnDef.class, fileMappng, false, processors);
-		} catch (IOException e) {
-			e.printStackTrace();
-			fail("fail at access: " + className + DEFINITION_FILE_EXT);
-		}
-		return ret;
+		return loadCsv(defPath, CsvColumnDef.class, fileMappng,
+				BeanBinder.create(CsvColumnDef.class, fileMappng, processors), processors);
 	}
 	
-	@SuppressWarnings("unchecked")
+	/**
+	 * load CSV file which has no definition file (.def) by the field mapping.
+	 */
 	private static <T> List<T> loadCsv(String fileName, Class<T> clazz,
-			String[] fieldMapping, boolean ignoreNull, CellProcessor... processors) {
+			String[] fieldMapping, BeanBinder<T> binder, CellProcessor... processors) {
 		List<T> resultList = new ArrayList<T>();
-		
-		// support of Immutable classes. java.lang.*, Date, BigDecimal, BigInteger
-		if (Date.class.isAssignableFrom(clazz)) {
-			CellProcessor p = null;
-			for (int i=0; i<fieldMapping.length; i++) {
-				if (RuleFactWatcher.Constants.valueAttributeStr.equals(fieldMapping[i])) {
-					p = processors[i];
-				}
-			}
-			CellProcessor dateProcessor = p;
-			for (Map<String, Object> map : readCsvIntoMaps(fileName, true)) {
-				T v = null;
-				String strV = (String)map.get(RuleFactWatcher.Constants.valueAttributeStr);
-				v = dateProcessor.execute(strV, null);
-				resultList.add(v);
-			}
-			return resultList;
-		} else if (Number.class.isAssignableFrom(clazz)) {
-			for (Map<String, Object> map : readCsvIntoMaps(fileName, true)) {
-				String strV = (String)map.get(RuleFactWatcher.Constants.valueAttributeStr);
-				if (strV == null) {
-					resultList.add(null);
-				} else if (RuleFactWatcher.isImmutable(clazz)) {
-					resultList.add((T)getImmutableObject(clazz, strV));
-				}
-			}
-			return resultList;
-		} else if (clazz.equals(String.class)) {
-			for (Map<String, Object> map : readCsvIntoMaps(fileName, true)) {
-				String strV = (String)map.get(RuleFactWatcher.Constants.valueAttributeStr);
-				resultList.add((T) strV);
-			}
-			return resultList;
-		} else if (clazz == Object.class) {
-			for (Map<String, Object> map : readCsvIntoMaps(fileName, true)) {
-				String strV = (String)map.get(RuleFactWatcher.Constants.valueAttributeStr);
-				String typeV = (String)map.get(RuleFactWatcher.Constants.typeAttributeStr);
-				Class<?> clazzActual = null;
-				try {
-					clazzActual = (typeV != null) ? Class.forName(typeV) : null;
-				} catch (ClassNotFoundException e) {
-					e.printStackTrace();
+		if (binder != null) {
+			// bind cells into beans directly in a single pass
+			CsvRowSource rows = null;
+			try {
+				rows = CsvRowSource.open(fileName);
+				rows.getHeader();
+
+				List<String> row;
+				int rowNumber = 1;
+				while ((row = rows.read(null)) != null) {
+					resultList.add(binder.bind(row, rows.getLineNumber(), ++rowNumber, false));
 				}
-				Object obj = getImmutableObject(clazzActual, strV);
-				resultList.add((T) obj);
+			} catch (Exception e) {
+				e.printStackTrace();
+				fail("fail to load: " + fileName);
+			} finally {
+				IOUtils.closeQuietly(rows);
 			}
 			return resultList;
 		}
-		
+
 		ICsvDozerBeanReader beanReader = null;
 		try {
 			Reader reader = new InputStreamReader(new FileInputStream(fileName), FILE_ENCODING);
@@ -268,32 +263,10 @@ public class CsvTestHelper {
 		} finally {
 			IOUtils.closeQuietly(beanReader);
 		}
-		
-		if (ignoreNull) {
-			int i = 0;
-			for (Map<String, Object> map : readCsvIntoMaps(fileName, false)) {
-				try {
-					T bean = clazz.newInstance();
-					T loadedBean = resultList.get(i);
-					for (String key : map.keySet()) {
-						Object value = map.get(key);
-						if (value != null && key.indexOf("#") == -1) {
-							setProperty(bean, key, RuleFactWatcher.getProperty(loadedBean, key));
-						}
-					}
-					resultList.set(i, bean);
-					i++;
-				} catch (Exception e) {
-					e.printStackTrace();
-					fail("fail to newInstance() of class:" + clazz.getSimpleName());
-				}
-			}
-		}
-		
 		return resultList;
 	}
 
-	private static Object getImmutableObject(Class<?> clazz, String strV) {
+	static Object getImmutableObject(Class<?> clazz, String strV) {
 		if (strV == null) {
 			return null;
 		}
@@ -328,11 +301,8 @@ public class CsvTestHelper {
 			return;
 		}
 		Class<?> clazz = contentsList.get(0).getClass();
-		List<CsvColumnDef> columnDefList = readColumnDef(fileName, clazz.getSimpleName());
-
-		String[] fileMapping = createFileMappingForBean(columnDefList);
-		CellProcessor[] proccessors = createCellProcessorArray(columnDefList, false);
-		writeCsv(fileName, clazz, fileMapping, contentsList, proccessors);
+		CompiledColumnDef columnDef = CompiledColumnDef.get(fileName, clazz.getSimpleName());
+		writeCsv(fileName, clazz, columnDef.getFileMapping(), contentsList, columnDef.getWriteProcessors());
 	}
 
 	private static void writeCsv(String fileName, Class<?> clazz, String[] fieldMapping, List<?> contentsList,
@@ -397,34 +367,37 @@ public class CsvTestHelper {
 		return rtn.toArray(new String[0]);
 	}
 	
-	private static List<ExpectedRecord>
+	/**
+	 * read the expected records of a CSV file.
+	 * @param filename the file name which contains expected values
+	 * @param clazz the class of expected values
+	 * @param keyClass the key class if the values are in a Map, null if the values are not in a Map
+	 * @return the expected records
+	 */
+	public static List<ExpectedRecord>
 	readExpectedCsv(String filename, Class<?> clazz, Class<?> keyClass) {
 				
 		ArrayList<ExpectedRecord> ret = new ArrayList<ExpectedRecord>();
-		for (Map<String, Object> map : readCsvIntoMaps(filename, false)) {
-			ExpectedRecord record = new ExpectedRecord();
-			record.map = map;
-			ret.add(record);
-		}
-		List<CsvColumnDef> columnDefs = readColumnDef(filename, clazz.getSimpleName());
-		String[] fileMapping = createFileMappingForBean(columnDefs);
-		CellProcessor[] processors = createCellProcessorArray(columnDefs, true);
-		int i=0;
-		for (Object fact : loadCsv(filename, clazz, fileMapping, false, processors)) {
-			if (keyClass == null) {
-				ret.get(i).fact = fact;
-			} else {
-				MapEntry mapEntry = new MapEntry();
-				mapEntry.key = getKeyValue(keyClass, ret.get(i).map);
-				mapEntry.value = fact;
-				ret.get(i).fact = mapEntry;
+		try (CsvRowReader<?> reader = CsvRowReader.open(filename, clazz, false, true)) {
+			while (reader.hasNext()) {
+				CsvRow<?> row = reader.next();
+				ExpectedRecord record = new ExpectedRecord();
+				record.map = row.getCells();
+				if (keyClass == null) {
+					record.fact = row.getFact();
+				} else {
+					MapEntry mapEntry = new MapEntry();
+					mapEntry.key = getKeyValue(keyClass, row.getKeyMap());
+					mapEntry.value = row.getFact();
+					record.fact = mapEntry;
+				}
+				ret.add(record);
 			}
-			i++;
 		}
 		return ret;
 	}
 	
-	private static Object getKeyValue(Class<?> keyClass, Map<String, Object> map) {
+	static Object getKeyValue(Class<?> keyClass, Map<String, Object> map) {
 		if (RuleFactWatcher.isImmutable(keyClass)) {
 			return getImmutableObject(keyClass, (String)map.get(RuleFactWatcher.Constants.keyAttributeStr));
 		} else {
@@ -445,37 +418,6 @@ public class CsvTestHelper {
 		}
 	}
 
-	private static List<Map<String, Object>> readCsvIntoMaps(String filename, boolean replaceToken) {
-		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
-		ICsvMapReader mapReader = null;
-		try {
-			Reader reader = new InputStreamReader(new FileInputStream(filename), FILE_ENCODING);
-			mapReader = new CsvMapReader(reader, CsvPreference.STANDARD_PREFERENCE);
-
-			// the header columns are used as the keys to the Map
-			String[] header = mapReader.getHeader(true);
-			CellProcessor[] processors = new CellProcessor[header.length];
-			for (int i=0; i<processors.length; i++) {
-				if (replaceToken) {
-					processors[i] = new Optional(createNullAndEmptyProcessor(new Optional()));
-				} else {
-					processors[i] = new Optional();
-				}
-			}
-
-			Map<String, Object> factMap;
-			while( (factMap = mapReader.read(header, processors)) != null ) {
-				ret.add(factMap);
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			fail("fail to access:" + filename);
-		} finally {
-			IOUtils.closeQuietly(mapReader);
-		}
-		return ret;
-	}
-	
 	/**
 	 * Check as actual result of facts has expected values<BR>
 	 * only checks specified expected values of specified attributes of specified facts.<BR>
@@ -491,7 +433,7 @@ public class CsvTestHelper {
 		return assertExpectCSVwithParentRow(actuals, filename, clazz, keyClass, checkByIndex, null);
 	}
 
-	private static Map<String, Boolean> createTestSkipMap(List<CsvColumnDef> columnDefs) {
+	static Map<String, Boolean> createTestSkipMap(List<CsvColumnDef> columnDefs) {
 		LinkedHashMap<String, Boolean> ret = new LinkedHashMap<String, Boolean>();
 		for (CsvColumnDef columnDef : columnDefs) {
 			Boolean isTestSkip = columnDef.getTestSkip() != null && columnDef.getTestSkip() == Boolean.TRUE;
@@ -500,6 +442,15 @@ public class CsvTestHelper {
 		return ret;
 	}
 
+	static Map<String, Boolean> createTestPKMap(List<CsvColumnDef> columnDefs) {
+		LinkedHashMap<String, Boolean> ret = new LinkedHashMap<String, Boolean>();
+		for (CsvColumnDef columnDef : columnDefs) {
+			Boolean isTestPK = columnDef.getTestPK() != null && columnDef.getTestPK() == Boolean.TRUE;
+			ret.put(columnDef.getColumnName(), isTestPK);
+		}
+		return ret;
+	}
+
 	/**
 	 * create BiPredicate to check equality of an actual fact and an expected record fact.
 	 * @param columnDefs column definition list
@@ -576,11 +527,13 @@ public class CsvTestHelper {
 	 * @return a RuleFactWatcher
 	 */
 	public static RuleFactWatcher createRuleFactWatcher(String filename, Class<?> clazz, boolean checkByIndex, Class<?> keyClass) {
-		List<CsvColumnDef> columnDefs = CsvTestHelper.readColumnDef(filename, clazz.getSimpleName());
+		CompiledColumnDef columnDef = CompiledColumnDef.get(filename, clazz.getSimpleName());
 		List<ExpectedRecord> expectedRecords = CsvTestHelper.readExpectedCsv(filename, clazz, keyClass);
-		BiPredicate<ExpectedRecord, Object> predicate = CsvTestHelper.createTestPredicate(columnDefs, clazz, keyClass);
-		Map<String, Boolean> testSkipMap = CsvTestHelper.createTestSkipMap(columnDefs);
-		return new RuleFactWatcher(expectedRecords, clazz, keyClass, checkByIndex, predicate, testSkipMap);
+		BiPredicate<ExpectedRecord, Object> predicate = CsvTestHelper.createTestPredicate(columnDef.getColumnDefs(), clazz, keyClass);
+		RuleFactWatcher watcher = new RuleFactWatcher(expectedRecords, clazz, keyClass, checkByIndex, predicate,
+				columnDef.getTestSkipMap(), columnDef.getTestPKColumns());
+		watcher.predicateChecksClass = true;
+		return watcher;
 	}
 
 	/**
@@ -712,10 +665,11 @@ public class CsvTestHelper {
 	 *
 	 * @param fileName file name of the target.
 	 */
-	private static List<CsvFiles> readCsvListFiles(String fileName) {
+	static List<CsvFiles> readCsvListFiles(String fileName) {
 		String[] fileMappng = { "type", "file", "clazz", "path", "parentAttr", "options" };
 		CellProcessor[] processors = new CellProcessor[] { new NotNull(), new NotNull(), new NotNull(), new NotNull(), new Optional(), new Optional() };
-		List<CsvFiles> ret = loadCsv(fileName, CsvFiles.class, fileMappng, false, processors);
+		List<CsvFiles> ret = loadCsv(fileName, CsvFiles.class, fileMappng,
+				BeanBinder.create(CsvFiles.class, fileMappng, processors), processors);
 		return ret;
 	}
 
@@ -795,7 +749,7 @@ public class CsvTestHelper {
 		}
 	}
 
-	private static String[] separateParentPath(String path) {
+	static String[] separateParentPath(String path) {
 		String parentPath = "";
 		String currentPath = path;
 		int dotIndex = path.lastIndexOf(".");
@@ -819,6 +773,33 @@ public class CsvTestHelper {
 	 */
 	public static <T> Integer[] assertExpectCSVwithParentRow(List<T> actuals,
 			String filename, Class<?> clazz, Class<?> keyClass, boolean checkByIndex, String parentRow) {
+		ExpectedCsvFile expected = null;
+		try {
+			expected = ExpectedCsvFile.load(filename, clazz, keyClass);
+		} catch (Exception e1) {
+			e1.printStackTrace();
+			fail("fail at readExpectedCsv(" + filename + ", " + clazz.getSimpleName() + ")");
+		}
+		return assertExpectCSVwithParentRow(actuals, expected, checkByIndex, parentRow);
+	}
+
+	/**
+	 * Check the actual list with the expected records of a parsed expected file which are filtered by the parentRow info
+	 * @param actuals a list of actual result facts
+	 * @param expected the parsed file which contains expected values
+	 * @param checkByIndex the flag to check actuals and expected values by same index
+	 * @param parentRow parent row to filter this child list
+	 * @return mapping array with actualIndex and expectIndex
+	 */
+	static <T> Integer[] assertExpectCSVwithParentRow(List<T> actuals,
+			ExpectedCsvFile expected, boolean checkByIndex, String parentRow) {
+		String filename = expected.getFilename();
+		Class<?> clazz = expected.getClazz();
+		Class<?> keyClass = expected.getKeyClass();
+		List<ExpectedRecord> expectedRecords = expected.getRecords();
+		// the rows of this parent (all rows if parentRow is null)
+		List<Integer> rows = expected.getRows(parentRow);
+
 		Integer[] ret = new Integer[actuals != null ? actuals.size() : 0];
 		int countActuals = 0;
 		if (actuals != null) {
@@ -832,22 +813,12 @@ public class CsvTestHelper {
 		if (countActuals == 0) {
 			// check if there are expected records
 			int countExpectedRecords = 0;
-			for (Map<String, Object> map : readCsvIntoMaps(filename, false)) {
-				if (parentRow != null) {
-					// count expected records where the parent# value equals parentRow
-					if (parentRow.equals(map.get(RuleFactWatcher.Constants.parentRowKey))) {
-						countExpectedRecords++;
-						if (map.containsKey(RuleFactWatcher.Constants.valueAttributeStr) &&
-								!RuleFactWatcher.Constants.nullCheckStr.equals(map.get(RuleFactWatcher.Constants.valueAttributeStr))) {
-							fail("actual is null but expect is not null");
-						}
-					}
-				} else {
-					countExpectedRecords++;
-					if (map.containsKey(RuleFactWatcher.Constants.valueAttributeStr) &&
-							!RuleFactWatcher.Constants.nullCheckStr.equals(map.get(RuleFactWatcher.Constants.valueAttributeStr))) {
-						fail("actual is null but expect is not null");
-					}
+			for (Integer row : rows) {
+				Map<String, Object> map = expectedRecords.get(row).map;
+				countExpectedRecords++;
+				if (map.containsKey(RuleFactWatcher.Constants.valueAttributeStr) &&
+						!RuleFactWatcher.Constants.nullCheckStr.equals(map.get(RuleFactWatcher.Constants.valueAttributeStr))) {
+					fail("actual is null but expect is not null");
 				}
 			}
 			if (actuals == null) {
@@ -861,16 +832,10 @@ public class CsvTestHelper {
 			}
 			return ret;
 		}
-						
-		List<CsvColumnDef> columnDefs = null;
-		try {
-			columnDefs = readColumnDef(filename, clazz.getSimpleName());
-		} catch (Exception e1) {
-			e1.printStackTrace();
-			fail("fail at readColumnDef(" + filename + ", " + clazz.getSimpleName() + ")");
-		}
-		BiPredicate<ExpectedRecord, Object> predicate = createTestPredicate(columnDefs, clazz, keyClass);
-		Map<String, Boolean> testSkipMap = createTestSkipMap(columnDefs);
+
+		CompiledColumnDef columnDef = expected.getColumnDef();
+		BiPredicate<ExpectedRecord, Object> predicate = createTestPredicate(columnDef.getColumnDefs(), clazz, keyClass);
+		Map<String, Boolean> testSkipMap = columnDef.getTestSkipMap();
 		String factClassName = clazz.getSimpleName();
 			
 		// the index of actual record
@@ -878,27 +843,27 @@ public class CsvTestHelper {
 		// the flag the record is checked or not
 		boolean foundExpect = false;
 		// the index of expect record
+		// (checkByIndex mode : index in the records of the parent, otherwise : index in the file)
 		int expectIndex = 0;
-		List<ExpectedRecord> expectedRecords = readExpectedCsv(filename, clazz, keyClass);
-		
-		// checkByIndex mode, remove other parents' records
-		if (checkByIndex && parentRow != null) {
-			for (int i=0; i < expectedRecords.size();) {
-				if (! parentRow.equals(expectedRecords.get(i).map.get(RuleFactWatcher.Constants.parentRowKey))) {
-					expectedRecords.remove(i);
-				} else {
-					i++;
-				}
-			}
-		}
+		// the records of this parent can be checked again by an other parent actual
+		expected.resetUsed(rows);
+		// match by the hash index of testPK columns (nested loop with the predicate if no testPK columns)
+		ExpectedRecordIndex pkIndex = checkByIndex ? null : expected.getPKIndex(parentRow);
+		boolean isMap = keyClass != null;
 		
 		for (Object actual : actuals) {
 			actualIndex++;
 			foundExpect = false;
-			expectIndex = 0;
 			if (actual != null) {
-				for(ExpectedRecord expect : expectedRecords) {
-					expectIndex++;
+				List<Integer> candidates = rows;
+				if (pkIndex != null) {
+					candidates = (isMap || actual.getClass().isAssignableFrom(clazz)) ?
+							pkIndex.lookup(actual) : Collections.<Integer>emptyList();
+				}
+				for (int k = 0; k < candidates.size(); k++) {
+					int row = candidates.get(k);
+					ExpectedRecord expect = expectedRecords.get(row);
+					expectIndex = checkByIndex ? k + 1 : row + 1;
 					if (expect.fact == null) {
 						if (checkByIndex &&
 								actualIndex == expectIndex) {
@@ -909,12 +874,10 @@ public class CsvTestHelper {
 									);
 						}
 						// skip if it's null record in expected records
-					} else if (parentRow != null && ! parentRow.equals(expect.map.get(RuleFactWatcher.Constants.parentRowKey))) {
-						// skip if the parent row is not same
 					} else if (
 							(checkByIndex &&
 									actualIndex == expectIndex)
-							|| (!checkByIndex && predicate.test(expect, actual))) {
+							|| (!checkByIndex && (pkIndex != null || predicate.test(expect, actual)))) {
 						// index match OR the actual fact matches the expected record
 						// if there is at least one expected record for the actual fact, set the flag true.
 						foundExpect = true;
@@ -934,13 +897,13 @@ public class CsvTestHelper {
 				}
 			} else {
 				if (checkByIndex) {
-					if (expectedRecords.size() < actualIndex) {
+					if (rows.size() < actualIndex) {
 						fail(
 								"**assertExpectCSV** Expected record for the actual record " + factClassName
 								+ "[" + (actualIndex - 1) + "] " +
 								"does NOT exist."
 						);
-					} else if (expectedRecords.get(actualIndex - 1).fact != null) {
+					} else if (expectedRecords.get(rows.get(actualIndex - 1)).fact != null) {
 						fail(
 								"**assertExpectCSV** Expected record for the actual record (null) " + factClassName
 								+ "[" + (actualIndex - 1) + "] " +
@@ -955,16 +918,14 @@ public class CsvTestHelper {
 				}
 			}
 		}
-		int expectedRecordNo = 0;
 		boolean unused = false;
-		for (ExpectedRecord record : expectedRecords) {
-			if ((parentRow == null || parentRow.equals(record.map.get(RuleFactWatcher.Constants.parentRowKey)))
-					&& record.fact != null && ! record.used) {
+		for (int k = 0; k < rows.size(); k++) {
+			ExpectedRecord record = expectedRecords.get(rows.get(k));
+			if (record.fact != null && ! record.used) {
 				logger.warn("**assertExpectCSV** Expected record {}[{}] is not used.",
-						factClassName, expectedRecordNo);
+						factClassName, checkByIndex ? k : rows.get(k));
 				unused = true;
 			}
-			expectedRecordNo++;
 		}
 		if (unused == true) {
 			fail("fail as there are unused expected record(s) of the " + factClassName + " class");
@@ -1032,6 +993,18 @@ public class CsvTestHelper {
 	 * @return input map
 	 */
 	public static Map<String, List<?>> loadInputMap(String fileListCsvPath) {
+		return loadInputMap(fileListCsvPath, false);
+	}
+
+	/**
+	 * create an input map building object hierarchy by using the path information.<BR>
+	 * if parallel is true, the input files are parsed in parallel on the common fork-join pool,<BR>
+	 * then parent/child relations are created in the order of "path" as the sequential load.
+	 * @param fileListCsvPath
+	 * @param parallel true -> parse the input files in parallel
+	 * @return input map
+	 */
+	public static Map<String, List<?>> loadInputMap(String fileListCsvPath, boolean parallel) {
 		Map<String, List<?>> retMap = new LinkedHashMap<String, List<?>>();
 		File folder = new File(fileListCsvPath).getParentFile();
 		List<CsvFiles> csvFiles = readCsvListFiles(fileListCsvPath);
@@ -1051,55 +1024,44 @@ public class CsvTestHelper {
 				return o1.path.compareTo(o2.path);
 			}
 		});
-		// process each expected file
+		Set<String> inputPaths = new HashSet<String>();
 		for (CsvFiles csvFile : csvFiles) {
-			Class<?> clazz = null;
-			try {
-				clazz = Class.forName(csvFile.clazz);
-			} catch (Exception e) {
-				e.printStackTrace();
-				fail("fail at load class:" + csvFile.clazz);
+			inputPaths.add(csvFile.path);
+		}
+		// parse each input file
+		List<InputFile> inputFiles = new ArrayList<InputFile>(csvFiles.size());
+		if (parallel) {
+			List<CompletableFuture<InputFile>> futures = new ArrayList<CompletableFuture<InputFile>>();
+			for (CsvFiles csvFile : csvFiles) {
+				boolean hasParent = inputPaths.contains(separateParentPath(csvFile.path)[0]);
+				futures.add(CompletableFuture.supplyAsync(() -> loadInputFile(folder, csvFile, hasParent),
+						ForkJoinPool.commonPool()));
 			}
-			List<?> objs = null;
-			try {
-				objs = loadCsv(new File(folder, csvFile.file).getCanonicalPath(), clazz, true);
-			} catch (Exception e) {
-				e.printStackTrace();
-				fail("fail at access file: " + csvFile.file);
-			}
-			
-			// Map case
-			if (csvFile.options != null && csvFile.options.indexOf(OPTION_KEY_TYPE + "=") != -1) {
-				Map<String, String> optionMap = getOptionMap(csvFile.options);
-				String keyType = optionMap.get(OPTION_KEY_TYPE);
-				Class<?> keyClass = null;
-				try {
-					keyClass = Class.forName(keyType);
-				} catch (Exception e) {
-					e.printStackTrace();
-					fail("fail at load class:" + keyType);
-				}
-				List<Map<String, Object>> keyMapList = null;
+			for (CompletableFuture<InputFile> future : futures) {
 				try {
-					keyMapList = loadKeyInfo(new File(folder, csvFile.file).getCanonicalPath());
-				} catch (Exception e) {
-					e.printStackTrace();
-					fail("fail at load keys:" + csvFile.file);
-				}
-				List<MapEntry> mapEntries = new ArrayList<MapEntry>();
-				int i = 0;
-				for (Map<String, Object> map : keyMapList) {
-					MapEntry entry = new MapEntry();
-					entry.key = getKeyValue(keyClass, map);
-					entry.value = objs.get(i);
-					mapEntries.add(entry);
-					i++;
+					inputFiles.add(future.join());
+				} catch (CompletionException e) {
+					// rethrow the failure (AssertionError of fail()) of the worker as it is
+					if (e.getCause() instanceof Error) {
+						throw (Error)e.getCause();
+					} else if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException)e.getCause();
+					}
+					throw e;
 				}
-				objs = mapEntries;
 			}
+		} else {
+			for (CsvFiles csvFile : csvFiles) {
+				boolean hasParent = inputPaths.contains(separateParentPath(csvFile.path)[0]);
+				inputFiles.add(loadInputFile(folder, csvFile, hasParent));
+			}
+		}
+		// create parent -> child relations in the order of "path"
+		for (InputFile inputFile : inputFiles) {
+			CsvFiles csvFile = inputFile.csvFile;
+			List<?> objs = inputFile.objs;
 			retMap.put(csvFile.path, objs);
 			
-			// create parent -> child relation
 			String path[] = separateParentPath(csvFile.path);
 			List<?> parents = retMap.get(path[0]);
 			if (parents != null) {
@@ -1112,13 +1074,7 @@ public class CsvTestHelper {
 						}
 					}
 				} else if (parents.size() > 1) {
-					List<Integer> indexs = null;
-					try {
-						indexs = loadParentRowInfo(new File(folder, csvFile.file).getCanonicalPath());
-					} catch (Exception e) {
-						e.printStackTrace();
-						fail("fail at access file: " + csvFile.file);
-					}
+					List<Integer> indexs = inputFile.parentRows;
 					for (int i=0; i < indexs.size(); i++) {
 						Object parent = parents.get(indexs.get(i)-1);
 						Object child = objs.get(i);
@@ -1133,106 +1089,110 @@ public class CsvTestHelper {
 		}
 		return retMap;
 	}
-	
-	private static Map<String, String> getOptionMap(String optionStr) {
-		LinkedHashMap<String, String> ret = new LinkedHashMap<String, String>();
-		if (optionStr == null) {
-			return ret;
+
+	/**
+	 * parse an input file with its meta columns.
+	 * @param folder folder of the CSV list file
+	 * @param csvFile the input file
+	 * @param hasParent true if the parent path is also an input file (parent# values are kept)
+	 * @return parsed input file
+	 */
+	private static InputFile loadInputFile(File folder, CsvFiles csvFile, boolean hasParent) {
+		InputFile inputFile = new InputFile();
+		inputFile.csvFile = csvFile;
+		Class<?> clazz = null;
+		try {
+			clazz = Class.forName(csvFile.clazz);
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail("fail at load class:" + csvFile.clazz);
 		}
-		String[] options = optionStr.split(",");
-		for (String option : options) {
-			if (option != null && option.indexOf("=") != -1) {
-				String[] keyValue = option.split("=");
-				ret.put(keyValue[0], keyValue[1]);
+		Class<?> keyClass = null;
+		// Map case
+		if (csvFile.options != null && csvFile.options.indexOf(OPTION_KEY_TYPE + "=") != -1) {
+			Map<String, String> optionMap = getOptionMap(csvFile.options);
+			String keyType = optionMap.get(OPTION_KEY_TYPE);
+			try {
+				keyClass = Class.forName(keyType);
+			} catch (Exception e) {
+				e.printStackTrace();
+				fail("fail at load class:" + keyType);
 			}
 		}
-		return ret;
-	}
-
-	private static List<Integer> loadParentRowInfo(String filename) {
-		ArrayList<Integer> ret = new ArrayList<Integer>();
-		ICsvMapReader mapReader = null;
+		String fileName = null;
 		try {
-//			Reader reader = new FileReader(filename);
-			Reader reader = new InputStreamReader(new FileInputStream(filename), FILE_ENCODING);
-			mapReader = new CsvMapReader(reader, CsvPreference.STANDARD_PREFERENCE);
-
-			// the header columns are used as the keys to the Map
-			String[] headers = mapReader.getHeader(true);
-			for (int i=0; i < headers.length; i++) {
-				// load the parentRow column only
-				if (headers[i] == null || !RuleFactWatcher.Constants.parentRowKey.equals(headers[i])) {
-					// ignore column
-					headers[i] = null;
+			fileName = new File(folder, csvFile.file).getCanonicalPath();
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail("fail at access file: " + csvFile.file);
+		}
+		// read the facts, keys and parent rows in one pass
+		List<Object> objs = new ArrayList<Object>();
+		List<Integer> parentRows = hasParent ? new ArrayList<Integer>() : null;
+		try (CsvRowReader<?> reader = CsvRowReader.open(fileName, clazz, true)) {
+			while (reader.hasNext()) {
+				CsvRow<?> row = reader.next();
+				if (keyClass == null) {
+					objs.add(row.getFact());
+				} else {
+					MapEntry entry = new MapEntry();
+					entry.key = getKeyValue(keyClass, row.getKeyMap());
+					entry.value = row.getFact();
+					objs.add(entry);
 				}
-			}
-			CellProcessor[] processors = new CellProcessor[headers.length];
-			for (int i=0; i<processors.length; i++) {
-				if (headers[i] == null)
-					processors[i] = new Optional();
-				else
-					processors[i] = new ParseInt();
-			}
-
-			Map<String, Object> factMap;
-			while( (factMap = mapReader.read(headers, processors)) != null ) {
-				ret.add((Integer)factMap.get(RuleFactWatcher.Constants.parentRowKey));
-			}
-		} catch (Exception ex) {
-			ex.printStackTrace();
-		} finally {
-			if( mapReader != null ) {
-				try {
-					mapReader.close();
-				} catch (IOException e) {
-					e.printStackTrace();
+				if (parentRows != null) {
+					parentRows.add(row.getParentRow());
 				}
 			}
 		}
-		return ret;
+		inputFile.objs = objs;
+		inputFile.parentRows = parentRows;
+		return inputFile;
 	}
 
-	private static List<Map<String, Object>> loadKeyInfo(String filename) {
-		ArrayList<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
-		ICsvMapReader mapReader = null;
-		try {
-			Reader reader = new InputStreamReader(new FileInputStream(filename), FILE_ENCODING);
-			mapReader = new CsvMapReader(reader, CsvPreference.STANDARD_PREFERENCE);
-
-			// the header columns are used as the keys to the Map
-			String[] headers = mapReader.getHeader(true);
-			for (int i=0; i < headers.length; i++) {
-				// load the key column only
-				if (headers[i] == null || !headers[i].startsWith(RuleFactWatcher.Constants.keyAttributeStr)) {
-					// ignore column
-					headers[i] = null;
-				}
-			}
-			CellProcessor[] processors = new CellProcessor[headers.length];
-			for (int i=0; i<processors.length; i++) {
-				processors[i] = new Optional();
-			}
+	/**
+	 * an input file (IN) parsed by loadInputMap
+	 */
+	private static class InputFile {
+		CsvFiles csvFile;
+		List<?> objs;
+		/** values of parent# column, null if the parent path is not an input file */
+		List<Integer> parentRows;
+	}
+	
+	/**
+	 * create the streaming loader of input data which is listed in the CSV list file.<BR>
+	 * the root facts are loaded with their children in batches, instead of loading all files into lists.
+	 * @param fileListCsvPath
+	 * @param batchSize number of root facts in a batch
+	 * @return streaming loader
+	 */
+	public static StreamingFactLoader loadInputMapAsStream(String fileListCsvPath, int batchSize) {
+		return new StreamingFactLoader(fileListCsvPath, batchSize);
+	}
 
-			Map<String, Object> factMap;
-			while( (factMap = mapReader.read(headers, processors)) != null ) {
-				ret.add(factMap);
-			}
-		} catch (Exception ex) {
-			ex.printStackTrace();
-		} finally {
-			if( mapReader != null ) {
-				try {
-					mapReader.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+	/**
+	 * parse the options column of the CSV list file (Files_*.csv).
+	 * @param optionStr options separated by "," (e.g. "keyType=java.lang.String")
+	 * @return option name -> value
+	 */
+	public static Map<String, String> getOptionMap(String optionStr) {
+		LinkedHashMap<String, String> ret = new LinkedHashMap<String, String>();
+		if (optionStr == null) {
+			return ret;
+		}
+		String[] options = optionStr.split(",");
+		for (String option : options) {
+			if (option != null && option.indexOf("=") != -1) {
+				String[] keyValue = option.split("=");
+				ret.put(keyValue[0], keyValue[1]);
 			}
 		}
 		return ret;
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private static void putChild(Object parent, String attribute, Object child) {
+	static void putChild(Object parent, String attribute, Object child) {
 		Object attr = RuleFactWatcher.getProperty(parent, attribute);
 		if (attr instanceof Collection) {
 			((Collection)attr).add(child);
@@ -1253,7 +1213,7 @@ public class CsvTestHelper {
 	 */
 	public static void setProperty(Object obj, String key, Object value) {
 		try {
-			PropertyUtils.setProperty(obj, key, value);
+			PropertyAccessors.setProperty(obj, key, value);
 		} catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
 			e.printStackTrace();
 			fail("fail to access setProperty(" + obj + ", " + key + ", " + value + ")");
@@ -1324,18 +1284,19 @@ public class CsvTestHelper {
 				fail("fail in assertExpectCSVs()");
 			}
 
+			// parse the expected file once for all parent rows
+			ExpectedCsvFile expected = null;
+			try {
+				expected = ExpectedCsvFile.load(new File(folder, csvFile.file).getCanonicalPath(), clazz, keyClass);
+			} catch (Exception e) {
+				e.printStackTrace();
+				fail("fail to access: " + csvFile.file);
+			}
+
 			if (parentActuals == null) {
 				// check actual records at the top level
-				String expectedFile = null;
-				try {
-					expectedFile = new File(folder, csvFile.file).getCanonicalPath();
-				} catch (Exception e) {
-					e.printStackTrace();
-					fail("fail to access: " + csvFile.file);
-				}
-				
 				logger.debug("**assertExpectCSV** Checking path:" + csvFile.path);
-				Integer[] indexArray = assertExpectCSV(actuals, expectedFile, clazz, keyClass, checkByIndex);
+				Integer[] indexArray = assertExpectCSVwithParentRow(actuals, expected, checkByIndex, null);
 				
 				// register for the next level
 				actualsMap.put(pathPrefix, (List<Object>)actuals);
@@ -1367,14 +1328,6 @@ public class CsvTestHelper {
 						internalActuals = null;
 					}
 
-					String childExpectedFile = null;
-					try {
-						childExpectedFile = new File(folder, csvFile.file).getCanonicalPath();
-					} catch (Exception e) {
-						e.printStackTrace();
-						fail("fail to access: " + csvFile.file);
-					}
-					
 					// check child
 					String parentRow = isNeedParentRow ? ("" + (parentIndexArray[i]+1)) : null;
 					logger.debug("**assertExpectCSV** Checking path:" + csvFile.path + ", "
@@ -1382,7 +1335,7 @@ public class CsvTestHelper {
 							);
 					Integer indexArray[] =
 							assertExpectCSVwithParentRow(internalActuals,
-									childExpectedFile, clazz, keyClass, checkByIndex, parentRow);
+									expected, checkByIndex, parentRow);
 					
 					// register internal actuals for the next level
 					List<Object> registeredList = (List<Object>)actualsMap.get(csvFile.path);
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ExpectedCsvFile is an expected CSV file (ex_*.csv) which is parsed only once.<BR>
+ * - records are the expected records of all rows in the file.<BR>
+ * - the row indexes are grouped by the parent# column,
+ *   so the records of a parent row are served from memory without reading the file again.<BR>
+ */
+public class ExpectedCsvFile {
+	private final String filename;
+	private final Class<?> clazz;
+	private final Class<?> keyClass;
+	private final CompiledColumnDef columnDef;
+	private final List<ExpectedRecord> records;
+	private final List<Integer> allRows;
+	private final Map<String, List<Integer>> rowsByParent;
+	private final Map<String, ExpectedRecordIndex> pkIndexByParent =
+			new HashMap<String, ExpectedRecordIndex>();
+
+	private ExpectedCsvFile(String filename, Class<?> clazz, Class<?> keyClass) {
+		this.filename = filename;
+		this.clazz = clazz;
+		this.keyClass = keyClass;
+		this.columnDef = CompiledColumnDef.get(filename, clazz.getSimpleName());
+		this.records = CsvTestHelper.readExpectedCsv(filename, clazz, keyClass);
+		List<Integer> rows = new ArrayList<Integer>(records.size());
+		for (int i = 0; i < records.size(); i++) {
+			rows.add(i);
+		}
+		this.allRows = Collections.unmodifiableList(rows);
+		this.rowsByParent = groupByParentRow(records);
+	}
+
+	/**
+	 * group the row indexes of expected records by the parent# column.
+	 * @param records expected records
+	 * @return map of parent# value -> row indexes (0 origin) in the file order
+	 */
+	static Map<String, List<Integer>> groupByParentRow(List<ExpectedRecord> records) {
+		Map<String, List<Integer>> partitions = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < records.size(); i++) {
+			Object parentRow = records.get(i).map.get(RuleFactWatcher.Constants.parentRowKey);
+			if (parentRow != null) {
+				List<Integer> partition = partitions.get(parentRow);
+				if (partition == null) {
+					partition = new ArrayList<Integer>();
+					partitions.put((String)parentRow, partition);
+				}
+				partition.add(i);
+			}
+		}
+		return partitions;
+	}
+
+	/**
+	 * parse an expected CSV file.
+	 * @param filename the file name which contains expected values
+	 * @param clazz the class of actuals
+	 * @param keyClass the key class if actuals are in a Map. it's null if actuals are not in a Map.
+	 * @return parsed expected CSV file
+	 */
+	public static ExpectedCsvFile load(String filename, Class<?> clazz, Class<?> keyClass) {
+		return new ExpectedCsvFile(filename, clazz, keyClass);
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	public Class<?> getClazz() {
+		return clazz;
+	}
+
+	public Class<?> getKeyClass() {
+		return keyClass;
+	}
+
+	public CompiledColumnDef getColumnDef() {
+		return columnDef;
+	}
+
+	/**
+	 * @return expected records of all rows in the file order
+	 */
+	public List<ExpectedRecord> getRecords() {
+		return records;
+	}
+
+	/**
+	 * get the row indexes (0 origin) of the records for a parent row.
+	 * @param parentRow value of the parent# column, null for all rows
+	 * @return row indexes in the file order
+	 */
+	public List<Integer> getRows(String parentRow) {
+		if (parentRow == null) {
+			return allRows;
+		}
+		List<Integer> rows = rowsByParent.get(parentRow);
+		return rows != null ? Collections.unmodifiableList(rows) : Collections.<Integer>emptyList();
+	}
+
+	/**
+	 * get the hash index by the testPK columns of the records for a parent row.
+	 * @param parentRow value of the parent# column, null for all rows
+	 * @return the index, null if there are no testPK columns in the .def file
+	 */
+	public ExpectedRecordIndex getPKIndex(String parentRow) {
+		if (columnDef.getTestPKColumns().isEmpty()) {
+			return null;
+		}
+		String partitionKey = (parentRow != null) ? parentRow : "";
+		ExpectedRecordIndex pkIndex = pkIndexByParent.get(partitionKey);
+		if (pkIndex == null) {
+			pkIndex = new ExpectedRecordIndex(records, getRows(parentRow), columnDef.getTestPKColumns());
+			pkIndexByParent.put(partitionKey, pkIndex);
+		}
+		return pkIndex;
+	}
+
+	/**
+	 * clear the used flags of the records.
+	 * @param rows row indexes
+	 */
+	void resetUsed(List<Integer> rows) {
+		for (Integer row : rows) {
+			records.get(row).used = false;
+		}
+	}
+}
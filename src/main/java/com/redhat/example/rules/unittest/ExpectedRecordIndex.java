@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ExpectedRecordIndex is a hash index of expected records by the values of the testPK columns.<BR>
+ * An actual fact matches the same records as the predicate created from the .def file,<BR>
+ * by one extraction of its testPK values and one hash lookup.<BR>
+ * Records without an expected fact (null records) are not indexed.
+ */
+public class ExpectedRecordIndex {
+	private final List<String> pkColumns;
+	private final Map<List<Object>, List<Integer>> index =
+			new HashMap<List<Object>, List<Integer>>();
+
+	/**
+	 * create an index of expected records.
+	 * @param records all expected records
+	 * @param rows row indexes of the records to index
+	 * @param pkColumns testPK column names (must not be empty)
+	 */
+	public ExpectedRecordIndex(List<ExpectedRecord> records, List<Integer> rows, List<String> pkColumns) {
+		this.pkColumns = pkColumns;
+		for (Integer row : rows) {
+			ExpectedRecord record = records.get(row);
+			if (record.fact == null) {
+				continue;
+			}
+			List<Object> key = extractKey(record.fact);
+			List<Integer> bucket = index.get(key);
+			if (bucket == null) {
+				bucket = new ArrayList<Integer>(1);
+				index.put(key, bucket);
+			}
+			bucket.add(row);
+		}
+	}
+
+	/**
+	 * look up the expected records which have the same testPK values as the fact.
+	 * @param fact an actual fact (or MapEntry)
+	 * @return row indexes of the matched records in the file order
+	 */
+	public List<Integer> lookup(Object fact) {
+		List<Integer> rows = index.get(extractKey(fact));
+		return rows != null ? rows : Collections.<Integer>emptyList();
+	}
+
+	private List<Object> extractKey(Object fact) {
+		Object[] values = new Object[pkColumns.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = RuleFactWatcher.getProperty(fact, pkColumns.get(i));
+		}
+		return Arrays.asList(values);
+	}
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Checksum;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FixtureCache keeps compiled fixtures, binary snapshots of the parsed rows of CSV files<BR>
+ * (in_*.csv, ex_*.csv and .def files), in a folder.<BR>
+ * <BR>
+ * - a compiled fixture is written while a CSV file is read for the first time.<BR>
+ * - it's used instead of the CSV file while the SHA-1 hash of the CSV file is unchanged.<BR>
+ *   (if the size and the modification time of the CSV file are same as the compiled one, the hash is not computed,<BR>
+ *   unless the CSV file was modified within 2 seconds before the compiled fixture was written.)<BR>
+ * - a compiled fixture which is broken (CRC32 mismatch) is deleted and the CSV file is read.<BR>
+ * - the folder is "target/rules-unittest-cache" by default.<BR>
+ *   set "-Drules.unittest.fixturecache=folder" to change it, or "-Drules.unittest.fixturecache=false" to disable the cache.<BR>
+ * - CSV files larger than "-Drules.unittest.fixturecache.maxsize=bytes" (64MB by default) are not compiled.<BR>
+ * <BR>
+ * format (DataOutputStream) :<BR>
+ * magic, version, encoding, size, lastModified, SHA-1 of the CSV file,<BR>
+ * then rows of (number of cells, line number, cells), the header is the first row. -1 as the end,<BR>
+ * then CRC32 of all the bytes before it.<BR>
+ */
+public class FixtureCache {
+	private static final Logger logger = LoggerFactory.getLogger(FixtureCache.class);
+
+	private static final int MAGIC = 0x52554346; // "RUCF"
+	private static final short VERSION = 2;
+	private static final int END_OF_ROWS = -1;
+	private static final int NULL_CELL = -1;
+	/** a CSV file modified within this time before its compiled fixture may have the same time after the change */
+	private static final long RACY_MILLIS = 2000;
+
+	private static final FixtureCache defaultCache = createDefault();
+
+	private final File folder;
+	private final long maxSize;
+
+	/**
+	 * @param folder folder of compiled fixtures
+	 * @param maxSize max size of CSV files to compile
+	 */
+	public FixtureCache(File folder, long maxSize) {
+		this.folder = folder;
+		this.maxSize = maxSize;
+	}
+
+	static FixtureCache createDefault() {
+		String folder = System.getProperty("rules.unittest.fixturecache", "target/rules-unittest-cache");
+		if ("false".equalsIgnoreCase(folder) || folder.isEmpty()) {
+			return null;
+		}
+		long maxSize = Long.getLong("rules.unittest.fixturecache.maxsize", 64L * 1024 * 1024);
+		return new FixtureCache(new File(folder), maxSize);
+	}
+
+	/**
+	 * @return the cache configured by system properties, null if disabled
+	 */
+	public static FixtureCache getDefault() {
+		return defaultCache;
+	}
+
+	/**
+	 * delete all compiled fixtures.
+	 */
+	public void clear() {
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().endsWith(".bin")) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * open the compiled fixture of a CSV file.
+	 * @param fileName CSV file
+	 * @param charset encoding of the CSV file
+	 * @return rows of the compiled fixture, null if there is no valid compiled fixture
+	 */
+	CsvRowSource open(String fileName, Charset charset) {
+		File source = new File(fileName);
+		File compiled = getCompiledFile(source);
+		if (compiled == null || !compiled.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			if (!isComplete(compiled)) {
+				logger.debug("compiled fixture is broken: {}", compiled);
+				compiled.delete();
+				return null;
+			}
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(compiled), 64 * 1024));
+			if (in.readInt() != MAGIC || in.readShort() != VERSION || !charset.name().equals(in.readUTF())) {
+				IOUtils.closeQuietly(in);
+				return null;
+			}
+			long size = in.readLong();
+			long lastModified = in.readLong();
+			byte[] hash = new byte[20];
+			in.readFully(hash);
+			boolean racy = lastModified >= compiled.lastModified() - RACY_MILLIS;
+			if (size != source.length()
+					|| ((lastModified != source.lastModified() || racy) && !Arrays.equals(hash, hash(source)))) {
+				IOUtils.closeQuietly(in);
+				return null;
+			}
+			if (racy && lastModified == source.lastModified()
+					&& System.currentTimeMillis() > lastModified + RACY_MILLIS) {
+				// the hash is same, a later change of the CSV file will change its time
+				compiled.setLastModified(System.currentTimeMillis());
+			}
+			logger.debug("use compiled fixture: {}", fileName);
+			return new CompiledRowSource(in);
+		} catch (IOException e) {
+			logger.debug("fail to read compiled fixture: " + compiled, e);
+			IOUtils.closeQuietly(in);
+			return null;
+		}
+	}
+
+	/**
+	 * compile a CSV file while it's read from the source.
+	 * @param fileName CSV file
+	 * @param charset encoding of the CSV file
+	 * @param source rows of the CSV file
+	 * @return rows of the source, all cells are read
+	 */
+	CsvRowSource record(String fileName, Charset charset, CsvRowSource source) {
+		File csv = new File(fileName);
+		File compiled = getCompiledFile(csv);
+		if (compiled == null || csv.length() > maxSize) {
+			return source;
+		}
+		File temp = null;
+		DataOutputStream out = null;
+		try {
+			folder.mkdirs();
+			temp = File.createTempFile(compiled.getName(), ".tmp", folder);
+			CheckedOutputStream checked = new CheckedOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024), new CRC32());
+			out = new DataOutputStream(checked);
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeUTF(charset.name());
+			out.writeLong(csv.length());
+			out.writeLong(csv.lastModified());
+			out.write(hash(csv));
+			return new RecordingRowSource(source, out, checked.getChecksum(), temp, compiled);
+		} catch (IOException e) {
+			logger.debug("fail to compile fixture: " + fileName, e);
+			IOUtils.closeQuietly(out);
+			if (temp != null) {
+				temp.delete();
+			}
+			return source;
+		}
+	}
+
+	private File getCompiledFile(File source) {
+		try {
+			String path = source.getCanonicalPath();
+			StringBuilder name = new StringBuilder(source.getName()).append('_');
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(path.getBytes(StandardCharsets.UTF_8))) {
+				name.append(String.format("%02x", b));
+			}
+			return new File(folder, name.append(".bin").toString());
+		} catch (IOException | NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * check the CRC32 at the end of a compiled fixture.
+	 */
+	private static boolean isComplete(File compiled) throws IOException {
+		long remaining = compiled.length() - 8;
+		if (remaining < 4) {
+			return false;
+		}
+		CRC32 crc = new CRC32();
+		DataInputStream in = new DataInputStream(new FileInputStream(compiled));
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			while (remaining > 0) {
+				int n = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+				if (n < 0) {
+					return false;
+				}
+				crc.update(buffer, 0, n);
+				remaining -= n;
+			}
+			return in.readLong() == crc.getValue();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return digest.digest();
+	}
+
+	private static void writeRow(DataOutputStream out, int lineNumber, List<String> row) throws IOException {
+		out.writeInt(row.size());
+		out.writeInt(lineNumber);
+		for (String cell : row) {
+			if (cell == null) {
+				out.writeInt(NULL_CELL);
+			} else {
+				byte[] bytes = cell.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+	}
+
+	/**
+	 * rows of a compiled fixture
+	 */
+	private static class CompiledRowSource implements CsvRowSource {
+		private final DataInputStream in;
+		private int lineNumber = 0;
+		private byte[] buffer = new byte[256];
+
+		CompiledRowSource(DataInputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public String[] getHeader() throws IOException {
+			List<String> header = read(null);
+			return (header != null) ? header.toArray(new String[header.size()]) : null;
+		}
+
+		@Override
+		public List<String> read(boolean[] wanted) throws IOException {
+			int size;
+			try {
+				size = in.readInt();
+			} catch (EOFException e) {
+				throw new IOException("compiled fixture is broken", e);
+			}
+			if (size == END_OF_ROWS) {
+				return null;
+			}
+			lineNumber = in.readInt();
+			List<String> row = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				int length = in.readInt();
+				if (length == NULL_CELL) {
+					row.add(null);
+				} else if (wanted != null && (i >= wanted.length || !wanted[i])) {
+					in.skipBytes(length);
+					row.add(null);
+				} else {
+					if (buffer.length < length) {
+						buffer = new byte[Math.max(length, buffer.length * 2)];
+					}
+					in.readFully(buffer, 0, length);
+					row.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+				}
+			}
+			return row;
+		}
+
+		@Override
+		public int getLineNumber() {
+			return lineNumber;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * rows of a CSV file which are written into a compiled fixture
+	 */
+	private static class RecordingRowSource implements CsvRowSource {
+		private final CsvRowSource source;
+		private final DataOutputStream out;
+		private final Checksum checksum;
+		private final File temp;
+		private final File compiled;
+		private boolean completed = false;
+		private boolean failed = false;
+
+		RecordingRowSource(CsvRowSource source, DataOutputStream out, Checksum checksum, File temp, File compiled) {
+			this.source = source;
+			this.out = out;
+			this.checksum = checksum;
+			this.temp = temp;
+			this.compiled = compiled;
+		}
+
+		@Override
+		public String[] getHeader() throws IOException {
+			String[] header = source.getHeader();
+			if (header != null) {
+				write(Arrays.asList(header));
+			}
+			return header;
+		}
+
+		@Override
+		public List<String> read(boolean[] wanted) throws IOException {
+			// read all cells to compile
+			List<String> row = source.read(null);
+			if (row != null) {
+				write(row);
+			} else if (!failed && !completed) {
+				try {
+					out.writeInt(END_OF_ROWS);
+					out.writeLong(checksum.getValue());
+					out.close();
+					Files.move(temp.toPath(), compiled.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					completed = true;
+				} catch (IOException e) {
+					logger.debug("fail to compile fixture: " + compiled, e);
+					failed = true;
+				}
+			}
+			return row;
+		}
+
+		private void write(List<String> row) {
+			if (failed) {
+				return;
+			}
+			try {
+				writeRow(out, source.getLineNumber(), row);
+			} catch (IOException e) {
+				logger.debug("fail to compile fixture: " + compiled, e);
+				failed = true;
+			}
+		}
+
+		@Override
+		public int getLineNumber() {
+			return source.getLineNumber();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				source.close();
+			} finally {
+				if (!completed) {
+					IOUtils.closeQuietly(out);
+					temp.delete();
+				}
+			}
+		}
+	}
+}
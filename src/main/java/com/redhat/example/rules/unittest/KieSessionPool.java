@@ -0,0 +1,267 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drools.core.base.MapGlobalResolver;
+import org.drools.core.impl.StatefulKnowledgeSessionImpl;
+import org.kie.api.KieBase;
+import org.kie.api.event.process.ProcessEventListener;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * KieSessionPool keeps idle KieSessions of a KieBase to reuse them.<BR>
+ * <BR>
+ * - {@link #borrow()} returns an idle session or a new session.<BR>
+ * - {@link #release(KieSession)} removes the listeners added after the creation, clears the globals,<BR>
+ *   resets the session (facts, agenda and processes) and keeps it up to the max size. other sessions are disposed.<BR>
+ *   a borrowed session has no facts, activations, globals nor listeners left by the previous borrower.<BR>
+ * - sessions which can't be reset are disposed.<BR>
+ * - the pool refers to the borrowed sessions weakly, a borrowed session may be disposed instead of released.<BR>
+ */
+public class KieSessionPool {
+	private static final Logger logger = LoggerFactory.getLogger(KieSessionPool.class);
+
+	private final KieBase kieBase;
+	private final int maxIdle;
+	private final ConcurrentLinkedDeque<KieSession> idle = new ConcurrentLinkedDeque<KieSession>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	/** borrowed and idle sessions -> listeners just after the creation */
+	private final Map<SessionKey, Listeners> initialListeners = new HashMap<SessionKey, Listeners>();
+	private final ReferenceQueue<KieSession> collected = new ReferenceQueue<KieSession>();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+
+	/**
+	 * @param kieBase KieBase of the sessions
+	 * @param maxIdle max number of idle sessions to keep
+	 */
+	public KieSessionPool(KieBase kieBase, int maxIdle) {
+		this.kieBase = kieBase;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * @return an idle session or a new session
+	 */
+	public KieSession borrow() {
+		KieSession session = idle.pollFirst();
+		if (session != null) {
+			idleCount.decrementAndGet();
+			reused.incrementAndGet();
+			return session;
+		}
+		session = kieBase.newKieSession();
+		// listeners added by the engine itself (e.g. for ruleflows) must be kept
+		synchronized (initialListeners) {
+			expunge();
+			initialListeners.put(new SessionKey(session, collected), new Listeners(session));
+		}
+		created.incrementAndGet();
+		return session;
+	}
+
+	/**
+	 * return a session to the pool.
+	 * @param session session from {@link #borrow()}
+	 */
+	public void release(KieSession session) {
+		if (session == null) {
+			return;
+		}
+		Listeners listeners;
+		synchronized (initialListeners) {
+			expunge();
+			listeners = initialListeners.get(new SessionKey(session, null));
+		}
+		if (listeners == null || !(session instanceof StatefulKnowledgeSessionImpl)
+				|| idleCount.get() >= maxIdle) {
+			dispose(session);
+			return;
+		}
+		try {
+			listeners.removeAddedListeners(session);
+			((StatefulKnowledgeSessionImpl) session).reset();
+			// reset() of some versions keeps the globals, the next borrower must not see them
+			((StatefulKnowledgeSessionImpl) session).setGlobalResolver(new MapGlobalResolver());
+		} catch (RuntimeException e) {
+			logger.debug("fail to reset a session, dispose it", e);
+			dispose(session);
+			return;
+		}
+		if (idleCount.incrementAndGet() > maxIdle) {
+			idleCount.decrementAndGet();
+			dispose(session);
+			return;
+		}
+		idle.offerFirst(session);
+	}
+
+	/**
+	 * dispose all idle sessions.
+	 */
+	public void clear() {
+		KieSession session;
+		while ((session = idle.pollFirst()) != null) {
+			idleCount.decrementAndGet();
+			dispose(session);
+		}
+	}
+
+	private void dispose(KieSession session) {
+		synchronized (initialListeners) {
+			initialListeners.remove(new SessionKey(session, null));
+		}
+		session.dispose();
+	}
+
+	/**
+	 * remove the entries of the sessions collected after disposed by the borrowers.
+	 */
+	private void expunge() {
+		Reference<? extends KieSession> key;
+		while ((key = collected.poll()) != null) {
+			initialListeners.remove(key);
+		}
+	}
+
+	/**
+	 * @return number of the sessions whose listeners are kept
+	 */
+	int getTrackedCount() {
+		synchronized (initialListeners) {
+			expunge();
+			return initialListeners.size();
+		}
+	}
+
+	public KieBase getKieBase() {
+		return kieBase;
+	}
+
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	/**
+	 * @return number of sessions created by this pool
+	 */
+	public long getCreatedCount() {
+		return created.get();
+	}
+
+	/**
+	 * @return number of borrowed sessions which were reused
+	 */
+	public long getReusedCount() {
+		return reused.get();
+	}
+
+	/**
+	 * weak key of a session compared by the identity
+	 */
+	private static class SessionKey extends WeakReference<KieSession> {
+		private final int hash;
+
+		SessionKey(KieSession session, ReferenceQueue<KieSession> queue) {
+			super(session, queue);
+			hash = System.identityHashCode(session);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof SessionKey)) {
+				return false;
+			}
+			KieSession session = get();
+			return session != null && session == ((SessionKey)obj).get();
+		}
+	}
+
+	/**
+	 * listeners of a session just after the creation.<BR>
+	 * they are kept weakly, as the listeners of the engine may refer to the session.
+	 */
+	private static class Listeners {
+		private final List<WeakReference<Object>> agendaEventListeners;
+		private final List<WeakReference<Object>> ruleRuntimeEventListeners;
+		private final List<WeakReference<Object>> processEventListeners;
+
+		Listeners(KieSession session) {
+			agendaEventListeners = weakList(session.getAgendaEventListeners());
+			ruleRuntimeEventListeners = weakList(session.getRuleRuntimeEventListeners());
+			processEventListeners = weakList(session.getProcessEventListeners());
+		}
+
+		private static List<WeakReference<Object>> weakList(Collection<?> listeners) {
+			List<WeakReference<Object>> list = new ArrayList<WeakReference<Object>>(listeners.size());
+			for (Object listener : listeners) {
+				list.add(new WeakReference<Object>(listener));
+			}
+			return list;
+		}
+
+		void removeAddedListeners(KieSession session) {
+			for (AgendaEventListener listener : new ArrayList<AgendaEventListener>(session.getAgendaEventListeners())) {
+				if (!containsSame(agendaEventListeners, listener)) {
+					session.removeEventListener(listener);
+				}
+			}
+			for (RuleRuntimeEventListener listener : new ArrayList<RuleRuntimeEventListener>(session.getRuleRuntimeEventListeners())) {
+				if (!containsSame(ruleRuntimeEventListeners, listener)) {
+					session.removeEventListener(listener);
+				}
+			}
+			for (ProcessEventListener listener : new ArrayList<ProcessEventListener>(session.getProcessEventListeners())) {
+				if (!containsSame(processEventListeners, listener)) {
+					session.removeEventListener(listener);
+				}
+			}
+		}
+
+		private static boolean containsSame(List<WeakReference<Object>> list, Object obj) {
+			for (WeakReference<Object> ref : list) {
+				if (ref.get() == obj) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
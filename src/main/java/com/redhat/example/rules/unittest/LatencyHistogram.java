@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram records durations (nanoseconds) into log-linear buckets like HdrHistogram.<BR>
+ * <BR>
+ * - values under 16 have their own buckets, larger values have 16 buckets per power of 2.<BR>
+ *   (the relative error of percentiles is less than 1/16)<BR>
+ * - recording is lock-free and doesn't allocate, it can be shared by threads.<BR>
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * record a value.
+	 * @param value duration in nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucketOf(value));
+		count.increment();
+		sum.add(value);
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value)) {
+				break;
+			}
+		}
+	}
+
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+	}
+
+	static long lowestValueOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return (long)(SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return sum of recorded values
+	 */
+	public long getTotal() {
+		return sum.sum();
+	}
+
+	/**
+	 * @return mean of recorded values, 0 if empty
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return (n == 0) ? 0 : (double)sum.sum() / n;
+	}
+
+	/**
+	 * @return max of recorded values
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile 0 to 100
+	 * @return the highest value of the bucket which contains the percentile (not over the max), 0 if empty
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = count.sum();
+		if (n == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long)Math.ceil(n * Math.min(percentile, 100.0) / 100.0));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			cumulative += counts.get(i);
+			if (cumulative >= target) {
+				long highest = (i + 1 < BUCKETS) ? lowestValueOf(i + 1) - 1 : Long.MAX_VALUE;
+				return Math.min(highest, max.get());
+			}
+		}
+		return max.get();
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.supercsv.exception.SuperCsvException;
+import org.supercsv.util.CsvContext;
+
+/**
+ * MappedCsvTokenizer splits a memory-mapped CSV file into cells on the raw bytes.<BR>
+ * It reads the same format as Super CSV with CsvPreference.STANDARD_PREFERENCE<BR>
+ * (delimiter ",", quote char "\"", empty lines are skipped, empty cells are null).<BR>
+ * <BR>
+ * - field boundaries are found by the bytes of ",", "\"", CR and LF,<BR>
+ *   which never appear inside of multi-byte characters of ASCII compatible encodings such as Shift_JIS and UTF-8.<BR>
+ *   (the trail bytes of Shift_JIS can be 0x40-0x7E, but never ",", "\"", CR nor LF.)<BR>
+ *   stateful encodings such as ISO-2022-JP are not supported, as their double-byte characters are made of 0x21-0x7E.<BR>
+ * - only the wanted cells are decoded into Strings, cells of ASCII only are copied without a decoder.<BR>
+ * - use {@link #isSupported(Charset)} to check the encoding, other encodings must be read by Super CSV.<BR>
+ * - files larger than {@link #MAX_FILE_SIZE} can't be mapped, they must be read by Super CSV.<BR>
+ */
+public class MappedCsvTokenizer implements CsvRowSource {
+	private static final byte DELIMITER = ',';
+	private static final byte QUOTE = '"';
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	/**
+	 * encodings whose bytes below 0x80 are always ASCII characters
+	 */
+	private static final Set<String> ASCII_COMPATIBLE = new HashSet<String>(Arrays.asList(
+			"US-ASCII", "UTF-8", "ISO-8859-1", "ISO-8859-15", "Shift_JIS", "windows-31j", "EUC-JP",
+			"windows-1252", "x-euc-jp-linux", "x-eucJP-Open", "x-SJIS_0213"));
+
+	/**
+	 * max size of a file to map
+	 */
+	public static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final ByteBuffer view;
+	private final Charset charset;
+	private final int limit;
+	private int position = 0;
+	private int lineNumber = 0;
+	private int rowNumber = 0;
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * @param fileName CSV file
+	 * @param charset encoding of the file (must be supported)
+	 */
+	public MappedCsvTokenizer(String fileName, Charset charset) throws IOException {
+		if (!isSupported(charset)) {
+			throw new IllegalArgumentException("not ASCII compatible encoding: " + charset);
+		}
+		this.charset = charset;
+		this.file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+			if (size > MAX_FILE_SIZE) {
+				throw new IOException("file is too large to map (use Super CSV): " + fileName);
+			}
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			this.view = ((ByteBuffer)buffer).duplicate();
+			this.limit = (int)size;
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * check if a file of the encoding can be tokenized on bytes.
+	 * @param charset encoding of the file
+	 * @return true if supported
+	 */
+	public static boolean isSupported(Charset charset) {
+		return ASCII_COMPATIBLE.contains(charset.name());
+	}
+
+	/**
+	 * read the header (the first row).
+	 * @return all cells of the header, null if the file is empty
+	 */
+	@Override
+	public String[] getHeader() {
+		List<String> row = read(null);
+		return (row != null) ? row.toArray(new String[row.size()]) : null;
+	}
+
+	/**
+	 * read the next row.
+	 * @param wanted flags of the columns to decode, null to decode all columns.<BR>
+	 *        cells of the other columns are null in the result.
+	 * @return cells of the row (null for empty cells), null at the end of file
+	 */
+	@Override
+	public List<String> read(boolean[] wanted) {
+		// skip empty lines
+		while (position < limit) {
+			byte b = buffer.get(position);
+			if (b == LF) {
+				position++;
+				lineNumber++;
+			} else if (b == CR) {
+				position++;
+				if (position < limit && buffer.get(position) == LF) {
+					position++;
+				}
+				lineNumber++;
+			} else {
+				break;
+			}
+		}
+		if (position >= limit) {
+			return null;
+		}
+		int startLine = lineNumber + 1;
+		List<String> columns = new ArrayList<String>((wanted != null) ? wanted.length : 16);
+		int column = 0;
+		while (true) {
+			boolean decode = (wanted == null) || (column < wanted.length && wanted[column]);
+			columns.add(readCell(decode, startLine));
+			if (position < limit && buffer.get(position) == DELIMITER) {
+				position++;
+				column++;
+				continue;
+			}
+			// end of line
+			if (position < limit) {
+				if (buffer.get(position) == CR) {
+					position++;
+				}
+				if (position < limit && buffer.get(position) == LF) {
+					position++;
+				}
+			}
+			lineNumber++;
+			break;
+		}
+		rowNumber++;
+		return columns;
+	}
+
+	private String readCell(boolean decode, int startLine) {
+		int start = position;
+		boolean ascii = true;
+		while (position < limit) {
+			byte b = buffer.get(position);
+			if (b == DELIMITER || b == CR || b == LF) {
+				break;
+			}
+			if (b == QUOTE) {
+				// copy the bytes before the quote, and read the rest with the quotes
+				int length = position - start;
+				if (decode && length > 0) {
+					copy(start, length);
+				}
+				return readQuotedCell(decode, startLine, length, ascii);
+			}
+			if (b < 0) {
+				ascii = false;
+			}
+			position++;
+		}
+		int length = position - start;
+		if (!decode || length == 0) {
+			return null;
+		}
+		copy(start, length);
+		return decode(length, ascii);
+	}
+
+	private void copy(int start, int length) {
+		ensureScratch(length);
+		// cast to Buffer for the byte code of Java 8 (ByteBuffer overrides them in Java 9)
+		((Buffer)view).limit(start + length);
+		((Buffer)view).position(start);
+		view.get(scratch, 0, length);
+	}
+
+	/**
+	 * read the rest of a cell which has a quote, as Super CSV does:<BR>
+	 * a quote starts or ends a quoted section at any place of the cell, "" is a quote in a quoted section,<BR>
+	 * and each line break (CRLF, CR or LF) in a quoted section is read as LF.
+	 * @param length length of the bytes already copied into the scratch
+	 * @param ascii true if the bytes already copied are ASCII only
+	 */
+	private String readQuotedCell(boolean decode, int startLine, int length, boolean ascii) {
+		boolean quoted = false;
+		while (true) {
+			if (position >= limit) {
+				if (quoted) {
+					throw new SuperCsvException("unexpected end of file while reading quoted column beginning on line "
+							+ startLine + " and ending on line " + lineNumber, new CsvContext(lineNumber, rowNumber + 1, 0));
+				}
+				break;
+			}
+			byte b = buffer.get(position);
+			if (!quoted) {
+				if (b == DELIMITER || b == CR || b == LF) {
+					break;
+				}
+				if (b == QUOTE) {
+					quoted = true;
+					position++;
+					continue;
+				}
+			} else if (b == QUOTE) {
+				position++;
+				if (position < limit && buffer.get(position) == QUOTE) {
+					// escaped quote
+					position++;
+					length = append(decode, length, QUOTE);
+				} else {
+					quoted = false;
+				}
+				continue;
+			} else if (b == CR || b == LF) {
+				position++;
+				if (b == CR && position < limit && buffer.get(position) == LF) {
+					position++;
+				}
+				lineNumber++;
+				length = append(decode, length, LF);
+				continue;
+			}
+			if (b < 0) {
+				ascii = false;
+			}
+			length = append(decode, length, b);
+			position++;
+		}
+		if (!decode || length == 0) {
+			return null;
+		}
+		return decode(length, ascii);
+	}
+
+	private int append(boolean decode, int length, byte b) {
+		if (decode) {
+			ensureScratch(length + 1);
+			scratch[length] = b;
+		}
+		return length + 1;
+	}
+
+	private String decode(int length, boolean ascii) {
+		if (ascii) {
+			// no decoder is required for ASCII
+			return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+		}
+		return new String(scratch, 0, length, charset);
+	}
+
+	private void ensureScratch(int length) {
+		if (scratch.length < length) {
+			scratch = Arrays.copyOf(scratch, Math.max(length, scratch.length * 2));
+		}
+	}
+
+	/**
+	 * @return line number of the end of the last row (1 origin)
+	 */
+	@Override
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * @return number of rows read including the header
+	 */
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
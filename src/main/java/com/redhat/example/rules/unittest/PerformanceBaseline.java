@@ -0,0 +1,429 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.prefs.CsvPreference;
+
+import com.redhat.example.rules.unittest.CsvTestHelper.CsvFiles;
+import com.redhat.example.rules.unittest.ScenarioRunner.Phase;
+import com.redhat.example.rules.unittest.ScenarioRunner.ScenarioResult;
+
+/**
+ * PerformanceBaseline keeps the history of the results of {@link ScenarioRunner} in a CSV file,<BR>
+ * and fails a test when a scenario becomes slower or fires more rules than its baseline.<BR>
+ * <BR>
+ * - a record has the execute time (p50 and mean), the load and assert time (p50), the rule firings and<BR>
+ *   the allocated bytes per scenario, with the hash of the rule resources and the hash of the fixture files.<BR>
+ * - the baseline of a scenario is the last record of the same scenario, session type and fixture hash.<BR>
+ *   when the rule hash differs from the baseline, the rules have been changed since the baseline.<BR>
+ * - a result is recorded only if it has no regression, so a regression isn't accepted by running the test again.<BR>
+ *   set "-Drules.unittest.baseline.update=true" to accept the results as the new baselines.<BR>
+ * <BR>
+ * set "-Drules.unittest.baseline.file=path" to change the history file (performance-baseline.csv),<BR>
+ * "-Drules.unittest.baseline.tolerance=N" to change the default tolerance (20%),<BR>
+ * "-Drules.unittest.baseline.rules=folder,..." to change the folders of the rule resources (src/main/resources,src/test/resources).<BR>
+ * <BR>
+ * <pre>
+ *   new PerformanceBaseline().assertNoRegression(scenarioRunner.run(), 20);
+ * </pre>
+ */
+public class PerformanceBaseline {
+	private static final Logger logger = LoggerFactory.getLogger(PerformanceBaseline.class);
+
+	public static String fileProperty = "rules.unittest.baseline.file";
+	public static String toleranceProperty = "rules.unittest.baseline.tolerance";
+	public static String updateProperty = "rules.unittest.baseline.update";
+	public static String rulesProperty = "rules.unittest.baseline.rules";
+
+	private static final String DEFAULT_FILE = "performance-baseline.csv";
+	private static final String DEFAULT_RULE_FOLDERS = "src/main/resources,src/test/resources";
+	private static final double DEFAULT_TOLERANCE = 20;
+
+	/**
+	 * extensions of the rule resources
+	 */
+	private static final List<String> RULE_EXTENSIONS = Arrays.asList(
+			".drl", ".dsl", ".dslr", ".rdrl", ".rdslr", ".xls", ".xlsx", ".gdst", ".scgd", ".rf", ".bpmn", ".bpmn2", "kmodule.xml");
+
+	private static final String[] HEADER = { "time", "scenario", "session", "ruleHash", "fixtureHash", "scenarios",
+			"executeP50", "executeMean", "loadP50", "assertP50", "firingsPerScenario", "allocatedBytesPerScenario" };
+
+	private final String fileName;
+	private final List<String> ruleFolders;
+	private String ruleHash = null;
+
+	/**
+	 * history file and rule folders are specified by the system properties.
+	 */
+	public PerformanceBaseline() {
+		this(System.getProperty(fileProperty, DEFAULT_FILE));
+	}
+
+	/**
+	 * @param fileName the history file
+	 */
+	public PerformanceBaseline(String fileName) {
+		this(fileName, Arrays.asList(System.getProperty(rulesProperty, DEFAULT_RULE_FOLDERS).split(",")));
+	}
+
+	/**
+	 * @param fileName the history file
+	 * @param ruleFolders folders of the rule resources to calculate the rule hash
+	 */
+	public PerformanceBaseline(String fileName, List<String> ruleFolders) {
+		this.fileName = fileName;
+		this.ruleFolders = ruleFolders;
+	}
+
+	/**
+	 * check the result with the baseline by the tolerance of "-Drules.unittest.baseline.tolerance" (20% by default).
+	 * @param scenario result of the scenario
+	 */
+	public void assertNoRegression(ScenarioResult scenario) {
+		String tolerance = System.getProperty(toleranceProperty);
+		assertNoRegression(scenario, StringUtils.isBlank(tolerance) ? DEFAULT_TOLERANCE : Double.parseDouble(tolerance));
+	}
+
+	/**
+	 * check the result with the baseline, and record the result if it has no regression.<BR>
+	 * fails if the execute time (p50) or the rule firings per scenario exceed the baseline by the tolerance.<BR>
+	 * the first result of a scenario is recorded as the baseline.
+	 * @param scenario result of the scenario
+	 * @param tolerance percentage (e.g. 20 -> fail if more than 120% of the baseline)
+	 */
+	public synchronized void assertNoRegression(ScenarioResult scenario, double tolerance) {
+		Record current = createRecord(scenario);
+		Record baseline = getBaseline(current);
+		if (baseline == null) {
+			logger.debug("##### No baseline of \"{}\" ({}), the result is recorded as the baseline. #####",
+					current.scenario, current.session);
+			append(current);
+			return;
+		}
+		logger.debug("##### BASELINE of \"{}\" ({}) recorded at {} #####", current.scenario, current.session, baseline.time);
+		if (!baseline.ruleHash.equals(current.ruleHash)) {
+			logger.debug("  * rules have been changed since the baseline ({} -> {})", baseline.ruleHash, current.ruleHash);
+		}
+		double limit = 1 + tolerance / 100;
+		List<String> regressions = new ArrayList<String>();
+		String executeTime = String.format("execute time (p50) %.1fus -> %.1fus",
+				baseline.executeP50 / 1000.0, current.executeP50 / 1000.0);
+		logger.debug("  * {}", executeTime);
+		if (current.executeP50 > baseline.executeP50 * limit) {
+			regressions.add(executeTime);
+		}
+		String firings = String.format("rule firings %.1f -> %.1f", baseline.firingsPerScenario, current.firingsPerScenario);
+		logger.debug("  * {}", firings);
+		if (current.firingsPerScenario > baseline.firingsPerScenario * limit) {
+			regressions.add(firings);
+		}
+		if (baseline.allocatedBytesPerScenario >= 0 && current.allocatedBytesPerScenario >= 0) {
+			logger.debug("  * allocation {} bytes -> {} bytes", baseline.allocatedBytesPerScenario, current.allocatedBytesPerScenario);
+		}
+		if (regressions.isEmpty()) {
+			append(current);
+		} else if (Boolean.getBoolean(updateProperty)) {
+			logger.debug("  * the regression is accepted as the new baseline: {}", regressions);
+			append(current);
+		} else {
+			fail("performance regression of \"" + current.scenario + "\" (" + current.session
+					+ ") over " + tolerance + "%: " + StringUtils.join(regressions, ", "));
+		}
+	}
+
+	/**
+	 * record the result without checking.
+	 * @param scenario result of the scenario
+	 */
+	public synchronized void record(ScenarioResult scenario) {
+		append(createRecord(scenario));
+	}
+
+	/**
+	 * @param scenario CSV file list of the scenario
+	 * @return the records of the scenario in the recorded order
+	 */
+	public synchronized List<Record> getHistory(String scenario) {
+		List<Record> history = new ArrayList<Record>();
+		for (Record record : readRecords()) {
+			if (record.scenario.equals(scenario)) {
+				history.add(record);
+			}
+		}
+		return history;
+	}
+
+	private Record getBaseline(Record current) {
+		List<Record> records = readRecords();
+		Collections.reverse(records);
+		for (Record record : records) {
+			if (record.scenario.equals(current.scenario) && record.session.equals(current.session)
+					&& record.fixtureHash.equals(current.fixtureHash)) {
+				return record;
+			}
+		}
+		return null;
+	}
+
+	private Record createRecord(ScenarioResult scenario) {
+		Record record = new Record();
+		record.time = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss").format(new Date());
+		record.scenario = scenario.getScenario();
+		record.session = scenario.isStateful() ? "stateful" : "stateless";
+		record.ruleHash = getRuleHash();
+		record.fixtureHash = getFixtureHash(scenario.getScenario());
+		record.scenarios = scenario.getScenarios();
+		record.executeP50 = scenario.getHistogram(Phase.EXECUTE).getValueAtPercentile(50);
+		record.executeMean = (long)scenario.getHistogram(Phase.EXECUTE).getMean();
+		record.loadP50 = scenario.getHistogram(Phase.LOAD).getValueAtPercentile(50);
+		record.assertP50 = scenario.getHistogram(Phase.ASSERT).getValueAtPercentile(50);
+		record.firingsPerScenario = scenario.getFiringsPerScenario();
+		record.allocatedBytesPerScenario = scenario.getAllocatedBytesPerScenario();
+		return record;
+	}
+
+	/**
+	 * @return hash of the rule resources in the rule folders
+	 */
+	private String getRuleHash() {
+		if (ruleHash == null) {
+			TreeSet<String> files = new TreeSet<String>();
+			for (String folder : ruleFolders) {
+				File dir = new File(folder.trim());
+				if (!dir.isDirectory()) {
+					continue;
+				}
+				try (Stream<Path> paths = Files.walk(dir.toPath())) {
+					paths.filter(path -> Files.isRegularFile(path) && isRuleResource(path.getFileName().toString()))
+						.forEach(path -> files.add(path.toString()));
+				} catch (IOException e) {
+					e.printStackTrace();
+					fail("fail to access: " + folder);
+				}
+			}
+			ruleHash = hash(files);
+		}
+		return ruleHash;
+	}
+
+	private static boolean isRuleResource(String name) {
+		for (String extension : RULE_EXTENSIONS) {
+			if (name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param fileListCsvPath CSV file list of the scenario
+	 * @return hash of the file list, the listed files and the column definitions
+	 */
+	static String getFixtureHash(String fileListCsvPath) {
+		File folder = new File(fileListCsvPath).getAbsoluteFile().getParentFile();
+		TreeSet<String> files = new TreeSet<String>();
+		files.add(fileListCsvPath);
+		for (CsvFiles csvFile : CsvTestHelper.readCsvListFiles(fileListCsvPath)) {
+			files.add(new File(folder, csvFile.getFile()).getPath());
+		}
+		File[] defs = folder.listFiles((dir, name) -> name.endsWith(".def"));
+		if (defs != null) {
+			for (File def : defs) {
+				files.add(def.getPath());
+			}
+		}
+		return hash(files);
+	}
+
+	private static String hash(TreeSet<String> files) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		for (String file : files) {
+			// file names are not included, the same contents in another folder have the same hash
+			try {
+				digest.update(Files.readAllBytes(new File(file).toPath()));
+			} catch (IOException e) {
+				e.printStackTrace();
+				fail("fail to access: " + file);
+			}
+			digest.update((byte)0);
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : Arrays.copyOf(digest.digest(), 8)) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private List<Record> readRecords() {
+		List<Record> records = new ArrayList<Record>();
+		File file = new File(fileName);
+		if (!file.exists()) {
+			return records;
+		}
+		try (CsvListReader reader = new CsvListReader(new InputStreamReader(
+				new FileInputStream(file), StandardCharsets.UTF_8), CsvPreference.STANDARD_PREFERENCE)) {
+			reader.getHeader(true);
+			List<String> row;
+			while ((row = reader.read()) != null) {
+				records.add(Record.parse(row));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail("fail to read: " + fileName);
+		}
+		return records;
+	}
+
+	private void append(Record record) {
+		File file = new File(fileName);
+		boolean isNew = !file.exists() || file.length() == 0;
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		try (CsvListWriter writer = new CsvListWriter(new OutputStreamWriter(
+				new FileOutputStream(file, true), StandardCharsets.UTF_8), CsvPreference.STANDARD_PREFERENCE)) {
+			if (isNew) {
+				writer.writeHeader(HEADER);
+			}
+			writer.write(record.toRow());
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("fail to write: " + fileName);
+		}
+	}
+
+	/**
+	 * a record of the history
+	 */
+	public static class Record {
+		private String time;
+		private String scenario;
+		private String session;
+		private String ruleHash;
+		private String fixtureHash;
+		private long scenarios;
+		private long executeP50;
+		private long executeMean;
+		private long loadP50;
+		private long assertP50;
+		private double firingsPerScenario;
+		private long allocatedBytesPerScenario;
+
+		static Record parse(List<String> row) {
+			Record record = new Record();
+			record.time = row.get(0);
+			record.scenario = row.get(1);
+			record.session = row.get(2);
+			record.ruleHash = row.get(3);
+			record.fixtureHash = row.get(4);
+			record.scenarios = Long.parseLong(row.get(5));
+			record.executeP50 = Long.parseLong(row.get(6));
+			record.executeMean = Long.parseLong(row.get(7));
+			record.loadP50 = Long.parseLong(row.get(8));
+			record.assertP50 = Long.parseLong(row.get(9));
+			record.firingsPerScenario = Double.parseDouble(row.get(10));
+			record.allocatedBytesPerScenario = Long.parseLong(row.get(11));
+			return record;
+		}
+
+		List<Object> toRow() {
+			return Arrays.<Object>asList(time, scenario, session, ruleHash, fixtureHash, scenarios,
+					executeP50, executeMean, loadP50, assertP50, firingsPerScenario, allocatedBytesPerScenario);
+		}
+
+		public String getTime() {
+			return time;
+		}
+		public String getScenario() {
+			return scenario;
+		}
+		/**
+		 * @return "stateful" or "stateless"
+		 */
+		public String getSession() {
+			return session;
+		}
+		public String getRuleHash() {
+			return ruleHash;
+		}
+		public String getFixtureHash() {
+			return fixtureHash;
+		}
+		public long getScenarios() {
+			return scenarios;
+		}
+		/**
+		 * @return p50 of the execute time in nanoseconds
+		 */
+		public long getExecuteP50() {
+			return executeP50;
+		}
+		/**
+		 * @return mean of the execute time in nanoseconds
+		 */
+		public long getExecuteMean() {
+			return executeMean;
+		}
+		public long getLoadP50() {
+			return loadP50;
+		}
+		public long getAssertP50() {
+			return assertP50;
+		}
+		public double getFiringsPerScenario() {
+			return firingsPerScenario;
+		}
+		/**
+		 * @return allocated bytes per scenario, -1 if not measured
+		 */
+		public long getAllocatedBytesPerScenario() {
+			return allocatedBytesPerScenario;
+		}
+	}
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.beanutils.MethodUtils;
+import org.apache.commons.beanutils.NestedNullException;
+import org.apache.commons.beanutils.PropertyUtils;
+
+/**
+ * PropertyAccessors reads and writes bean properties by a property path<BR>
+ * such as "name", "child.name" and "childList[0].name" with the same semantics as PropertyUtils.<BR>
+ * <BR>
+ * Each property path is parsed once, and the read / write methods of each (class, property) pair<BR>
+ * are resolved once to MethodHandles, so an access costs MethodHandle invocations only.<BR>
+ * The methods are resolved to public methods of public classes (interfaces) as PropertyUtils does.<BR>
+ * Mapped properties ("attr(key)") are delegated to PropertyUtils.
+ */
+public class PropertyAccessors {
+
+	/**
+	 * property path -> parsed segments (null if PropertyUtils is required)
+	 */
+	private static final Map<String, Segment[]> pathCache = new ConcurrentHashMap<String, Segment[]>();
+
+	/**
+	 * class -> { property name -> compiled accessor } (replaced by clearCache())
+	 */
+	private static volatile ClassValue<Map<String, BeanProperty>> propertyCache = newPropertyCache();
+
+	private static final Segment[] UNSUPPORTED = new Segment[0];
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private PropertyAccessors() {
+	}
+
+	/**
+	 * get property value of the bean.
+	 * @param bean target object
+	 * @param path property path
+	 * @return property value
+	 */
+	public static Object getProperty(Object bean, String path)
+			throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+		Segment[] segments = parse(path);
+		if (segments == UNSUPPORTED) {
+			return PropertyUtils.getProperty(bean, path);
+		}
+		Object current = bean;
+		for (int i = 0; i < segments.length; i++) {
+			if (current == null) {
+				throw new NestedNullException("Null property value for '" + segments[i - 1].name +
+						"' on bean class '" + bean.getClass() + "'");
+			}
+			current = segments[i].get(current);
+		}
+		return current;
+	}
+
+	/**
+	 * set property value of the bean.
+	 * @param bean target object
+	 * @param path property path
+	 * @param value value to set
+	 */
+	public static void setProperty(Object bean, String path, Object value)
+			throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+		Segment[] segments = parse(path);
+		if (segments == UNSUPPORTED) {
+			PropertyUtils.setProperty(bean, path, value);
+			return;
+		}
+		Object current = bean;
+		for (int i = 0; i < segments.length - 1; i++) {
+			current = segments[i].get(current);
+			if (current == null) {
+				throw new NestedNullException("Null property value for '" + segments[i].name +
+						"' on bean class '" + bean.getClass() + "'");
+			}
+		}
+		segments[segments.length - 1].set(current, value);
+	}
+
+	/**
+	 * get the property type of a simple (not nested) property.
+	 * @param clazz bean class
+	 * @param name property name
+	 * @return type of the property, null if the class has no such property
+	 */
+	public static Class<?> getPropertyType(Class<?> clazz, String name) {
+		BeanProperty property = getBeanProperty(clazz, name);
+		return property != null ? property.type : null;
+	}
+
+	/**
+	 * check if the simple (not nested) property can be written.
+	 * @param clazz bean class
+	 * @param name property name
+	 * @return true if the class has a write method of the property
+	 */
+	public static boolean isWritable(Class<?> clazz, String name) {
+		BeanProperty property = getBeanProperty(clazz, name);
+		return property != null && property.setter != null;
+	}
+
+	/**
+	 * get the compiled write method of a simple (not nested) property.
+	 * @param clazz bean class
+	 * @param name property name
+	 * @return MethodHandle of type (Object, Object)void, null if the property can't be written
+	 */
+	static MethodHandle getSetter(Class<?> clazz, String name) {
+		BeanProperty property = getBeanProperty(clazz, name);
+		return property != null ? property.setter : null;
+	}
+
+	/**
+	 * clear all parsed paths and compiled accessors. (compiled accessors are kept per class otherwise)
+	 */
+	public static void clearCache() {
+		pathCache.clear();
+		propertyCache = newPropertyCache();
+	}
+
+	private static ClassValue<Map<String, BeanProperty>> newPropertyCache() {
+		return new ClassValue<Map<String, BeanProperty>>() {
+			@Override
+			protected Map<String, BeanProperty> computeValue(Class<?> type) {
+				return new ConcurrentHashMap<String, BeanProperty>();
+			}
+		};
+	}
+
+	private static Segment[] parse(String path) {
+		Segment[] segments = pathCache.get(path);
+		if (segments == null) {
+			segments = compile(path);
+			pathCache.put(path, segments);
+		}
+		return segments;
+	}
+
+	private static Segment[] compile(String path) {
+		if (path.indexOf('(') != -1 || path.indexOf(')') != -1) {
+			return UNSUPPORTED;
+		}
+		String[] names = path.split("\\.", -1);
+		Segment[] segments = new Segment[names.length];
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			int index = -1;
+			int open = name.indexOf('[');
+			if (open != -1) {
+				int close = name.indexOf(']', open);
+				if (close != name.length() - 1) {
+					return UNSUPPORTED;
+				}
+				try {
+					index = Integer.parseInt(name.substring(open + 1, close));
+				} catch (NumberFormatException e) {
+					return UNSUPPORTED;
+				}
+				if (index < 0) {
+					// PropertyUtils reports the error
+					return UNSUPPORTED;
+				}
+				name = name.substring(0, open);
+			}
+			if (name.length() == 0) {
+				return UNSUPPORTED;
+			}
+			segments[i] = new Segment(name, index);
+		}
+		return segments;
+	}
+
+	private static BeanProperty getBeanProperty(Class<?> clazz, String name) {
+		Map<String, BeanProperty> properties = propertyCache.get(clazz);
+		BeanProperty property = properties.get(name);
+		if (property == null) {
+			property = BeanProperty.resolve(clazz, name);
+			properties.put(name, property);
+		}
+		return property != BeanProperty.NONE ? property : null;
+	}
+
+	/**
+	 * a part of a property path, "name" or "name[index]"
+	 */
+	private static class Segment {
+		final String name;
+		final int index;
+
+		Segment(String name, int index) {
+			this.name = name;
+			this.index = index;
+		}
+
+		@SuppressWarnings("rawtypes")
+		Object get(Object bean) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+			if (bean instanceof Map) {
+				if (index >= 0) {
+					return PropertyUtils.getProperty(bean, name + "[" + index + "]");
+				}
+				return ((Map)bean).get(name);
+			}
+			BeanProperty property = getBeanProperty(bean.getClass(), name);
+			if (index < 0) {
+				if (property == null || property.getter == null) {
+					throw new NoSuchMethodException("Unknown property '" + name + "' on class '" + bean.getClass() + "'");
+				}
+				return property.get(bean);
+			}
+			if (property != null && property.indexedGetter != null) {
+				return property.getIndexed(bean, index);
+			}
+			if (property == null || property.getter == null) {
+				throw new NoSuchMethodException("Unknown property '" + name + "' on bean class '" + bean.getClass() + "'");
+			}
+			Object value = property.get(bean);
+			if (value == null) {
+				throw new NullPointerException("Index value for property '" + name + "' on bean class '" + bean.getClass() + "' is null");
+			} else if (value.getClass().isArray()) {
+				return Array.get(value, index);
+			} else if (value instanceof List) {
+				return ((List)value).get(index);
+			}
+			throw new IllegalArgumentException("Property '" + name + "' is not indexed on bean class '" + bean.getClass() + "'");
+		}
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		void set(Object bean, Object value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+			if (bean instanceof Map) {
+				if (index >= 0) {
+					PropertyUtils.setProperty(bean, name + "[" + index + "]", value);
+				} else {
+					((Map)bean).put(name, value);
+				}
+				return;
+			}
+			BeanProperty property = getBeanProperty(bean.getClass(), name);
+			if (index < 0) {
+				if (property == null || property.setter == null) {
+					throw new NoSuchMethodException("Property '" + name + "' has no setter method in class '" + bean.getClass() + "'");
+				}
+				property.set(bean, value);
+				return;
+			}
+			if (property != null && property.indexedSetter != null) {
+				property.setIndexed(bean, index, value);
+				return;
+			}
+			if (property == null || property.getter == null) {
+				throw new NoSuchMethodException("Unknown property '" + name + "' on bean class '" + bean.getClass() + "'");
+			}
+			Object target = property.get(bean);
+			if (target == null) {
+				throw new NullPointerException("Index value for property '" + name + "' on bean class '" + bean.getClass() + "' is null");
+			} else if (target.getClass().isArray()) {
+				Array.set(target, index, value);
+			} else if (target instanceof List) {
+				((List)target).set(index, value);
+			} else {
+				throw new IllegalArgumentException("Property '" + name + "' is not indexed on bean class '" + bean.getClass() + "'");
+			}
+		}
+	}
+
+	/**
+	 * compiled read / write methods of a property of a class
+	 */
+	private static class BeanProperty {
+		static final BeanProperty NONE = new BeanProperty(null, null, null, null, null);
+
+		final Class<?> type;
+		final MethodHandle getter;
+		final MethodHandle setter;
+		final MethodHandle indexedGetter;
+		final MethodHandle indexedSetter;
+
+		BeanProperty(Class<?> type, MethodHandle getter, MethodHandle setter,
+				MethodHandle indexedGetter, MethodHandle indexedSetter) {
+			this.type = type;
+			this.getter = getter;
+			this.setter = setter;
+			this.indexedGetter = indexedGetter;
+			this.indexedSetter = indexedSetter;
+		}
+
+		static BeanProperty resolve(Class<?> clazz, String name) {
+			PropertyDescriptor[] descriptors;
+			try {
+				descriptors = Introspector.getBeanInfo(clazz).getPropertyDescriptors();
+			} catch (IntrospectionException e) {
+				return NONE;
+			}
+			for (PropertyDescriptor descriptor : descriptors) {
+				if (!name.equals(descriptor.getName())) {
+					continue;
+				}
+				MethodHandle indexedGetter = null;
+				MethodHandle indexedSetter = null;
+				if (descriptor instanceof java.beans.IndexedPropertyDescriptor) {
+					java.beans.IndexedPropertyDescriptor indexed = (java.beans.IndexedPropertyDescriptor)descriptor;
+					indexedGetter = unreflect(clazz, indexed.getIndexedReadMethod(),
+							MethodType.methodType(Object.class, Object.class, int.class));
+					indexedSetter = unreflect(clazz, indexed.getIndexedWriteMethod(),
+							MethodType.methodType(void.class, Object.class, int.class, Object.class));
+				}
+				Class<?> type = descriptor.getPropertyType();
+				if (type == null && descriptor instanceof java.beans.IndexedPropertyDescriptor) {
+					type = ((java.beans.IndexedPropertyDescriptor)descriptor).getIndexedPropertyType();
+				}
+				return new BeanProperty(type,
+						unreflect(clazz, descriptor.getReadMethod(), GETTER_TYPE),
+						unreflect(clazz, descriptor.getWriteMethod(), SETTER_TYPE),
+						indexedGetter, indexedSetter);
+			}
+			return NONE;
+		}
+
+		/**
+		 * @return MethodHandle of the accessible (public) method, null if the method is not accessible
+		 */
+		private static MethodHandle unreflect(Class<?> clazz, Method method, MethodType type) {
+			Method accessible = (method != null) ? MethodUtils.getAccessibleMethod(clazz, method) : null;
+			if (accessible == null) {
+				return null;
+			}
+			try {
+				return MethodHandles.publicLookup().unreflect(accessible).asType(type);
+			} catch (IllegalAccessException | RuntimeException e) {
+				return null;
+			}
+		}
+
+		Object get(Object bean) throws InvocationTargetException {
+			try {
+				return (Object)getter.invokeExact(bean);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		Object getIndexed(Object bean, int index) throws InvocationTargetException {
+			try {
+				return (Object)indexedGetter.invokeExact(bean, index);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		void set(Object bean, Object value) throws InvocationTargetException {
+			checkArgument(type, value);
+			try {
+				setter.invokeExact(bean, value);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		void setIndexed(Object bean, int index, Object value) throws InvocationTargetException {
+			checkArgument(type != null && type.isArray() ? type.getComponentType() : null, value);
+			try {
+				indexedSetter.invokeExact(bean, index, value);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		private static void checkArgument(Class<?> type, Object value) {
+			if (type == null) {
+				return;
+			}
+			if (value == null) {
+				if (type.isPrimitive()) {
+					throw new IllegalArgumentException("argument type mismatch (null for " + type.getName() + ")");
+				}
+			} else if (!wrap(type).isInstance(value)) {
+				throw new IllegalArgumentException("argument type mismatch (" + value.getClass().getName()
+						+ " for " + type.getName() + ")");
+			}
+		}
+
+		private static Class<?> wrap(Class<?> type) {
+			if (!type.isPrimitive()) {
+				return type;
+			} else if (type == int.class) {
+				return Integer.class;
+			} else if (type == long.class) {
+				return Long.class;
+			} else if (type == boolean.class) {
+				return Boolean.class;
+			} else if (type == double.class) {
+				return Double.class;
+			} else if (type == float.class) {
+				return Float.class;
+			} else if (type == short.class) {
+				return Short.class;
+			} else if (type == byte.class) {
+				return Byte.class;
+			} else if (type == char.class) {
+				return Character.class;
+			}
+			return Void.class;
+		}
+	}
+}
@@ -15,15 +15,22 @@
  */
 package com.redhat.example.rules.unittest;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.LinkedHashSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.lang3.StringUtils;
 
 import org.kie.api.KieBase;
@@ -43,7 +50,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Rule Coverage Logger
- * 
+ * <BR>
+ * The coverage is shared by all instances and threads, it's updated only by atomic operations.<BR>
+ * Each rule has a dense id given at the registration, and its firings are counted<BR>
+ * by a striped counter (LongAdder) of the id. A rule is covered if it's fired at least once.<BR>
  */
 public class RuleCoverageLogger extends DefaultAgendaEventListener {
 	private static Logger logger = LoggerFactory.getLogger(RuleCoverageLogger.class);
@@ -58,10 +68,15 @@ public class RuleCoverageLogger extends DefaultAgendaEventListener {
 			new ConcurrentSkipListSet<String>();
 
 	/**
-	 * Map of Rule -> isExecuted (True of False)
+	 * Map of Rule -> dense rule id
 	 */
-	private static final Map<Rule, Boolean> ruleCoverageMap =
-			new ConcurrentHashMap<Rule, Boolean>();
+	private static final Map<Rule, Integer> ruleIdMap =
+			new ConcurrentHashMap<Rule, Integer>();
+
+	/**
+	 * rules and their counters by rule id
+	 */
+	private static volatile RuleTable ruleTable = new RuleTable(64);
 
 	/**
 	 * Map of RuleGroup -> List<Rule>
@@ -75,7 +90,13 @@ public class RuleCoverageLogger extends DefaultAgendaEventListener {
 	private static final Map<String, Set<String>> ruleFlowToRuleGroupMap =
 			new ConcurrentHashMap<String, Set<String>>();
 
-	private KieRuntimeEventManager session = null;
+	/**
+	 * Set of KieBases whose processes and packages are registered
+	 */
+	private static final Set<KieBase> registeredKieBaseSet =
+			Collections.newSetFromMap(new ConcurrentHashMap<KieBase, Boolean>());
+
+	private volatile KieRuntimeEventManager session = null;
 	
 	/**
 	 * Set Session
@@ -93,7 +114,7 @@ public class RuleCoverageLogger extends DefaultAgendaEventListener {
 		} else if (session instanceof StatelessKieSession) {
 			kieBase = ((StatelessKieSession)session).getKieBase();
 		}
-		if (kieBase != null) {
+		if (kieBase != null && registeredKieBaseSet.add(kieBase)) {
 			for (org.kie.api.definition.process.Process process : kieBase.getProcesses()) {
 				Set<String> ruleGroups = new LinkedHashSet<String>();
 				for (Node node : ((RuleFlowProcess)process).getNodes()) {
@@ -101,11 +122,8 @@ public class RuleCoverageLogger extends DefaultAgendaEventListener {
 						ruleGroups.add(((RuleSetNode)node).getRuleFlowGroup());
 					}
 				}
-				Set<String> previous = ruleFlowToRuleGroupMap.put(process.getId(), ruleGroups);
-				if (previous != null) {
-					// already registered (concurrent access)
-					ruleFlowToRuleGroupMap.put(process.getId(), previous);
-				}
+				// keep the one already registered (concurrent access)
+				ruleFlowToRuleGroupMap.putIfAbsent(process.getId(), ruleGroups);
 			}
 			for (KiePackage kiePackage : kieBase.getKiePackages()) {
 				initPackage(kiePackage);
@@ -125,9 +143,16 @@ public class RuleCoverageLogger extends DefaultAgendaEventListener {
 		if (session == null) {
 			setSession(event.getKieRuntime(), true);
 		}
-		Boolean ret = ruleCoverageMap.put(event.getMatch().getRule(), Boolean.TRUE);
-		if (ret == null || !ret) {
-			logger.debug("Rule : \"{}\" is covered !", event.getMatch().getRule().getName());
+		Rule rule = event.getMatch().getRule();
+		int id = getRuleId(rule);
+		RuleTable table = ruleTable;
+		if (id >= table.size) {
+			// cleared concurrently
+			return;
+		}
+		table.firingCounts[id].increment();
+		if (table.covered.get(id) == 0 && table.covered.compareAndSet(id, 0, 1)) {
+			logger.debug("Rule : \"{}\" is covered !", rule.getName());
 		}
 	}
 
@@ -142,25 +167,33 @@ public class RuleCoverageLogger extends DefaultAgendaEventListener {
 		}
 		final RuleComparator ruleComparator = new RuleComparator();
 		for (Rule rule : kiePackage.getRules()) {
-			Boolean previous = ruleCoverageMap.put(rule, Boolean.FALSE);
-			if (previous != null) {
-				// already registered (concurrent access)
-				ruleCoverageMap.put(rule, previous);
-			}
-			String ruleGroupName = ((RuleImpl)rule).getAgendaGroup();
-			if (ruleGroupName == null) {
-				ruleGroupName = ((RuleImpl)rule).getRuleFlowGroup();
-			}
-			ruleGroupName = StringUtils.isBlank(ruleGroupName) ? "default" : ruleGroupName;
-			Set<Rule> rules = ruleGroupToRulesMap.get(ruleGroupName);
-			if (rules == null) {
-				rules = new ConcurrentSkipListSet<Rule>(ruleComparator);
-				ruleGroupToRulesMap.put(ruleGroupName, rules);
-			}
-			rules.add(rule);
+			getRuleId(rule);
+			String ruleGroupName = getRuleGroupName(rule);
+			ruleGroupToRulesMap.computeIfAbsent(ruleGroupName,
+					k -> new ConcurrentSkipListSet<Rule>(ruleComparator)).add(rule);
 		}
 	}
 	
+	/**
+	 * @param rule the rule
+	 * @return name of the agenda-group or the ruleflow-group of the rule, "default" if none
+	 */
+	static String getRuleGroupName(Rule rule) {
+		String ruleGroupName = ((RuleImpl)rule).getAgendaGroup();
+		if (ruleGroupName == null) {
+			ruleGroupName = ((RuleImpl)rule).getRuleFlowGroup();
+		}
+		return StringUtils.isBlank(ruleGroupName) ? "default" : ruleGroupName;
+	}
+
+	/**
+	 * @param ruleFlowName the ruleflow
+	 * @return names of the rule groups in the ruleflow, null if the ruleflow is not registered
+	 */
+	static Set<String> getRuleGroupsOfRuleFlow(String ruleFlowName) {
+		return ruleFlowToRuleGroupMap.get(ruleFlowName);
+	}
+
 	/**
 	 * print the coverage result of All RuleGroup
 	 */
@@ -217,13 +250,16 @@ public class RuleCoverageLogger extends DefaultAgendaEventListener {
 	 */
 	public int[] printCoverageOfRuleGroup(String ruleGroupName) {
 		Set<Rule> rules = ruleGroupToRulesMap.get(ruleGroupName);
+		if (rules == null) {
+			return new int[] { 0, 0 };
+		}
 		int rulesNum = rules.size();
 		int coveredNum = 0;
 		TreeSet<String> notCoveredRules = new TreeSet<String>();
 		Iterator<Rule> it = rules.iterator();
 		while (it.hasNext()) {
 			Rule rule = it.next();
-			boolean isCovered = ruleCoverageMap.get(rule);
+			boolean isCovered = getFiringCount(rule) > 0;
 			if (isCovered) {
 				coveredNum ++;
 			} else {
@@ -239,6 +275,121 @@ public class RuleCoverageLogger extends DefaultAgendaEventListener {
 		return new int[] { coveredNum, rulesNum };
 	}
 	
+	/**
+	 * get the dense id of a rule, the rule is registered if it's new.
+	 * @param rule the rule
+	 * @return id of the rule (0 origin)
+	 */
+	static int getRuleId(Rule rule) {
+		Integer id = ruleIdMap.get(rule);
+		if (id != null) {
+			return id;
+		}
+		synchronized (ruleIdMap) {
+			id = ruleIdMap.get(rule);
+			if (id == null) {
+				RuleTable table = ruleTable;
+				if (table.size == table.rules.length) {
+					table = table.grow();
+				}
+				id = table.size;
+				table.rules[id] = rule;
+				table.size++;
+				// publish the table before the id
+				ruleTable = table;
+				ruleIdMap.put(rule, id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * @param rule the rule
+	 * @return number of firings of the rule since cleared
+	 */
+	public static long getFiringCount(Rule rule) {
+		Integer id = ruleIdMap.get(rule);
+		RuleTable table = ruleTable;
+		if (id == null || id >= table.size) {
+			return 0;
+		}
+		return table.firingCounts[id].sum();
+	}
+
+	/**
+	 * @return number of firings by rule name ("package.rule"), in descending order of the number
+	 */
+	public static Map<String, Long> getFiringCounts() {
+		RuleTable table = ruleTable;
+		List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(table.size);
+		for (int id = 0; id < table.size; id++) {
+			Rule rule = table.rules[id];
+			entries.add(new AbstractMap.SimpleEntry<String, Long>(
+					rule.getPackageName() + "." + rule.getName(), table.firingCounts[id].sum()));
+		}
+		Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+			@Override
+			public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+				int ret = o2.getValue().compareTo(o1.getValue());
+				return (ret != 0) ? ret : o1.getKey().compareTo(o2.getKey());
+			}
+		});
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, Long> entry : entries) {
+			result.put(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
+	/**
+	 * print the most fired rules
+	 * @param top number of rules to print
+	 */
+	public void printHotRules(int top) {
+		logger.debug("##### HOT RULES (top {}) - START #####", top);
+		int rank = 0;
+		for (Map.Entry<String, Long> entry : getFiringCounts().entrySet()) {
+			if (rank >= top || entry.getValue() == 0) {
+				break;
+			}
+			rank++;
+			logger.debug("# {}. \"{}\" fired {} times", rank, entry.getKey(), entry.getValue());
+		}
+		logger.debug("##### HOT RULES (top {}) -  END  #####", top);
+	}
+
+	/**
+	 * rules and their counters indexed by rule id.<BR>
+	 * slots up to the capacity are allocated in advance, then a new table is copied when it's full.
+	 */
+	private static class RuleTable {
+		final Rule[] rules;
+		final LongAdder[] firingCounts;
+		final AtomicIntegerArray covered;
+		volatile int size;
+
+		RuleTable(int capacity) {
+			rules = new Rule[capacity];
+			firingCounts = new LongAdder[capacity];
+			for (int i = 0; i < capacity; i++) {
+				firingCounts[i] = new LongAdder();
+			}
+			covered = new AtomicIntegerArray(capacity);
+		}
+
+		RuleTable grow() {
+			RuleTable table = new RuleTable(rules.length * 2);
+			System.arraycopy(rules, 0, table.rules, 0, size);
+			// share the counters so that no firing is lost
+			System.arraycopy(firingCounts, 0, table.firingCounts, 0, size);
+			for (int i = 0; i < size; i++) {
+				table.covered.set(i, covered.get(i));
+			}
+			table.size = size;
+			return table;
+		}
+	}
+
 	public class RuleComparator implements Comparator<Rule> {
 		@Override
 		public int compare(Rule o1, Rule o2) {
@@ -251,8 +402,12 @@ public class RuleCoverageLogger extends DefaultAgendaEventListener {
 	 */
 	@SuppressWarnings("rawtypes")
 	public static void clear() {
+		synchronized (ruleIdMap) {
+			ruleIdMap.clear();
+			ruleTable = new RuleTable(64);
+		}
 		final Object[] collections
-		= { initializedPackageSet, ruleFlowToRuleGroupMap, ruleGroupToRulesMap, ruleCoverageMap };
+		= { registeredKieBaseSet, initializedPackageSet, ruleFlowToRuleGroupMap, ruleGroupToRulesMap };
 		// clear map and collection (twice just in case)
 		for (int i=0; i<2; i++) {
 			for (Object c : collections) {
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * RuleEventJournal passes debug log events of the listeners to a background thread.<BR>
+ * <BR>
+ * - events are written into preallocated slots of a lock-free ring buffer (multi producers, single consumer)<BR>
+ *   as a format and its arguments, the message is formatted by the consumer thread.<BR>
+ * - arguments of immutable types are kept as they are, others are converted to strings at the event.<BR>
+ * - the consumer writes the messages into the logger of the event, or into a file.<BR>
+ * - producers wait if the buffer is full, so no event is lost.<BR>
+ * <BR>
+ * set "-Drules.unittest.asynclog=true" to enable the journal for RuleExecutionLogger and RuleFactWatcher,<BR>
+ * "-Drules.unittest.asynclog.file=path" to write the messages into the file,<BR>
+ * "-Drules.unittest.asynclog.buffer=N" to change the number of slots (65536 by default).<BR>
+ */
+public class RuleEventJournal {
+	private static final int MAX_ARGS = 8;
+
+	private static final RuleEventJournal defaultJournal = createDefault();
+
+	private final Slot[] slots;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head = 0;
+	private final Writer writer;
+	private final Thread consumer;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param capacity number of slots (rounded up to a power of 2)
+	 * @param fileName file to write the messages, null to write into the loggers of the events
+	 */
+	public RuleEventJournal(int capacity, String fileName) throws IOException {
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		slots = new Slot[size];
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Slot(i);
+		}
+		mask = size - 1;
+		writer = (fileName != null) ? new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(fileName), StandardCharsets.UTF_8), 64 * 1024) : null;
+		consumer = new Thread(this::consume, "RuleEventJournal");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	private static RuleEventJournal createDefault() {
+		if (!Boolean.getBoolean("rules.unittest.asynclog")) {
+			return null;
+		}
+		try {
+			final RuleEventJournal journal = new RuleEventJournal(
+					Integer.getInteger("rules.unittest.asynclog.buffer", 65536),
+					System.getProperty("rules.unittest.asynclog.file"));
+			Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+			return journal;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return the journal configured by system properties, null if disabled
+	 */
+	public static RuleEventJournal getDefault() {
+		return defaultJournal;
+	}
+
+	/**
+	 * log a debug message of one argument, no array is created while the message is not logged.
+	 * @param logger logger of the event
+	 * @param format message format of slf4j
+	 * @param arg argument of the format
+	 */
+	public static void debug(Logger logger, String format, Object arg) {
+		RuleEventJournal journal = defaultJournal;
+		if (journal == null) {
+			logger.debug(format, arg);
+		} else if (journal.writer != null || logger.isDebugEnabled()) {
+			journal.append(logger, format, arg);
+		}
+	}
+
+	/**
+	 * log a debug message of two arguments, no array is created while the message is not logged.
+	 * @param logger logger of the event
+	 * @param format message format of slf4j
+	 * @param arg1 first argument of the format
+	 * @param arg2 second argument of the format
+	 */
+	public static void debug(Logger logger, String format, Object arg1, Object arg2) {
+		RuleEventJournal journal = defaultJournal;
+		if (journal == null) {
+			logger.debug(format, arg1, arg2);
+		} else if (journal.writer != null || logger.isDebugEnabled()) {
+			journal.append(logger, format, arg1, arg2);
+		}
+	}
+
+	/**
+	 * log a debug message through the default journal, or directly if the journal is disabled.
+	 * @param logger logger of the event
+	 * @param format message format of slf4j
+	 * @param args arguments of the format (up to 8)
+	 */
+	public static void debug(Logger logger, String format, Object... args) {
+		RuleEventJournal journal = defaultJournal;
+		if (journal == null) {
+			logger.debug(format, args);
+		} else {
+			journal.append(logger, format, args);
+		}
+	}
+
+	/**
+	 * @param logger logger of the event
+	 * @return true if debug messages of the logger are logged (always true for a file)
+	 */
+	public static boolean isDebugEnabled(Logger logger) {
+		RuleEventJournal journal = defaultJournal;
+		return (journal != null && journal.writer != null) || logger.isDebugEnabled();
+	}
+
+	/**
+	 * append an event.
+	 * @param logger logger of the event
+	 * @param format message format of slf4j
+	 * @param args arguments of the format (up to 8)
+	 */
+	public void append(Logger logger, String format, Object... args) {
+		if (writer == null && !logger.isDebugEnabled()) {
+			return;
+		}
+		if (closed) {
+			logger.debug(format, args);
+			return;
+		}
+		long position = tail.getAndIncrement();
+		Slot slot = slots[(int)position & mask];
+		// wait for the consumer if the buffer is full
+		while (slot.sequence != position) {
+			if (!consumer.isAlive()) {
+				logger.debug(format, args);
+				return;
+			}
+			LockSupport.parkNanos(1000);
+		}
+		slot.logger = logger;
+		slot.format = format;
+		int n = Math.min(args.length, MAX_ARGS);
+		for (int i = 0; i < n; i++) {
+			slot.args[i] = capture(args[i]);
+		}
+		slot.argCount = n;
+		// publish
+		slot.sequence = position + 1;
+	}
+
+	private static Object capture(Object arg) {
+		if (arg == null || arg instanceof String || arg instanceof Integer || arg instanceof Long
+				|| arg instanceof Boolean || arg instanceof Short || arg instanceof Byte
+				|| arg instanceof Double || arg instanceof Float || arg instanceof Character
+				|| arg instanceof BigDecimal || arg instanceof BigInteger || arg instanceof Enum) {
+			return arg;
+		}
+		// the object may be changed before it's formatted
+		return String.valueOf(arg);
+	}
+
+	private void consume() {
+		int idle = 0;
+		while (true) {
+			long position = head;
+			Slot slot = slots[(int)position & mask];
+			if (slot.sequence != position + 1) {
+				if (closed && position >= tail.get()) {
+					return;
+				}
+				// back off while the buffer is empty
+				if (++idle < 100) {
+					Thread.yield();
+				} else {
+					LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+				}
+				continue;
+			}
+			idle = 0;
+			Object[] args = Arrays.copyOf(slot.args, slot.argCount);
+			Logger logger = slot.logger;
+			String format = slot.format;
+			slot.logger = null;
+			slot.format = null;
+			Arrays.fill(slot.args, 0, slot.argCount, null);
+			// release the slot for the next round
+			slot.sequence = position + slots.length;
+			write(logger, format, args);
+			head = position + 1;
+		}
+	}
+
+	private void write(Logger logger, String format, Object[] args) {
+		if (writer == null) {
+			logger.debug(format, args);
+			return;
+		}
+		String message = MessageFormatter.arrayFormat(format, args).getMessage();
+		synchronized (writer) {
+			try {
+				writer.write(message);
+				writer.write(System.lineSeparator());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * wait until all appended events are written.
+	 */
+	public void flush() {
+		long position = tail.get();
+		while (head < position && consumer.isAlive()) {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		if (writer != null) {
+			synchronized (writer) {
+				try {
+					writer.flush();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * write all appended events and stop the consumer thread.<BR>
+	 * events appended after this are logged directly.
+	 */
+	public void close() {
+		closed = true;
+		try {
+			consumer.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * a slot of the ring buffer.<BR>
+	 * sequence == position : free for the producer of the position<BR>
+	 * sequence == position + 1 : published for the consumer<BR>
+	 */
+	private static class Slot {
+		volatile long sequence;
+		Logger logger;
+		String format;
+		final Object[] args = new Object[MAX_ARGS];
+		int argCount;
+
+		Slot(long sequence) {
+			this.sequence = sequence;
+		}
+	}
+}
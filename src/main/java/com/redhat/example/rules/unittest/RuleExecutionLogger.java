@@ -26,7 +26,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Rule Execution Logger
- * outputs executions of rule group begin&end and rule begin&end.
+ * outputs executions of rule group begin&end and rule begin&end.<BR>
+ * the messages are passed to {@link RuleEventJournal} if it's enabled.
  */
 public class RuleExecutionLogger extends DefaultAgendaEventListener {
 	private static Logger logger = LoggerFactory.getLogger(RuleExecutionLogger.class);
@@ -36,18 +37,18 @@ public class RuleExecutionLogger extends DefaultAgendaEventListener {
 	
 	@Override
 	public void beforeRuleFlowGroupActivated(RuleFlowGroupActivatedEvent event) {
-		logger.debug("Exec_Rule_Group: {}", event.getRuleFlowGroup().getName());
+		RuleEventJournal.debug(logger, "Exec_Rule_Group: {}", event.getRuleFlowGroup().getName());
 	}
 	
 	@Override
 	public void afterRuleFlowGroupDeactivated(RuleFlowGroupDeactivatedEvent event) {
-		logger.debug("End__Rule_Group: {}", event.getRuleFlowGroup().getName());
+		RuleEventJournal.debug(logger, "End__Rule_Group: {}", event.getRuleFlowGroup().getName());
 	}
 	
 	@Override
 	public void beforeMatchFired(BeforeMatchFiredEvent event) {
 		RuleImpl rule = (RuleImpl)event.getMatch().getRule();
-		logger.debug("Exec_Rule: {} in Rule_Group {}",
+		RuleEventJournal.debug(logger, "Exec_Rule: {} in Rule_Group {}",
 				rule.getName(),
 				rule.getAgendaGroup()
 				);
@@ -55,7 +56,7 @@ public class RuleExecutionLogger extends DefaultAgendaEventListener {
 	
 	@Override
 	public void afterMatchFired(AfterMatchFiredEvent event) {
-		logger.debug("End__Rule: {}", event.getMatch().getRule().getName());
+		RuleEventJournal.debug(logger, "End__Rule: {}", event.getMatch().getRule().getName());
 	}
 	
 }
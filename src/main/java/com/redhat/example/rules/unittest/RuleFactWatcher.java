@@ -21,7 +21,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -29,7 +32,6 @@ import java.util.Map;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.drools.core.event.DefaultRuleRuntimeEventListener;
 import org.kie.api.definition.rule.Rule;
@@ -66,11 +68,43 @@ public class RuleFactWatcher {
 	boolean checkByIndex;
 	BiPredicate<ExpectedRecord, Object> predicate;
 	Map<String, Boolean> testSkipMap;
+	List<String> pkColumns;
 	SubListener1 listener1;
 	SubListener2 listener2;
 	KieRuntimeEventManager runtime;
+	RuleTraceRecorder traceRecorder;
+	/**
+	 * true if the predicate rejects the objects of other classes than clazz, as the predicate of CsvTestHelper.<BR>
+	 * RuleFactWatchers routes only the objects of the class to the watcher then.
+	 */
+	boolean predicateChecksClass = false;
 	
-	Map<Object, Map<String, Object>> previousValues = new LinkedHashMap<Object, Map<String, Object>>();
+	/**
+	 * fact (by identity) -> { attribute -> previous value }
+	 */
+	Map<Object, Map<String, Object>> previousValues = new IdentityHashMap<Object, Map<String, Object>>();
+	/**
+	 * key of MapEntry -> { attribute -> previous value }<BR>
+	 * MapEntry is created for each event, so the values are stored by the key in the Map.
+	 */
+	Map<Object, Map<String, Object>> previousMapEntryValues = new HashMap<Object, Map<String, Object>>();
+
+	/**
+	 * row indexes of all expected records
+	 */
+	private List<Integer> allRows;
+	/**
+	 * parent# value -> row indexes of the expected records
+	 */
+	private Map<String, List<Integer>> rowsByParent;
+	/**
+	 * parent# value ("" for all rows) -> hash index by testPK columns
+	 */
+	private Map<String, ExpectedRecordIndex> pkIndexByParent = new HashMap<String, ExpectedRecordIndex>();
+	/**
+	 * row index -> attributes which have expected values
+	 */
+	private List<List<WatchedAttribute>> watchedAttributes;
 
 	/**
 	 * Constructor to create RuleFactWatcher.<BR>
@@ -91,12 +125,42 @@ public class RuleFactWatcher {
 			boolean checkByIndex,
 			BiPredicate<ExpectedRecord, Object> predicate,
 			Map<String, Boolean> testSkipMap) {
+		this(expectedRecords, clazz, keyClass, checkByIndex, predicate, testSkipMap, null);
+	}
+
+	/**
+	 * Constructor to create RuleFactWatcher which looks up expected records by the testPK columns.<BR>
+	 * <BR>
+	 * @param expectedRecords expected record information
+	 * @param clazz class of expected values
+	 * @param keyClass class of key if values are in a Map, null if values are not in a Map
+	 * @param checkByIndex the flag to check actuals and expected values by same index
+	 * @param predicate predicate to check equality of between target fact and expected record
+	 * @param testSkipMap map of flags for each attributes to skip the watching.
+	 * @param pkColumns testPK columns which the predicate compares, null to scan the records with the predicate.
+	 */
+	public RuleFactWatcher(
+			List<ExpectedRecord> expectedRecords,
+			Class<?> clazz,
+			Class<?> keyClass,
+			boolean checkByIndex,
+			BiPredicate<ExpectedRecord, Object> predicate,
+			Map<String, Boolean> testSkipMap,
+			List<String> pkColumns) {
 		this.expectedRecords = expectedRecords;
 		this.clazz = clazz;
 		this.keyClass = keyClass;
 		this.checkByIndex = checkByIndex;
 		this.predicate = predicate;
 		this.testSkipMap = testSkipMap;
+		this.pkColumns = (pkColumns != null && !pkColumns.isEmpty()) ? pkColumns : null;
+		List<Integer> rows = new ArrayList<Integer>(expectedRecords.size());
+		for (int i = 0; i < expectedRecords.size(); i++) {
+			rows.add(i);
+		}
+		this.allRows = rows;
+		this.rowsByParent = ExpectedCsvFile.groupByParentRow(expectedRecords);
+		this.watchedAttributes = createWatchedAttributes(expectedRecords, testSkipMap);
 		listener1 = new SubListener1(this);
 		listener2 = new SubListener2(this);
 	}
@@ -114,6 +178,7 @@ public class RuleFactWatcher {
 			this.runtime.removeEventListener(listener2);
 		}
 		previousValues.clear();
+		previousMapEntryValues.clear();
 		if (this.runtime != runtime) {
 			this.runtime = runtime;
 			if (runtime != null) {
@@ -124,6 +189,18 @@ public class RuleFactWatcher {
 		return this;
 	}
 	
+	/**
+	 * set the recorder of the checked attributes, they are recorded even if the debug log is disabled.
+	 * @param traceRecorder the recorder, null to stop recording
+	 */
+	public RuleFactWatcher setTraceRecorder(RuleTraceRecorder traceRecorder) {
+		this.traceRecorder = traceRecorder;
+		for (RuleFactWatcher childWatcher : childWatcherMap.values()) {
+			childWatcher.setTraceRecorder(traceRecorder);
+		}
+		return this;
+	}
+
 	/**
 	 * reset KieRuntime (KieSession) to watch by this RuleFactWatcher.<BR>
 	 */
@@ -131,6 +208,52 @@ public class RuleFactWatcher {
 		return setRuntime(null);
 	}
 	
+	/**
+	 * clear the previous values to watch a new runtime through {@link RuleFactWatchers}.<BR>
+	 * listeners of this watcher are removed, RuleFactWatchers dispatches the events.
+	 */
+	void attachToDispatcher() {
+		if (runtime != null) {
+			resetRuntime();
+		}
+		previousValues.clear();
+		previousMapEntryValues.clear();
+	}
+
+	/**
+	 * @param objClass class of an object in a match or an inserted object, null for a null object
+	 * @return true if this watcher checks (or logs) objects of the class
+	 */
+	boolean isTarget(Class<?> objClass) {
+		if (insertedHeaderClass != null) {
+			return objClass != null && insertedHeaderClass.isAssignableFrom(objClass);
+		}
+		if (objClass == null || checkByIndex || keyClass != null || !predicateChecksClass) {
+			return true;
+		}
+		return objClass.isAssignableFrom(clazz);
+	}
+
+	/**
+	 * @return true if this watcher must receive all objects of a match,<BR>
+	 *         as it checks the objects by the index in the match
+	 */
+	boolean requiresAllObjects() {
+		return insertedHeaderClass == null && (checkByIndex || keyClass != null);
+	}
+
+	void beforeMatchFired(String ruleName, List<Object> objects) {
+		printWatchedAttributes(ruleName, objects, Timing.BEFORE);
+	}
+
+	void afterMatchFired(String ruleName, List<Object> objects) {
+		printWatchedAttributes(ruleName, objects, Timing.AFTER);
+	}
+
+	void objectInserted(String ruleName, List<Object> objects) {
+		printWatchedAttributes(ruleName, objects, Timing.INSERT);
+	}
+
 	private static class SubListener1 extends DefaultAgendaEventListener {
 		
 		private RuleFactWatcher parent;
@@ -155,9 +278,12 @@ public class RuleFactWatcher {
 	}
 	
 	private void printWatchedAttributes(String ruleName, List<Object> objects, Timing timing) {
+		if (traceRecorder == null && !RuleEventJournal.isDebugEnabled(logger)) {
+			// nothing is printed
+			return;
+		}
 		List<Object> targets = objects;
 		int actualIndex = 0;
-		int expectIndex = 0;
 		
 		// if it is child watcher, require to replace targets by child attributes.
 		if (insertedHeaderClass != null) {
@@ -182,58 +308,59 @@ public class RuleFactWatcher {
 			targets = subTargets;
 		}
 		
-		List<ExpectedRecord> workExpectedRecords = new ArrayList<ExpectedRecord>();
-		for (ExpectedRecord e : expectedRecords) {
-			workExpectedRecords.add(e);
-		}
-		
-		// checkByIndex mode, remove other parents' records
-		if (checkByIndex && parentRow != null) {
-			for (int i=0; i < workExpectedRecords.size();) {
-				if (! parentRow.equals(workExpectedRecords.get(i).map.get(Constants.parentRowKey))) {
-					workExpectedRecords.remove(i);
-				} else {
-					i++;
-				}
+		// expected records to check (the records of the parent row for a child watcher)
+		List<Integer> rows = allRows;
+		if (parentRow != null && (isChild || checkByIndex)) {
+			rows = rowsByParent.get(parentRow);
+			if (rows == null) {
+				rows = Collections.<Integer>emptyList();
 			}
+		} else if (isChild) {
+			rows = Collections.<Integer>emptyList();
 		}
+		ExpectedRecordIndex pkIndex = (!checkByIndex && pkColumns != null) ? getPKIndex(rows) : null;
 
 		for (Object obj : targets) {
 			actualIndex++;
-			expectIndex= 0;
 			if (obj != null) {
-				for (ExpectedRecord expect : workExpectedRecords) {
-					expectIndex++;
-					if (expect.fact == null) {
-						if (checkByIndex &&
-								actualIndex == expectIndex) {
+				if (checkByIndex) {
+					// only the record at the same index
+					if (actualIndex <= rows.size()) {
+						int row = rows.get(actualIndex - 1);
+						ExpectedRecord expect = expectedRecords.get(row);
+						if (expect.fact == null) {
 							logger.debug("** expeced record (null) of the actual record [{}] is not null at rule ({})",
 									actualIndex - 1,
 									ruleName);
+						} else {
+							checkMatchedRecord(ruleName, timing, obj, expect, row);
+						}
+					}
+				} else if (pkIndex != null) {
+					// records which have the same testPK values
+					if (keyClass != null || obj.getClass().isAssignableFrom(clazz)) {
+						for (Integer row : pkIndex.lookup(obj)) {
+							checkMatchedRecord(ruleName, timing, obj, expectedRecords.get(row), row);
 						}
+					}
+				} else {
+					for (Integer row : rows) {
+						ExpectedRecord expect = expectedRecords.get(row);
 						// skip null record in expected records
-					} else if (isChild && ! expect.map.get(Constants.parentRowKey).equals(parentRow)) {
-						// skip if this watcher is child, but parentRow index is not same.
-					} else if ((checkByIndex &&
-							actualIndex == expectIndex)
-							|| (!checkByIndex && predicate.test(expect, obj))) {
-						// checkByIndex AND index is same OR !checkByIndex AND class type and primary keys match
-						checkAttributes(ruleName, timing, obj, expect);
-						// call child listeners
-						for (RuleFactWatcher childWatcher : childWatcherMap.values()) {
-							childWatcher.parentRow = Integer.toString(expectedRecords.indexOf(expect)+1);
-							childWatcher.printWatchedAttributes(ruleName, Arrays.asList(obj), timing);
+						if (expect.fact != null && predicate.test(expect, obj)) {
+							// class type and primary keys match
+							checkMatchedRecord(ruleName, timing, obj, expect, row);
 						}
 					}
 				}
 			} else {
 				if (checkByIndex) {
-					if (workExpectedRecords.size() < actualIndex) {
+					if (rows.size() < actualIndex) {
 						logger.debug("** expeced record of the actual record [{}] (null) does not exist at rule ({})",
 								actualIndex - 1,
 								ruleName);
-					} else if (workExpectedRecords.get(actualIndex - 1).fact != null) {
-						Object expect = workExpectedRecords.get(actualIndex - 1).fact;
+					} else if (expectedRecords.get(rows.get(actualIndex - 1)).fact != null) {
+						Object expect = expectedRecords.get(rows.get(actualIndex - 1)).fact;
 						logger.debug("** expeced record ({}) {}[{}] of the actual record [{}] is null at rule ({})",
 								expect, clazz.getSimpleName(),
 								actualIndex - 1,
@@ -247,94 +374,152 @@ public class RuleFactWatcher {
 		}
 	}
 
-	private void checkAttributes(String ruleName, Timing timing, Object actual, ExpectedRecord expect) {
-		int id = System.identityHashCode(actual);
-		for (Map.Entry<String, Object> entry : expect.map.entrySet()) {
-			// filter out meta attributes
-			if (!Constants.parentRowKey.equals(entry.getKey()) &&
-					!Constants.typeAttributeStr.equals(entry.getKey()) &&
-					!testSkipMap.get(entry.getKey())) {
+	private void checkMatchedRecord(String ruleName, Timing timing, Object obj, ExpectedRecord expect, int row) {
+		checkAttributes(ruleName, timing, obj, watchedAttributes.get(row));
+		// call child listeners
+		for (RuleFactWatcher childWatcher : childWatcherMap.values()) {
+			childWatcher.parentRow = Integer.toString(row + 1);
+			childWatcher.printWatchedAttributes(ruleName, Arrays.asList(obj), timing);
+		}
+	}
+
+	private ExpectedRecordIndex getPKIndex(List<Integer> rows) {
+		String partitionKey = (rows == allRows) ? "" : parentRow;
+		ExpectedRecordIndex pkIndex = pkIndexByParent.get(partitionKey);
+		if (pkIndex == null) {
+			pkIndex = new ExpectedRecordIndex(expectedRecords, rows, pkColumns);
+			pkIndexByParent.put(partitionKey, pkIndex);
+		}
+		return pkIndex;
+	}
+
+	/**
+	 * an attribute which has an expected value
+	 */
+	private static class WatchedAttribute {
+		final String key;
+		final Object expectedValue;
+
+		WatchedAttribute(String key, Object expectedValue) {
+			this.key = key;
+			this.expectedValue = expectedValue;
+		}
+	}
+
+	/**
+	 * evaluate the expected values of the attributes to check for each expected record.<BR>
+	 * meta attributes, testSkip attributes and attributes of empty expected values are not watched.
+	 */
+	private static List<List<WatchedAttribute>> createWatchedAttributes(
+			List<ExpectedRecord> expectedRecords, Map<String, Boolean> testSkipMap) {
+		List<List<WatchedAttribute>> result = new ArrayList<List<WatchedAttribute>>(expectedRecords.size());
+		for (ExpectedRecord expect : expectedRecords) {
+			if (expect.fact == null || expect.map == null) {
+				// null records are never checked
+				result.add(Collections.<WatchedAttribute>emptyList());
+				continue;
+			}
+			List<WatchedAttribute> attributes = new ArrayList<WatchedAttribute>();
+			for (Map.Entry<String, Object> entry : expect.map.entrySet()) {
 				String key = entry.getKey();
 				Object expectedValueString = entry.getValue();
-				Object actualValue = null;
-				Object expectedValue = null;
-				boolean toBeChecked = false;
-				actualValue = getProperty(actual, key);
-				if (!StringUtils.isEmpty((String)expectedValueString)) {
-					toBeChecked = true;
-					if (Constants.nullCheckStr.equals(expectedValueString)) {
-						expectedValue = null;
-					} else if (Constants.emptyCheckStr.equals(expectedValueString)) {
-						expectedValue = "";
-					} else  {
-						expectedValue = getProperty(expect.fact, key);
-					}
+				// filter out meta attributes
+				if (Constants.parentRowKey.equals(key) ||
+						Constants.typeAttributeStr.equals(key) ||
+						Boolean.TRUE.equals(testSkipMap.get(key)) ||
+						StringUtils.isEmpty((String)expectedValueString)) {
+					continue;
 				}
-				String keyValue = "";
-				String attrName = key;
-				String className = clazz.getSimpleName();
-				String changeStr = null;
-				if (toBeChecked) {
-					if (actual instanceof MapEntry) {
-						if (attrName.startsWith(Constants.keyAttributeStr)) {
-							Object o = ((MapEntry)actual).key;
-							className = keyClass.getSimpleName();
-							id = System.identityHashCode(o);
-							attrName = "";
-						} else {
-							keyValue = ((MapEntry)actual).key.toString();
-							Object o = ((MapEntry)actual).value;
-							className = clazz.getSimpleName();
-							id = System.identityHashCode(o);
-							attrName = "";
-						}
-					} else {
-						if (attrName.equals(Constants.valueAttributeStr) &&
-								isImmutable(actual.getClass())) {
-							attrName = "";
-						}
-					}
-
-					if (timing == Timing.BEFORE) {
-						registerValue(actual, attrName, actualValue);
-					} else if (timing == Timing.AFTER) {
-						changeStr = getChangeString(actual, attrName, actualValue);
-						printAnAttribute(ruleName, className, id, attrName, changeStr, actualValue, expectedValue, keyValue);
-					} else { // (timing == Timing.INSERT)
-						registerValue(actual, attrName, Constants.unknownValueLavel);
-						changeStr = getChangeString(actual, attrName, actualValue);
-						printAnAttribute(ruleName, className, id, attrName, changeStr, actualValue, expectedValue, keyValue);
-					}
+				Object expectedValue;
+				if (Constants.nullCheckStr.equals(expectedValueString)) {
+					expectedValue = null;
+				} else if (Constants.emptyCheckStr.equals(expectedValueString)) {
+					expectedValue = "";
+				} else  {
+					expectedValue = getProperty(expect.fact, key);
 				}
+				attributes.add(new WatchedAttribute(key, expectedValue));
 			}
+			result.add(attributes);
 		}
+		return result;
 	}
 
-	@SuppressWarnings("unchecked")
-	private String getChangeString(Object obj, String attrName, Object currentValue) {
-		Map<String, Object> valuesMap = previousValues.get(obj);
-		if (valuesMap == null) {
-			Object map = null;
-			// as the hash value of the obj was changed, so need to search
-			for (Map.Entry<Object, Map<String, Object>> entry : previousValues.entrySet()) {
-				if (keyClass != null) {
-					if (((MapEntry)entry.getKey()).key.equals(((MapEntry)obj).key)) {
-						map = (Object)entry.getValue();
-					}
-				} else if (entry.getKey() == obj) {
-					map = (Object)entry.getValue();
+	private void checkAttributes(String ruleName, Timing timing, Object actual, List<WatchedAttribute> attributes) {
+		int id = System.identityHashCode(actual);
+		for (WatchedAttribute attribute : attributes) {
+			String key = attribute.key;
+			Object expectedValue = attribute.expectedValue;
+			Object actualValue = getProperty(actual, key);
+			Object keyValue = null;
+			String attrName = key;
+			Class<?> valueClass = clazz;
+			if (actual instanceof MapEntry) {
+				if (attrName.startsWith(Constants.keyAttributeStr)) {
+					Object o = ((MapEntry)actual).key;
+					valueClass = keyClass;
+					id = System.identityHashCode(o);
+					attrName = "";
+				} else {
+					keyValue = ((MapEntry)actual).key;
+					Object o = ((MapEntry)actual).value;
+					id = System.identityHashCode(o);
+					attrName = "";
+				}
+			} else {
+				if (attrName.equals(Constants.valueAttributeStr) &&
+						isImmutable(actual.getClass())) {
+					attrName = "";
 				}
 			}
-			valuesMap = (Map<String, Object>) map;
+
+			if (timing == Timing.BEFORE) {
+				registerValue(actual, attrName, actualValue);
+			} else if (timing == Timing.AFTER) {
+				Object previousValue = getPreviousValue(actual, attrName, actualValue);
+				printAnAttribute(ruleName, valueClass, id, attrName, previousValue, actualValue, expectedValue, keyValue);
+			} else { // (timing == Timing.INSERT)
+				registerValue(actual, attrName, Constants.unknownValueLavel);
+				Object previousValue = getPreviousValue(actual, attrName, actualValue);
+				printAnAttribute(ruleName, valueClass, id, attrName, previousValue, actualValue, expectedValue, keyValue);
+			}
+		}
+	}
+
+	private Map<String, Object> getPreviousValues(Object obj, boolean create) {
+		Map<Object, Map<String, Object>> store = previousValues;
+		Object storeKey = obj;
+		if (obj instanceof MapEntry) {
+			store = previousMapEntryValues;
+			storeKey = ((MapEntry)obj).key;
 		}
+		Map<String, Object> valuesMap = store.get(storeKey);
+		if (valuesMap == null && create) {
+			valuesMap = new LinkedHashMap<String, Object>();
+			store.put(storeKey, valuesMap);
+		}
+		return valuesMap;
+	}
+
+	/**
+	 * marker of the previous value which means "not changed"
+	 */
+	private static final Object NOT_CHANGED = new Object();
+
+	/**
+	 * get the previous value to print the change, the string is built only when it's printed.
+	 * @return the previous value, or NOT_CHANGED
+	 */
+	private Object getPreviousValue(Object obj, String attrName, Object currentValue) {
+		Map<String, Object> valuesMap = getPreviousValues(obj, false);
 		if (valuesMap == null) {
 			// no previous value
-			return "(" + Constants.unknownValueLavel + ") => (" + currentValue + ")";			
+			return Constants.unknownValueLavel;
 		}
 		Object pre = valuesMap.remove(attrName);
 		if (pre == null) {
 			// no previous value
-			return null;
+			return NOT_CHANGED;
 		}
 		boolean updated;
 		if (currentValue == null) {
@@ -342,42 +527,19 @@ public class RuleFactWatcher {
 		} else {
 			updated = ! currentValue.equals(pre);
 		}
-		if (updated) {
-			return "(" + pre + ") => (" + currentValue + ")";			
-		} else {
-			return null;
-		}
+		return updated ? pre : NOT_CHANGED;
 	}
 
-	@SuppressWarnings("unchecked")
 	private void registerValue(Object obj, String attrName, Object actualValue) {
-		Map<String, Object> valuesMap = previousValues.get(obj);
-		if (valuesMap == null) {
-			Object map = null;
-			// as the hash value of the obj was changed, so need to search
-			for (Map.Entry<Object, Map<String, Object>> entry : previousValues.entrySet()) {
-				if (keyClass != null) {
-					if (((MapEntry)entry.getKey()).key.equals(((MapEntry)obj).key)) {
-						map = (Object)entry.getValue();
-					}
-				} else if (entry.getKey() == obj) {
-					map = (Object)entry.getValue();
-				}
-			}
-			valuesMap = (Map<String, Object>) map;
-			if (valuesMap == null) {
-				valuesMap = new LinkedHashMap<String, Object>();
-				previousValues.put(obj, valuesMap);
-			}
-		}
+		Map<String, Object> valuesMap = getPreviousValues(obj, true);
 		if (actualValue == null) {
 			actualValue = Constants.registeredNullValue;
 		}
 		valuesMap.put(attrName, actualValue);
 	}
 
-	private void printAnAttribute(String ruleName, String className, int id, String attrName,
-			String changeStr, Object actualValue, Object expectedValue, String keyValue) {
+	private void printAnAttribute(String ruleName, Class<?> valueClass, int id, String attrName,
+			Object previousValue, Object actualValue, Object expectedValue, Object keyValue) {
 		boolean asExpected = false;
 		if (actualValue == null) {
 			if (expectedValue == null)
@@ -385,28 +547,40 @@ public class RuleFactWatcher {
 		} else {
 			asExpected = actualValue.equals(expectedValue);
 		}
-		if (changeStr != null) {
-			logger.debug("** {}{}@{}{} was CHANGED [{}]{} at rule ({})",
-					keyValue.length() == 0 ? "" : ("key='" + keyValue + "' value "),
+		if (traceRecorder != null) {
+			boolean changed = previousValue != NOT_CHANGED;
+			traceRecorder.attribute(ruleName, valueClass.getSimpleName(), id, attrName, keyValue,
+					changed, changed ? previousValue : null, actualValue, expectedValue, asExpected);
+		}
+		if (!RuleEventJournal.isDebugEnabled(logger)) {
+			return;
+		}
+		String key = (keyValue == null) ? "" : keyValue.toString();
+		String keyPrefix = key.isEmpty() ? "" : ("key='" + key + "' value ");
+		String className = valueClass.getSimpleName();
+		String attrSuffix = StringUtils.isEmpty(attrName) ? "" : "#" + attrName;
+		if (previousValue != NOT_CHANGED) {
+			RuleEventJournal.debug(logger, "** {}{}@{}{} was CHANGED [({}) => ({})]{} at rule ({})",
+					keyPrefix,
 					className, id,
-					(StringUtils.isEmpty(attrName) ? "" : "#" + attrName),
-					changeStr,
+					attrSuffix,
+					previousValue, actualValue,
 					(asExpected ? " as Expected" : ""),
 					ruleName);
 		} else {
-			logger.debug("** {}{}@{}{} was NOT changed ({}){} at rule ({})",
-					keyValue.length() == 0 ? "" : ("key='" + keyValue + "' value "),
+			RuleEventJournal.debug(logger, "** {}{}@{}{} was NOT changed ({}){} at rule ({})",
+					keyPrefix,
 					className, id,
-					(StringUtils.isEmpty(attrName) ? "" : "#" + attrName),
+					attrSuffix,
 					actualValue,
 					(asExpected ? " as Expected" : ""),
 					ruleName);
 		}
 		if (!asExpected) {
-			logger.debug(" * {}{}@{}#{} is Expected ({}) But is ({})",
-					keyValue.length() == 0 ? "" : ("key='" + keyValue + "' value "),
+			RuleEventJournal.debug(logger, " * {}{}@{}#{} is Expected ({}) But is ({})",
+					keyPrefix,
 					className, id,
-					(StringUtils.isEmpty(attrName) ? "" : "#" + attrName),
+					attrSuffix,
 					expectedValue,
 					actualValue);
 		}
@@ -438,7 +612,7 @@ public class RuleFactWatcher {
 		}
 			
 		try {
-			return PropertyUtils.getProperty(obj, key);
+			return PropertyAccessors.getProperty(obj, key);
 		} catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
 			e.printStackTrace();
 			fail("fail at getProperty(" + obj + ", " + key + ")");
@@ -518,6 +692,9 @@ public class RuleFactWatcher {
 	 */
 	public void registerChildWatcher(String fieldName, RuleFactWatcher watcher) {
 		watcher.isChild = true;
+		if (traceRecorder != null) {
+			watcher.setTraceRecorder(traceRecorder);
+		}
 		childWatcherMap.put(fieldName, watcher);
 	}
 	
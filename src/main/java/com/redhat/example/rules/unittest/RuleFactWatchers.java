@@ -15,21 +15,68 @@
  */
 package com.redhat.example.rules.unittest;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.kie.api.definition.rule.Rule;
 import org.kie.api.event.KieRuntimeEventManager;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.DefaultRuleRuntimeEventListener;
+import org.kie.api.event.rule.ObjectInsertedEvent;
 
+/**
+ * RuleFactWatchers watches a runtime by multiple RuleFactWatchers.<BR>
+ * <BR>
+ * a pair of listeners is added to the runtime for all watchers, and each object of an event<BR>
+ * is routed only to the watchers of its class by a table of class -> watchers.<BR>
+ * - null objects are routed to the watchers of all classes, which log them as before.<BR>
+ * - objects of other classes are routed to a watcher only if its predicate checks the class<BR>
+ *   (watchers created by CsvTestHelper). a watcher with a custom predicate receives all objects.<BR>
+ * - the events may be dispatched by sessions of several threads, no state of an event is kept in this object.<BR>
+ */
 public class RuleFactWatchers {
 	private Set<RuleFactWatcher> watchers =
 			new LinkedHashSet<RuleFactWatcher>();
 	private KieRuntimeEventManager runtime = null;
-	
+
+	private final AgendaDispatcher agendaDispatcher = new AgendaDispatcher();
+	private final RuleRuntimeDispatcher ruleRuntimeDispatcher = new RuleRuntimeDispatcher();
+	/**
+	 * watchers in the order of registration
+	 */
+	private volatile RuleFactWatcher[] targets = new RuleFactWatcher[0];
+	/**
+	 * class of objects (NULL_CLASS for null) -> indexes of the watchers of the class
+	 */
+	private final Map<Class<?>, int[]> routes = new ConcurrentHashMap<Class<?>, int[]>();
+	/**
+	 * key of the routes of null objects, no object is of this class
+	 */
+	private static final Class<?> NULL_CLASS = void.class;
+
 	public boolean add(RuleFactWatcher watcher) {
-		return watchers.add(watcher);
+		boolean added = watchers.add(watcher);
+		if (added) {
+			if (runtime != null) {
+				watcher.attachToDispatcher();
+			}
+			updateTargets();
+		}
+		return added;
 	}
 	public boolean remove(RuleFactWatcher watcher) {
-		return watchers.remove(watcher);
+		boolean removed = watchers.remove(watcher);
+		if (removed) {
+			updateTargets();
+		}
+		return removed;
 	}
 
 	/**
@@ -41,26 +88,128 @@ public class RuleFactWatchers {
 	 */
 	public RuleFactWatchers setRuntime(KieRuntimeEventManager runtime) {
 		if (this.runtime != null && this.runtime != runtime) {
-			for (RuleFactWatcher watcher : watchers) {
-				watcher.resetRuntime();
-			}
+			this.runtime.removeEventListener(agendaDispatcher);
+			this.runtime.removeEventListener(ruleRuntimeDispatcher);
 		}
 		if (this.runtime != runtime) {
 			this.runtime = runtime;
+			// the classes of the watchers may be changed by setHeaderFact()
+			routes.clear();
+			for (RuleFactWatcher watcher : watchers) {
+				watcher.attachToDispatcher();
+			}
 			if (runtime != null) {
-				for (RuleFactWatcher watcher : watchers) {
-					watcher.setRuntime(runtime);
-				}
+				runtime.addEventListener(agendaDispatcher);
+				runtime.addEventListener(ruleRuntimeDispatcher);
 			}
 		}
 		return this;
 	}
-	
+
 	/**
 	 * reset KieRuntime (KieSession) to watch by this RuleFactWatchers.<BR>
 	 */
 	public RuleFactWatchers resetRuntime() {
 		return setRuntime(null);
 	}
-	
+
+	/**
+	 * set the recorder of the attributes checked by the watchers.
+	 * @param traceRecorder the recorder, null to stop recording
+	 */
+	public RuleFactWatchers setTraceRecorder(RuleTraceRecorder traceRecorder) {
+		for (RuleFactWatcher watcher : watchers) {
+			watcher.setTraceRecorder(traceRecorder);
+		}
+		return this;
+	}
+
+	private void updateTargets() {
+		targets = watchers.toArray(new RuleFactWatcher[watchers.size()]);
+		routes.clear();
+	}
+
+	private int[] getRoutes(Object obj) {
+		Class<?> objClass = (obj != null) ? obj.getClass() : NULL_CLASS;
+		int[] indexes = routes.get(objClass);
+		if (indexes == null) {
+			RuleFactWatcher[] watchers = targets;
+			indexes = new int[watchers.length];
+			int n = 0;
+			for (int i = 0; i < watchers.length; i++) {
+				if (watchers[i].isTarget((obj != null) ? objClass : null)) {
+					indexes[n++] = i;
+				}
+			}
+			indexes = Arrays.copyOf(indexes, n);
+			routes.put(objClass, indexes);
+		}
+		return indexes;
+	}
+
+	/**
+	 * timing of the events
+	 */
+	private static enum Timing { BEFORE, AFTER, INSERT };
+
+	private void dispatch(String ruleName, List<Object> objects, Timing timing) {
+		RuleFactWatcher[] watchers = targets;
+		if (objects.size() == 1) {
+			for (int index : getRoutes(objects.get(0))) {
+				call(watchers[index], ruleName, objects, timing);
+			}
+			return;
+		}
+		// classify the objects by watcher, the buckets belong to this call
+		@SuppressWarnings("unchecked")
+		List<Object>[] buckets = new List[watchers.length];
+		for (Object obj : objects) {
+			for (int index : getRoutes(obj)) {
+				if (buckets[index] == null) {
+					buckets[index] = watchers[index].requiresAllObjects() ? objects : new ArrayList<Object>();
+				}
+				if (buckets[index] != objects) {
+					buckets[index].add(obj);
+				}
+			}
+		}
+		for (int i = 0; i < watchers.length; i++) {
+			if (buckets[i] != null) {
+				call(watchers[i], ruleName, buckets[i], timing);
+			}
+		}
+	}
+
+	private static void call(RuleFactWatcher watcher, String ruleName, List<Object> objects, Timing timing) {
+		switch (timing) {
+		case BEFORE:
+			watcher.beforeMatchFired(ruleName, objects);
+			break;
+		case AFTER:
+			watcher.afterMatchFired(ruleName, objects);
+			break;
+		default:
+			watcher.objectInserted(ruleName, objects);
+		}
+	}
+
+	private class AgendaDispatcher extends DefaultAgendaEventListener {
+		@Override
+		public void beforeMatchFired(BeforeMatchFiredEvent event) {
+			dispatch(event.getMatch().getRule().getName(), event.getMatch().getObjects(), Timing.BEFORE);
+		}
+
+		@Override
+		public void afterMatchFired(AfterMatchFiredEvent event) {
+			dispatch(event.getMatch().getRule().getName(), event.getMatch().getObjects(), Timing.AFTER);
+		}
+	}
+
+	private class RuleRuntimeDispatcher extends DefaultRuleRuntimeEventListener {
+		@Override
+		public void objectInserted(ObjectInsertedEvent event) {
+			Rule rule = event.getRule();
+			dispatch(rule != null ? rule.getName() : "KieRuntime#insert() API", Arrays.asList(event.getObject()), Timing.INSERT);
+		}
+	}
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.MatchCreatedEvent;
+import org.kie.api.event.rule.RuleFlowGroupActivatedEvent;
+import org.kie.api.event.rule.RuleFlowGroupDeactivatedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rule Profiling Logger
+ * measures the time of rule firings (beforeMatchFired - afterMatchFired) by rule<BR>
+ * and the time of ruleflow-groups (beforeRuleFlowGroupActivated - afterRuleFlowGroupDeactivated) by group.<BR>
+ * <BR>
+ * - the times are recorded into {@link LatencyHistogram}s, and reported with count, mean, p50, p99 and max.<BR>
+ * - an instance can be added to sessions running on different threads.<BR>
+ */
+public class RuleProfilingLogger extends DefaultAgendaEventListener {
+	private static Logger logger = LoggerFactory.getLogger(RuleProfilingLogger.class);
+	public static void SetLogger(Logger log) {
+		logger = log;
+	}
+
+	/**
+	 * Map of Rule -> profile
+	 */
+	private final Map<Rule, RuleProfile> ruleProfileMap =
+			new ConcurrentHashMap<Rule, RuleProfile>();
+
+	/**
+	 * Map of RuleFlowGroup name -> histogram
+	 */
+	private final Map<String, LatencyHistogram> ruleGroupProfileMap =
+			new ConcurrentHashMap<String, LatencyHistogram>();
+
+	/**
+	 * start times of the current thread
+	 */
+	private final ThreadLocal<StartTimes> startTimes = new ThreadLocal<StartTimes>() {
+		@Override
+		protected StartTimes initialValue() {
+			return new StartTimes();
+		}
+	};
+
+	@Override
+	public void matchCreated(MatchCreatedEvent event) {
+		getRuleProfile(event.getMatch().getRule()).activations.increment();
+	}
+
+	@Override
+	public void beforeMatchFired(BeforeMatchFiredEvent event) {
+		startTimes.get().match = System.nanoTime();
+	}
+
+	@Override
+	public void afterMatchFired(AfterMatchFiredEvent event) {
+		long end = System.nanoTime();
+		getRuleProfile(event.getMatch().getRule()).firings.record(end - startTimes.get().match);
+	}
+
+	@Override
+	public void beforeRuleFlowGroupActivated(RuleFlowGroupActivatedEvent event) {
+		startTimes.get().ruleGroups.put(event.getRuleFlowGroup().getName(), System.nanoTime());
+	}
+
+	@Override
+	public void afterRuleFlowGroupDeactivated(RuleFlowGroupDeactivatedEvent event) {
+		long end = System.nanoTime();
+		String name = event.getRuleFlowGroup().getName();
+		Long start = startTimes.get().ruleGroups.remove(name);
+		if (start == null) {
+			// activated before this listener was added
+			return;
+		}
+		LatencyHistogram histogram = ruleGroupProfileMap.get(name);
+		if (histogram == null) {
+			histogram = ruleGroupProfileMap.computeIfAbsent(name, k -> new LatencyHistogram());
+		}
+		histogram.record(end - start);
+	}
+
+	private RuleProfile getRuleProfile(Rule rule) {
+		RuleProfile profile = ruleProfileMap.get(rule);
+		if (profile == null) {
+			profile = ruleProfileMap.computeIfAbsent(rule, k -> new RuleProfile());
+		}
+		return profile;
+	}
+
+	/**
+	 * @param rule the rule
+	 * @return the histogram of the firings of the rule, null if it's not fired nor activated
+	 */
+	public LatencyHistogram getRuleHistogram(Rule rule) {
+		RuleProfile profile = ruleProfileMap.get(rule);
+		return (profile != null) ? profile.firings : null;
+	}
+
+	/**
+	 * @param ruleGroupName name of the ruleflow-group
+	 * @return the histogram of the ruleflow-group, null if it's not executed
+	 */
+	public LatencyHistogram getRuleGroupHistogram(String ruleGroupName) {
+		return ruleGroupProfileMap.get(ruleGroupName);
+	}
+
+	/**
+	 * print the profile of all rules and ruleflow-groups
+	 */
+	public void printProfile() {
+		logger.debug("##### RULE PROFILE - START #####");
+		for (String ruleGroupName : getProfiledRuleGroupNames()) {
+			printProfileOfRuleGroup(ruleGroupName);
+		}
+		logger.debug("##### RULE PROFILE -  END  #####");
+	}
+
+	/**
+	 * print the profile of the rules and ruleflow-groups in a RuleFlow
+	 * @param ruleFlowName
+	 */
+	public void printProfileOfRuleFlow(String ruleFlowName) {
+		if (StringUtils.isBlank(ruleFlowName)) {
+			logger.debug("printProfileOfRuleFlow(\"{}\"): ruleflow name is blank.", ruleFlowName);
+			return;
+		}
+		Set<String> ruleGroupNames = RuleCoverageLogger.getRuleGroupsOfRuleFlow(ruleFlowName);
+		if (ruleGroupNames == null) {
+			logger.debug("##### No such ruleflow \"{}\" or No rules has been executed since cleared. #####", ruleFlowName);
+			return;
+		}
+		logger.debug("##### RULE PROFILE of RuleFlow : \"{}\" - START #####", ruleFlowName);
+		for (String ruleGroupName : ruleGroupNames) {
+			printProfileOfRuleGroup(ruleGroupName);
+		}
+		logger.debug("##### RULE PROFILE of RuleFlow : \"{}\" -  END  #####", ruleFlowName);
+	}
+
+	/**
+	 * print the profile of a rule group and its rules
+	 * @param ruleGroupName
+	 */
+	public void printProfileOfRuleGroup(String ruleGroupName) {
+		LatencyHistogram groupHistogram = ruleGroupProfileMap.get(ruleGroupName);
+		if (groupHistogram != null) {
+			logger.debug("# Rule group : \"{}\" - {}", ruleGroupName, format(groupHistogram));
+		} else {
+			logger.debug("# Rule group : \"{}\"", ruleGroupName);
+		}
+		Map<String, RuleProfile> rules = new TreeMap<String, RuleProfile>();
+		for (Map.Entry<Rule, RuleProfile> entry : ruleProfileMap.entrySet()) {
+			if (ruleGroupName.equals(RuleCoverageLogger.getRuleGroupName(entry.getKey()))) {
+				rules.put(entry.getKey().getName(), entry.getValue());
+			}
+		}
+		for (Map.Entry<String, RuleProfile> entry : rules.entrySet()) {
+			logger.debug("  * Rule : \"{}\" - activations {}, {}",
+					entry.getKey(), entry.getValue().activations.sum(), format(entry.getValue().firings));
+		}
+	}
+
+	private Set<String> getProfiledRuleGroupNames() {
+		Set<String> names = new TreeSet<String>(ruleGroupProfileMap.keySet());
+		for (Rule rule : ruleProfileMap.keySet()) {
+			names.add(RuleCoverageLogger.getRuleGroupName(rule));
+		}
+		return names;
+	}
+
+	private static String format(LatencyHistogram histogram) {
+		return String.format("count %d, mean %.1fus, p50 %.1fus, p99 %.1fus, max %.1fus",
+				histogram.getCount(),
+				histogram.getMean() / 1000.0,
+				histogram.getValueAtPercentile(50) / 1000.0,
+				histogram.getValueAtPercentile(99) / 1000.0,
+				histogram.getMax() / 1000.0);
+	}
+
+	/**
+	 * clear the profile
+	 */
+	public void clear() {
+		ruleProfileMap.clear();
+		ruleGroupProfileMap.clear();
+	}
+
+	/**
+	 * profile of a rule
+	 */
+	private static class RuleProfile {
+		final LongAdder activations = new LongAdder();
+		final LatencyHistogram firings = new LatencyHistogram();
+	}
+
+	/**
+	 * start times of a thread
+	 */
+	private static class StartTimes {
+		long match;
+		final Map<String, Long> ruleGroups = new HashMap<String, Long>();
+	}
+}
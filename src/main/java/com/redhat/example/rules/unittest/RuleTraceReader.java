@@ -0,0 +1,340 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RuleTraceReader reads a trace file written by {@link RuleTraceRecorder}.<BR>
+ * <BR>
+ * - {@link #next()} returns the events in the recorded order.<BR>
+ * - {@link #read(Predicate)} returns the events filtered by {@link #byRule(String)},<BR>
+ *   {@link #byFact(String, int)}, {@link #byAttribute(String)} or any predicate.<BR>
+ * - {@link TraceEvent#toLogLines()} rebuilds the log lines of RuleExecutionLogger and RuleFactWatcher.<BR>
+ */
+public class RuleTraceReader implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(RuleTraceReader.class);
+
+	private final DataInputStream in;
+	private final List<String> strings = new ArrayList<String>();
+	private byte[] buffer = new byte[256];
+	private boolean end = false;
+
+	/**
+	 * @param fileName trace file
+	 */
+	public RuleTraceReader(String fileName) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 64 * 1024));
+		if (in.readInt() != RuleTraceRecorder.MAGIC || in.readShort() != RuleTraceRecorder.VERSION) {
+			in.close();
+			throw new IOException("not a trace file: " + fileName);
+		}
+	}
+
+	/**
+	 * @return the next event, null at the end of the trace
+	 */
+	public TraceEvent next() throws IOException {
+		while (!end) {
+			int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				length = 0;
+			}
+			if (length <= 0) {
+				end = true;
+				break;
+			}
+			byte type = in.readByte();
+			long time = in.readLong();
+			if (type == RuleTraceRecorder.STRING) {
+				int id = in.readInt();
+				while (strings.size() <= id) {
+					strings.add(null);
+				}
+				strings.set(id, readString());
+				continue;
+			}
+			TraceEvent event = new TraceEvent(type, time);
+			switch (type) {
+			case RuleTraceRecorder.RULE_FIRED:
+			case RuleTraceRecorder.RULE_FIRED_END:
+				event.ruleName = string(in.readInt());
+				event.groupName = string(in.readInt());
+				break;
+			case RuleTraceRecorder.GROUP_ACTIVATED:
+			case RuleTraceRecorder.GROUP_DEACTIVATED:
+				event.groupName = string(in.readInt());
+				break;
+			case RuleTraceRecorder.FACT_INSERTED:
+				event.ruleName = string(in.readInt());
+				event.className = string(in.readInt());
+				event.identity = in.readInt();
+				break;
+			case RuleTraceRecorder.ATTRIBUTE:
+				event.ruleName = string(in.readInt());
+				event.className = string(in.readInt());
+				event.identity = in.readInt();
+				event.attrName = string(in.readInt());
+				byte flags = in.readByte();
+				event.changed = (flags & RuleTraceRecorder.FLAG_CHANGED) != 0;
+				event.asExpected = (flags & RuleTraceRecorder.FLAG_AS_EXPECTED) != 0;
+				event.key = readString();
+				event.previousValue = readString();
+				event.actualValue = readString();
+				event.expectedValue = readString();
+				break;
+			default:
+				// unknown record of a newer version
+				in.skipBytes(length - 1 - 8);
+				continue;
+			}
+			return event;
+		}
+		return null;
+	}
+
+	/**
+	 * read all remaining events which match the filter.
+	 * @param filter the filter, null for all events
+	 * @return the events
+	 */
+	public List<TraceEvent> read(Predicate<TraceEvent> filter) throws IOException {
+		List<TraceEvent> events = new ArrayList<TraceEvent>();
+		TraceEvent event;
+		while ((event = next()) != null) {
+			if (filter == null || filter.test(event)) {
+				events.add(event);
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * print the log lines of all remaining events which match the filter.
+	 * @param filter the filter, null for all events
+	 */
+	public void print(Predicate<TraceEvent> filter) throws IOException {
+		TraceEvent event;
+		while ((event = next()) != null) {
+			if (filter == null || filter.test(event)) {
+				for (String line : event.toLogLines()) {
+					logger.debug(line);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param ruleName name of the rule
+	 * @return filter of the events of the rule
+	 */
+	public static Predicate<TraceEvent> byRule(String ruleName) {
+		return event -> ruleName.equals(event.ruleName);
+	}
+
+	/**
+	 * @param className simple name of the class
+	 * @param identity identity hash code of the fact, as printed by RuleFactWatcher
+	 * @return filter of the events of the fact
+	 */
+	public static Predicate<TraceEvent> byFact(String className, int identity) {
+		return event -> event.identity == identity && className.equals(event.className);
+	}
+
+	/**
+	 * @param attrName name of the attribute
+	 * @return filter of the attribute events of the attribute
+	 */
+	public static Predicate<TraceEvent> byAttribute(String attrName) {
+		return event -> event.type == RuleTraceRecorder.ATTRIBUTE && attrName.equals(event.attrName);
+	}
+
+	private String string(int id) {
+		return (id == RuleTraceRecorder.NO_STRING || id >= strings.size()) ? null : strings.get(id);
+	}
+
+	private String readString() throws IOException {
+		int length = in.readInt();
+		if (length == RuleTraceRecorder.NO_STRING) {
+			return null;
+		}
+		if (buffer.length < length) {
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+		}
+		in.readFully(buffer, 0, length);
+		return new String(buffer, 0, length, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * an event of the trace
+	 */
+	public static class TraceEvent {
+		private final byte type;
+		private final long time;
+		private String ruleName;
+		private String groupName;
+		private String className;
+		private int identity;
+		private String attrName;
+		private String key;
+		private boolean changed;
+		private boolean asExpected;
+		private String previousValue;
+		private String actualValue;
+		private String expectedValue;
+
+		TraceEvent(byte type, long time) {
+			this.type = type;
+			this.time = time;
+		}
+
+		/**
+		 * @return log lines of RuleExecutionLogger or RuleFactWatcher for the event
+		 */
+		public List<String> toLogLines() {
+			List<String> lines = new ArrayList<String>(2);
+			switch (type) {
+			case RuleTraceRecorder.RULE_FIRED:
+				lines.add("Exec_Rule: " + ruleName + " in Rule_Group " + groupName);
+				break;
+			case RuleTraceRecorder.RULE_FIRED_END:
+				lines.add("End__Rule: " + ruleName);
+				break;
+			case RuleTraceRecorder.GROUP_ACTIVATED:
+				lines.add("Exec_Rule_Group: " + groupName);
+				break;
+			case RuleTraceRecorder.GROUP_DEACTIVATED:
+				lines.add("End__Rule_Group: " + groupName);
+				break;
+			case RuleTraceRecorder.FACT_INSERTED:
+				lines.add("Inserted: " + className + "@" + identity + " at rule (" + ruleName + ")");
+				break;
+			default:
+				String keyPrefix = StringUtils.isEmpty(key) ? "" : ("key='" + key + "' value ");
+				String attrSuffix = StringUtils.isEmpty(attrName) ? "" : "#" + attrName;
+				if (changed) {
+					lines.add("** " + keyPrefix + className + "@" + identity + attrSuffix
+							+ " was CHANGED [(" + previousValue + ") => (" + actualValue + ")]"
+							+ (asExpected ? " as Expected" : "") + " at rule (" + ruleName + ")");
+				} else {
+					lines.add("** " + keyPrefix + className + "@" + identity + attrSuffix
+							+ " was NOT changed (" + actualValue + ")"
+							+ (asExpected ? " as Expected" : "") + " at rule (" + ruleName + ")");
+				}
+				if (!asExpected) {
+					lines.add(" * " + keyPrefix + className + "@" + identity + "#" + attrSuffix
+							+ " is Expected (" + expectedValue + ") But is (" + actualValue + ")");
+				}
+			}
+			return lines;
+		}
+
+		public boolean isRuleFired() {
+			return type == RuleTraceRecorder.RULE_FIRED;
+		}
+
+		public boolean isRuleFiredEnd() {
+			return type == RuleTraceRecorder.RULE_FIRED_END;
+		}
+
+		public boolean isGroupActivated() {
+			return type == RuleTraceRecorder.GROUP_ACTIVATED;
+		}
+
+		public boolean isGroupDeactivated() {
+			return type == RuleTraceRecorder.GROUP_DEACTIVATED;
+		}
+
+		public boolean isFactInserted() {
+			return type == RuleTraceRecorder.FACT_INSERTED;
+		}
+
+		public boolean isAttribute() {
+			return type == RuleTraceRecorder.ATTRIBUTE;
+		}
+
+		/**
+		 * @return nanoseconds from the start of the recording
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public String getRuleName() {
+			return ruleName;
+		}
+
+		public String getGroupName() {
+			return groupName;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public int getIdentity() {
+			return identity;
+		}
+
+		public String getAttrName() {
+			return attrName;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public boolean isChanged() {
+			return changed;
+		}
+
+		public boolean isAsExpected() {
+			return asExpected;
+		}
+
+		public String getPreviousValue() {
+			return previousValue;
+		}
+
+		public String getActualValue() {
+			return actualValue;
+		}
+
+		public String getExpectedValue() {
+			return expectedValue;
+		}
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.drools.core.definitions.rule.impl.RuleImpl;
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.event.KieRuntimeEventManager;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.DefaultRuleRuntimeEventListener;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.RuleFlowGroupActivatedEvent;
+import org.kie.api.event.rule.RuleFlowGroupDeactivatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+
+/**
+ * RuleTraceRecorder records the execution trace of rules into a binary file.<BR>
+ * the file is read by {@link RuleTraceReader} after the run.<BR>
+ * <BR>
+ * - rule fired (before and after), ruleflow-group activated / deactivated and fact inserted are recorded<BR>
+ *   by adding the recorder to a session by {@link #setRuntime(KieRuntimeEventManager)}.<BR>
+ * - attributes checked by RuleFactWatcher are recorded by {@link RuleFactWatchers#setTraceRecorder(RuleTraceRecorder)}.<BR>
+ * - records are appended into memory-mapped regions of the file, names are written once and referred by ids.<BR>
+ * <BR>
+ * format :<BR>
+ * magic, version, then records of (length, type, nanoseconds from the start, fields).<BR>
+ * a record of length 0 is the end of the records.<BR>
+ */
+public class RuleTraceRecorder implements Closeable {
+	static final int MAGIC = 0x52555452; // "RUTR"
+	static final short VERSION = 1;
+
+	static final byte STRING = 1;
+	static final byte RULE_FIRED = 2;
+	static final byte RULE_FIRED_END = 3;
+	static final byte GROUP_ACTIVATED = 4;
+	static final byte GROUP_DEACTIVATED = 5;
+	static final byte FACT_INSERTED = 6;
+	static final byte ATTRIBUTE = 7;
+
+	static final int NO_STRING = -1;
+	static final byte FLAG_CHANGED = 1;
+	static final byte FLAG_AS_EXPECTED = 2;
+
+	private static final int REGION_SIZE = 16 * 1024 * 1024;
+
+	private final int regionSize;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private MappedByteBuffer region;
+	private long regionStart = 0;
+	private ByteBuffer record = ByteBuffer.allocate(256);
+	private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+	private final long startTime = System.nanoTime();
+	private final AgendaEventListener agendaListener = new AgendaListener();
+	private final RuleRuntimeEventListener ruleRuntimeListener = new RuleRuntimeListener();
+	private KieRuntimeEventManager runtime;
+	private boolean closed = false;
+
+	/**
+	 * @param fileName trace file, it's overwritten
+	 */
+	public RuleTraceRecorder(String fileName) throws IOException {
+		this(fileName, REGION_SIZE);
+	}
+
+	/**
+	 * @param fileName trace file, it's overwritten
+	 * @param regionSize size of a memory-mapped region
+	 */
+	RuleTraceRecorder(String fileName, int regionSize) throws IOException {
+		this.regionSize = regionSize;
+		File parent = new File(fileName).getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		file = new RandomAccessFile(fileName, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		region = channel.map(FileChannel.MapMode.READ_WRITE, 0, regionSize);
+		region.putInt(MAGIC);
+		region.putShort(VERSION);
+	}
+
+	/**
+	 * set KieRuntime (KieSession) to record by this recorder.
+	 * @param runtime the runtime, null to stop recording the current runtime
+	 */
+	public synchronized RuleTraceRecorder setRuntime(KieRuntimeEventManager runtime) {
+		if (this.runtime != null) {
+			this.runtime.removeEventListener(agendaListener);
+			this.runtime.removeEventListener(ruleRuntimeListener);
+		}
+		this.runtime = runtime;
+		if (runtime != null) {
+			runtime.addEventListener(agendaListener);
+			runtime.addEventListener(ruleRuntimeListener);
+		}
+		return this;
+	}
+
+	synchronized void ruleFired(Rule rule, boolean end) {
+		int ruleId = stringId(rule.getName());
+		int groupId = end ? NO_STRING : stringId(((RuleImpl)rule).getAgendaGroup());
+		begin(end ? RULE_FIRED_END : RULE_FIRED);
+		record.putInt(ruleId);
+		record.putInt(groupId);
+		commit();
+	}
+
+	synchronized void ruleGroup(String groupName, boolean activated) {
+		int groupId = stringId(groupName);
+		begin(activated ? GROUP_ACTIVATED : GROUP_DEACTIVATED);
+		record.putInt(groupId);
+		commit();
+	}
+
+	synchronized void factInserted(String ruleName, Object fact) {
+		int ruleId = stringId(ruleName);
+		int classId = stringId(fact.getClass().getSimpleName());
+		begin(FACT_INSERTED);
+		record.putInt(ruleId);
+		record.putInt(classId);
+		record.putInt(System.identityHashCode(fact));
+		commit();
+	}
+
+	/**
+	 * record an attribute checked by RuleFactWatcher.
+	 */
+	synchronized void attribute(String ruleName, String className, int identity, String attrName, Object key,
+			boolean changed, Object previousValue, Object actualValue, Object expectedValue, boolean asExpected) {
+		int ruleId = stringId(ruleName);
+		int classId = stringId(className);
+		int attrId = stringId(attrName);
+		begin(ATTRIBUTE);
+		record.putInt(ruleId);
+		record.putInt(classId);
+		record.putInt(identity);
+		record.putInt(attrId);
+		record.put((byte)((changed ? FLAG_CHANGED : 0) | (asExpected ? FLAG_AS_EXPECTED : 0)));
+		putString(key);
+		putString(changed ? previousValue : null);
+		putString(actualValue);
+		putString(expectedValue);
+		commit();
+	}
+
+	private int stringId(String str) {
+		if (str == null) {
+			return NO_STRING;
+		}
+		Integer id = stringIds.get(str);
+		if (id == null) {
+			id = stringIds.size();
+			stringIds.put(str, id);
+			begin(STRING);
+			record.putInt(id);
+			putString(str);
+			commit();
+		}
+		return id;
+	}
+
+	private void begin(byte type) {
+		// cast to Buffer for the byte code of Java 8 (ByteBuffer overrides them in Java 9)
+		((Buffer)record).clear();
+		record.put(type);
+		record.putLong(System.nanoTime() - startTime);
+	}
+
+	private void putString(Object value) {
+		if (value == null) {
+			ensureRecord(4);
+			record.putInt(NO_STRING);
+			return;
+		}
+		byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+		ensureRecord(4 + bytes.length);
+		record.putInt(bytes.length);
+		record.put(bytes);
+	}
+
+	private void ensureRecord(int size) {
+		if (record.remaining() < size) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + size));
+			((Buffer)record).flip();
+			larger.put(record);
+			record = larger;
+		}
+	}
+
+	private void commit() {
+		if (closed) {
+			return;
+		}
+		((Buffer)record).flip();
+		int length = record.remaining();
+		// keep 4 bytes for the end of the records
+		if (region.remaining() < 4 + length + 4) {
+			try {
+				regionStart += region.position();
+				region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(regionSize, 4 + length + 4));
+			} catch (IOException e) {
+				e.printStackTrace();
+				closed = true;
+				return;
+			}
+		}
+		region.putInt(length);
+		region.put(record);
+	}
+
+	/**
+	 * stop recording and cut the file at the end of the records.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed && !channel.isOpen()) {
+			return;
+		}
+		setRuntime(null);
+		closed = true;
+		long size = regionStart + region.position();
+		region.putInt(0);
+		region.force();
+		try {
+			// may fail while the region is mapped on some platforms, the end mark is used then
+			channel.truncate(size + 4);
+		} catch (IOException e) {
+			// ignore
+		}
+		file.close();
+	}
+
+	private class AgendaListener extends DefaultAgendaEventListener {
+		@Override
+		public void beforeMatchFired(BeforeMatchFiredEvent event) {
+			ruleFired(event.getMatch().getRule(), false);
+		}
+
+		@Override
+		public void afterMatchFired(AfterMatchFiredEvent event) {
+			ruleFired(event.getMatch().getRule(), true);
+		}
+
+		@Override
+		public void beforeRuleFlowGroupActivated(RuleFlowGroupActivatedEvent event) {
+			ruleGroup(event.getRuleFlowGroup().getName(), true);
+		}
+
+		@Override
+		public void afterRuleFlowGroupDeactivated(RuleFlowGroupDeactivatedEvent event) {
+			ruleGroup(event.getRuleFlowGroup().getName(), false);
+		}
+	}
+
+	private class RuleRuntimeListener extends DefaultRuleRuntimeEventListener {
+		@Override
+		public void objectInserted(ObjectInsertedEvent event) {
+			Rule rule = event.getRule();
+			factInserted(rule != null ? rule.getName() : "KieRuntime#insert() API", event.getObject());
+		}
+	}
+}
@@ -20,6 +20,7 @@ import org.kie.api.event.rule.AgendaEventListener;
 import org.kie.api.event.rule.DefaultAgendaEventListener;
 import org.kie.api.event.rule.RuleFlowGroupDeactivatedEvent;
 import org.kie.api.runtime.KieRuntime;
+import org.kie.api.runtime.StatelessKieSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,6 +48,27 @@ public class RuleflowTestHelper {
 			}
 		}
 	}
+
+	/**
+	 * Set to skip the ruleflow execution after specified ruleflow-group
+	 * @param session StatelessKieSession
+	 * @param group ruleflow-group name
+	 */
+	public static void setSkipAfterRuleGroup(StatelessKieSession session, String group) {
+		session.addEventListener(new SubListener1(group));
+	}
+
+	/**
+	 * Reset to skip the ruleflow exection after specified ruleflow-group
+	 * @param session StatelessKieSession
+	 */
+	public static void resetSkipAfterRuleGroup(StatelessKieSession session) {
+		for (AgendaEventListener listener : session.getAgendaEventListeners()) {
+			if (listener instanceof SubListener1) {
+				session.removeEventListener(listener);
+			}
+		}
+	}
 	
 	private static class SubListener1 extends DefaultAgendaEventListener {
 		String group;
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.kie.api.command.Command;
+import org.kie.api.event.KieRuntimeEventManager;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.example.rules.unittest.CsvTestHelper.CsvFiles;
+import com.redhat.example.rules.unittest.CsvTestHelper.TestFileType;
+
+/**
+ * ScenarioRunner runs a test scenario (Files_*.csv) repeatedly as a performance test.<BR>
+ * <BR>
+ * a scenario is :<BR>
+ * - load : the input files are loaded by {@link CsvTestHelper#loadInputMap(String)},<BR>
+ *   and the facts to insert are created by a {@link ScenarioBinder}<BR>
+ * - execute : the facts are executed by {@link TestCaseBase#executeStateless(List, TestCaseBase.KieSessionWrapper)}<BR>
+ *   or {@link TestCaseBase#executeStateful(TestCaseBase.KieSessionWrapper)} (with the ruleflow of the test case)<BR>
+ * - assert : the actual records are checked by {@link CsvTestHelper#assertExpectCSVs(List, String, String)}<BR>
+ * <BR>
+ * the scenario is run for the warm-up iterations, then for the measurement iterations,<BR>
+ * and scenarios/sec, rule firings/sec, the percentiles of each phase and the allocated bytes are reported.<BR>
+ * set "-Drules.unittest.scenario.warmup=N" and "-Drules.unittest.scenario.iterations=N" to change the default iterations.<BR>
+ * <BR>
+ * <pre>
+ *   ScenarioResult result = new ScenarioRunner(this, "testdata/parentChild2/Files_1.csv", binder).run();
+ * </pre>
+ */
+public class ScenarioRunner {
+	private static final Logger logger = LoggerFactory.getLogger(ScenarioRunner.class);
+
+	public static String warmUpProperty = "rules.unittest.scenario.warmup";
+	public static String iterationsProperty = "rules.unittest.scenario.iterations";
+
+	/**
+	 * phases of a scenario
+	 */
+	public static enum Phase {
+		LOAD,
+		EXECUTE,
+		ASSERT;
+	}
+
+	private final TestCaseBase testCase;
+	private final String fileListCsvPath;
+	private final ScenarioBinder binder;
+	private int warmUpIterations = Integer.getInteger(warmUpProperty, 5);
+	private int measurementIterations = Integer.getInteger(iterationsProperty, 20);
+	private boolean stateful = false;
+	private TestCaseBase.KieSessionWrapper sessionWrapper = null;
+
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * @param testCase the test case to execute the rules, its KieBase must be prepared
+	 * @param fileListCsvPath CSV file list (Files_*.csv) of the scenario
+	 * @param binder binder of the input and actual records, null for {@link DefaultScenarioBinder}
+	 */
+	public ScenarioRunner(TestCaseBase testCase, String fileListCsvPath, ScenarioBinder binder) {
+		this.testCase = testCase;
+		this.fileListCsvPath = fileListCsvPath;
+		this.binder = (binder != null) ? binder : new DefaultScenarioBinder();
+	}
+
+	public ScenarioRunner setWarmUpIterations(int warmUpIterations) {
+		this.warmUpIterations = warmUpIterations;
+		return this;
+	}
+
+	public ScenarioRunner setMeasurementIterations(int measurementIterations) {
+		this.measurementIterations = measurementIterations;
+		return this;
+	}
+
+	/**
+	 * @param stateful true -> executeStateful, false -> executeStateless (default)
+	 */
+	public ScenarioRunner setStateful(boolean stateful) {
+		this.stateful = stateful;
+		return this;
+	}
+
+	/**
+	 * @param sessionWrapper wrapper to add listeners (e.g. DefaultKieSessionWrapper), null for no listeners (default)
+	 */
+	public ScenarioRunner setSessionWrapper(TestCaseBase.KieSessionWrapper sessionWrapper) {
+		this.sessionWrapper = sessionWrapper;
+		return this;
+	}
+
+	/**
+	 * run the scenario and print the result
+	 * @return the result of the measurement iterations
+	 */
+	public ScenarioResult run() {
+		List<String> paths = getExpectedRootPaths();
+		for (int i = 0; i < warmUpIterations; i++) {
+			runOnce(paths, null);
+		}
+		ScenarioResult result = new ScenarioResult(fileListCsvPath, stateful);
+		long allocated = getAllocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < measurementIterations; i++) {
+			runOnce(paths, result);
+		}
+		result.elapsed = System.nanoTime() - start;
+		result.allocatedBytes = (allocated >= 0) ? getAllocatedBytes() - allocated : -1;
+		result.print();
+		return result;
+	}
+
+	private void runOnce(List<String> paths, ScenarioResult result) {
+		// load
+		long start = System.nanoTime();
+		Map<String, List<?>> inputMap = CsvTestHelper.loadInputMap(fileListCsvPath);
+		Map<String, List<?>> actualsMap = new LinkedHashMap<String, List<?>>();
+		List<Object> facts = binder.createFacts(inputMap, actualsMap);
+		long loaded = System.nanoTime();
+
+		// execute
+		FiringCounter counter = new FiringCounter(sessionWrapper);
+		String ruleFlowName = testCase.getRuleFlowName();
+		if (stateful) {
+			counter.facts = facts;
+			counter.ruleFlowName = ruleFlowName;
+			KieSession kieSession = testCase.executeStateful(counter);
+			testCase.releaseSession(kieSession);
+		} else {
+			List<Command<?>> cmds = new ArrayList<Command<?>>();
+			if (!StringUtils.isEmpty(ruleFlowName)) {
+				cmds.add(TestCaseBase.kieCommands.newStartProcess(ruleFlowName));
+			}
+			cmds.add(TestCaseBase.kieCommands.newInsertElements(facts));
+			testCase.executeStateless(cmds, counter);
+		}
+		long executed = System.nanoTime();
+
+		// assert
+		for (String path : paths) {
+			List<?> actuals = actualsMap.get(path);
+			if (actuals != null) {
+				CsvTestHelper.assertExpectCSVs(actuals, fileListCsvPath, path);
+			}
+		}
+		long asserted = System.nanoTime();
+
+		if (result != null) {
+			result.scenarios++;
+			result.firings += counter.firings;
+			result.histograms.get(Phase.LOAD).record(loaded - start);
+			result.histograms.get(Phase.EXECUTE).record(executed - loaded);
+			result.histograms.get(Phase.ASSERT).record(asserted - executed);
+		}
+	}
+
+	/**
+	 * @return bytes allocated by the current thread, -1 if it's not supported by the JVM
+	 */
+	private static long getAllocatedBytes() {
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean)threadMXBean;
+			if (mxBean.isThreadAllocatedMemorySupported() && mxBean.isThreadAllocatedMemoryEnabled()) {
+				return mxBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return top level paths of the expected files
+	 */
+	private List<String> getExpectedRootPaths() {
+		Set<String> paths = new LinkedHashSet<String>();
+		for (CsvFiles csvFile : CsvTestHelper.readCsvListFiles(fileListCsvPath)) {
+			if (csvFile.getType() == TestFileType.EX) {
+				String path = csvFile.getPath();
+				int dotIndex = path.indexOf('.');
+				paths.add((dotIndex < 0) ? path : path.substring(0, dotIndex));
+			}
+		}
+		return new ArrayList<String>(paths);
+	}
+
+	/**
+	 * counts the rule firings of an execution, and inserts the facts into a stateful session.
+	 */
+	private static class FiringCounter extends DefaultAgendaEventListener implements TestCaseBase.KieSessionWrapper {
+		private final TestCaseBase.KieSessionWrapper sessionWrapper;
+		List<Object> facts;
+		String ruleFlowName;
+		long firings = 0;
+
+		FiringCounter(TestCaseBase.KieSessionWrapper sessionWrapper) {
+			this.sessionWrapper = sessionWrapper;
+		}
+
+		@Override
+		public void afterMatchFired(AfterMatchFiredEvent event) {
+			firings++;
+		}
+
+		@Override
+		public void beforeExecute(KieRuntimeEventManager session) {
+			if (sessionWrapper != null) {
+				sessionWrapper.beforeExecute(session);
+			}
+			session.addEventListener(this);
+			if (facts != null && session instanceof KieSession) {
+				KieSession kieSession = (KieSession)session;
+				if (!StringUtils.isEmpty(ruleFlowName)) {
+					kieSession.startProcess(ruleFlowName);
+				}
+				for (Object fact : facts) {
+					kieSession.insert(fact);
+				}
+			}
+		}
+
+		@Override
+		public void afterExecute(KieRuntimeEventManager session) {
+			session.removeEventListener(this);
+			if (sessionWrapper != null) {
+				sessionWrapper.afterExecute(session);
+			}
+		}
+	}
+
+	/**
+	 * ScenarioBinder creates the facts to insert from the input records, and registers the actual records to check.
+	 */
+	public interface ScenarioBinder {
+		/**
+		 * @param inputMap path -> input records loaded by {@link CsvTestHelper#loadInputMap(String)}
+		 * @param actualsMap path -> actual records, the records of the top level paths of expected files
+		 *        are checked after the execution. (e.g. input records updated by rules, an empty list for results)
+		 * @return facts to insert
+		 */
+		public List<Object> createFacts(Map<String, List<?>> inputMap, Map<String, List<?>> actualsMap);
+	}
+
+	/**
+	 * inserts all records of the top level input paths, and checks them as the actual records.
+	 */
+	public static class DefaultScenarioBinder implements ScenarioBinder {
+		@Override
+		public List<Object> createFacts(Map<String, List<?>> inputMap, Map<String, List<?>> actualsMap) {
+			List<Object> facts = new ArrayList<Object>();
+			for (Map.Entry<String, List<?>> entry : inputMap.entrySet()) {
+				if (entry.getKey().indexOf('.') < 0) {
+					facts.addAll(entry.getValue());
+					actualsMap.put(entry.getKey(), entry.getValue());
+				}
+			}
+			return facts;
+		}
+	}
+
+	/**
+	 * result of the measurement iterations of a scenario
+	 */
+	public static class ScenarioResult {
+		private final String scenario;
+		private final boolean stateful;
+		private final Map<Phase, LatencyHistogram> histograms = new LinkedHashMap<Phase, LatencyHistogram>();
+		private long scenarios = 0;
+		private long firings = 0;
+		private long elapsed = 0;
+		private long allocatedBytes = -1;
+
+		ScenarioResult(String scenario, boolean stateful) {
+			this.scenario = scenario;
+			this.stateful = stateful;
+			for (Phase phase : Phase.values()) {
+				histograms.put(phase, new LatencyHistogram());
+			}
+		}
+
+		/**
+		 * @return the CSV file list of the scenario
+		 */
+		public String getScenario() {
+			return scenario;
+		}
+
+		public boolean isStateful() {
+			return stateful;
+		}
+
+		/**
+		 * @return number of the measured scenarios
+		 */
+		public long getScenarios() {
+			return scenarios;
+		}
+
+		/**
+		 * @return total rule firings of the measured scenarios
+		 */
+		public long getFirings() {
+			return firings;
+		}
+
+		/**
+		 * @return nanoseconds of the measurement iterations
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * @return rule firings per scenario
+		 */
+		public double getFiringsPerScenario() {
+			return (scenarios > 0) ? (double)firings / scenarios : 0;
+		}
+
+		/**
+		 * @return bytes allocated by the measured scenarios (on the running thread), -1 if not supported
+		 */
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		/**
+		 * @return bytes allocated per scenario, -1 if not supported
+		 */
+		public long getAllocatedBytesPerScenario() {
+			return (allocatedBytes >= 0 && scenarios > 0) ? allocatedBytes / scenarios : -1;
+		}
+
+		public double getScenariosPerSecond() {
+			return (elapsed > 0) ? scenarios * 1e9 / elapsed : 0;
+		}
+
+		/**
+		 * @return rule firings per second of the execute phase
+		 */
+		public double getFiringsPerSecond() {
+			long executeTime = histograms.get(Phase.EXECUTE).getTotal();
+			return (executeTime > 0) ? firings * 1e9 / executeTime : 0;
+		}
+
+		/**
+		 * @param phase the phase
+		 * @return the histogram of the durations (nanoseconds) of the phase
+		 */
+		public LatencyHistogram getHistogram(Phase phase) {
+			return histograms.get(phase);
+		}
+
+		/**
+		 * print the result
+		 */
+		public void print() {
+			logger.debug("##### SCENARIO : \"{}\" ({}) - {} scenarios, {} scenarios/sec, {} firings/sec #####",
+					scenario, stateful ? "stateful" : "stateless", scenarios,
+					String.format("%.1f", getScenariosPerSecond()), String.format("%.1f", getFiringsPerSecond()));
+			for (Phase phase : Phase.values()) {
+				LatencyHistogram histogram = histograms.get(phase);
+				logger.debug("  * {} : {}", phase, String.format("mean %.1fus, p50 %.1fus, p90 %.1fus, p99 %.1fus, max %.1fus",
+						histogram.getMean() / 1000.0,
+						histogram.getValueAtPercentile(50) / 1000.0,
+						histogram.getValueAtPercentile(90) / 1000.0,
+						histogram.getValueAtPercentile(99) / 1000.0,
+						histogram.getMax() / 1000.0));
+			}
+			if (allocatedBytes >= 0) {
+				logger.debug("  * ALLOCATION : {} bytes/scenario", getAllocatedBytesPerScenario());
+			}
+		}
+	}
+}
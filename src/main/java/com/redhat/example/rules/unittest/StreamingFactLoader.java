@@ -0,0 +1,362 @@
+/*
+ * Copyright 2015 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.example.rules.unittest;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.example.rules.unittest.CsvTestHelper.CsvFiles;
+import com.redhat.example.rules.unittest.CsvTestHelper.TestFileType;
+
+/**
+ * StreamingFactLoader is the streaming mode of {@link CsvTestHelper#loadInputMap(String)}.<BR>
+ * It reads the input files (IN) of a CSV list file (Files_*.csv) row by row<BR>
+ * and passes the root facts to a consumer in batches of the specified size.<BR>
+ * <BR>
+ * - root facts are the facts of the files whose parent path is not an input file.<BR>
+ * - child facts are attached to their parent (parent# column, and the parent attribute) before the parent is passed.<BR>
+ *   rows without parent# belong to the first parent row.<BR>
+ * - only one batch and the open rows of child files are held in memory,<BR>
+ *   if the child files are sorted by the parent# column (checked by reading the parent# column when opened).<BR>
+ *   the rows of a child file which is not sorted, and of its own child files, are held by parent rows.<BR>
+ * - for Map type files (keyType option) the root facts are the values of the entries.<BR>
+ */
+public class StreamingFactLoader {
+	private static final Logger logger = LoggerFactory.getLogger(StreamingFactLoader.class);
+
+	private final String fileListCsvPath;
+	private final int batchSize;
+
+	/**
+	 * @param fileListCsvPath the CSV list file (Files_*.csv)
+	 * @param batchSize number of root facts in a batch
+	 */
+	public StreamingFactLoader(String fileListCsvPath, int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		}
+		this.fileListCsvPath = fileListCsvPath;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * load the root facts and pass them to the consumer in batches.<BR>
+	 * the list passed to the consumer is reused, it must not be kept by the consumer.
+	 * @param batchConsumer consumer of a batch
+	 * @return number of root facts
+	 */
+	public long load(Consumer<List<Object>> batchConsumer) {
+		List<FileNode> roots = createFileTree();
+		List<Object> batch = new ArrayList<Object>(batchSize);
+		long count = 0;
+		for (FileNode root : roots) {
+			root.open();
+			try {
+				while (root.reader.hasNext()) {
+					CsvRow<?> row = root.reader.next();
+					Object fact = root.createFact(row);
+					root.attachChildren(fact, row.getRowNumber());
+					if (fact instanceof MapEntry) {
+						fact = ((MapEntry)fact).value;
+					}
+					batch.add(fact);
+					count++;
+					if (batch.size() >= batchSize) {
+						batchConsumer.accept(batch);
+						batch.clear();
+					}
+				}
+				root.checkRemainingChildren();
+			} finally {
+				root.close();
+			}
+		}
+		if (!batch.isEmpty()) {
+			batchConsumer.accept(batch);
+			batch.clear();
+		}
+		logger.debug("loaded {} root facts from {}", count, fileListCsvPath);
+		return count;
+	}
+
+	/**
+	 * insert the root facts into the session in batches.
+	 * @param kieSession target session
+	 * @param fireEachBatch true -> fireAllRules() after each batch is inserted
+	 * @param deleteAfterFire true -> delete the facts of each batch after fireAllRules() to bound the memory of the session.<BR>
+	 *        requires fireEachBatch.
+	 * @return number of root facts
+	 */
+	public long insertInto(KieSession kieSession, boolean fireEachBatch, boolean deleteAfterFire) {
+		if (deleteAfterFire && !fireEachBatch) {
+			throw new IllegalArgumentException("deleteAfterFire requires fireEachBatch");
+		}
+		List<FactHandle> handles = new ArrayList<FactHandle>(batchSize);
+		return load(batch -> {
+			for (Object fact : batch) {
+				FactHandle handle = kieSession.insert(fact);
+				if (deleteAfterFire) {
+					handles.add(handle);
+				}
+			}
+			if (fireEachBatch) {
+				kieSession.fireAllRules();
+				if (deleteAfterFire) {
+					for (FactHandle handle : handles) {
+						kieSession.delete(handle);
+					}
+					handles.clear();
+				}
+			}
+		});
+	}
+
+	private List<FileNode> createFileTree() {
+		File folder = new File(fileListCsvPath).getParentFile();
+		List<CsvFiles> csvFiles = new ArrayList<CsvFiles>();
+		for (CsvFiles csvFile : CsvTestHelper.readCsvListFiles(fileListCsvPath)) {
+			// process only input files
+			if (csvFile.getType() == TestFileType.IN) {
+				csvFiles.add(csvFile);
+			}
+		}
+		// sort by "path" (same order as loadInputMap)
+		Collections.sort(csvFiles, new Comparator<CsvFiles>() {
+			@Override
+			public int compare(CsvFiles o1, CsvFiles o2) {
+				return o1.getPath().compareTo(o2.getPath());
+			}
+		});
+		Map<String, FileNode> nodes = new LinkedHashMap<String, FileNode>();
+		List<FileNode> roots = new ArrayList<FileNode>();
+		for (CsvFiles csvFile : csvFiles) {
+			FileNode node = new FileNode(folder, csvFile);
+			nodes.put(csvFile.getPath(), node);
+			String path[] = CsvTestHelper.separateParentPath(csvFile.getPath());
+			FileNode parent = nodes.get(path[0]);
+			if (parent != null) {
+				node.attribute = path[1];
+				parent.children.add(node);
+			} else {
+				roots.add(node);
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * an input file and its child files
+	 */
+	private static class FileNode {
+		final CsvFiles csvFile;
+		final String fileName;
+		final Class<?> clazz;
+		final Class<?> keyClass;
+		final List<FileNode> children = new ArrayList<FileNode>();
+		String attribute;
+		CsvRowReader<?> reader;
+		/** the row read ahead (child files sorted by parent#) */
+		CsvRow<?> pending;
+		/** parent row -> rows (child files not sorted by parent#) */
+		Map<Integer, List<CsvRow<?>>> rowsByParent;
+
+		FileNode(File folder, CsvFiles csvFile) {
+			this.csvFile = csvFile;
+			String name = null;
+			Class<?> c = null;
+			try {
+				name = new File(folder, csvFile.getFile()).getCanonicalPath();
+			} catch (Exception e) {
+				e.printStackTrace();
+				fail("fail at access file: " + csvFile.getFile());
+			}
+			try {
+				c = Class.forName(csvFile.getClazz());
+			} catch (Exception e) {
+				e.printStackTrace();
+				fail("fail at load class:" + csvFile.getClazz());
+			}
+			Class<?> k = null;
+			String options = csvFile.getOptions();
+			if (options != null && options.indexOf(CsvTestHelper.OPTION_KEY_TYPE + "=") != -1) {
+				String keyType = CsvTestHelper.getOptionMap(options).get(CsvTestHelper.OPTION_KEY_TYPE);
+				try {
+					k = Class.forName(keyType);
+				} catch (Exception e) {
+					e.printStackTrace();
+					fail("fail at load class:" + keyType);
+				}
+			}
+			this.fileName = name;
+			this.clazz = c;
+			this.keyClass = k;
+		}
+
+		void open() {
+			reader = CsvRowReader.open(fileName, clazz, true);
+			for (FileNode child : children) {
+				child.openChild(false);
+			}
+		}
+
+		/**
+		 * @param parentHeld true if the rows of the parent file are held (not in the order of the rows)
+		 */
+		void openChild(boolean parentHeld) {
+			boolean hold = parentHeld || !isSortedByParentRow();
+			reader = CsvRowReader.open(fileName, clazz, true);
+			if (hold) {
+				logger.debug("rows are held by parent rows (not sorted by parent#): {}", fileName);
+				rowsByParent = new HashMap<Integer, List<CsvRow<?>>>();
+				while (reader.hasNext()) {
+					CsvRow<?> row = reader.next();
+					rowsByParent.computeIfAbsent(getParentRow(row), k -> new ArrayList<CsvRow<?>>()).add(row);
+				}
+			} else {
+				advance();
+			}
+			for (FileNode child : children) {
+				child.openChild(hold);
+			}
+		}
+
+		/**
+		 * read only the parent# column of the file.
+		 */
+		private boolean isSortedByParentRow() {
+			try (CsvRowSource source = CsvRowSource.open(fileName)) {
+				String[] header = source.getHeader();
+				int index = (header != null) ? Arrays.asList(header).indexOf(RuleFactWatcher.Constants.parentRowKey) : -1;
+				if (index < 0) {
+					return true;
+				}
+				boolean[] wanted = new boolean[index + 1];
+				wanted[index] = true;
+				int previous = 1;
+				List<String> row;
+				while ((row = source.read(wanted)) != null) {
+					String cell = (index < row.size()) ? row.get(index) : null;
+					int parentRow = (cell != null) ? Integer.parseInt(cell.trim()) : 1;
+					if (parentRow < previous) {
+						return false;
+					}
+					previous = parentRow;
+				}
+				return true;
+			} catch (IOException | NumberFormatException e) {
+				e.printStackTrace();
+				fail("fail to load: " + fileName);
+				return false;
+			}
+		}
+
+		void advance() {
+			pending = reader.hasNext() ? reader.next() : null;
+		}
+
+		static int getParentRow(CsvRow<?> row) {
+			return (row.getParentRow() != null) ? row.getParentRow() : 1;
+		}
+
+		Object createFact(CsvRow<?> row) {
+			if (keyClass == null) {
+				return row.getFact();
+			}
+			MapEntry entry = new MapEntry();
+			entry.key = CsvTestHelper.getKeyValue(keyClass, row.getKeyMap());
+			entry.value = row.getFact();
+			return entry;
+		}
+
+		/**
+		 * attach the rows of child files which belong to the parent row (and their children recursively).
+		 */
+		void attachChildren(Object parent, int parentRowNumber) {
+			for (FileNode child : children) {
+				if (child.rowsByParent != null) {
+					List<CsvRow<?>> rows = child.rowsByParent.remove(parentRowNumber);
+					if (rows != null) {
+						for (CsvRow<?> row : rows) {
+							child.attach(parent, row);
+						}
+					}
+					continue;
+				}
+				while (child.pending != null) {
+					int parentRow = getParentRow(child.pending);
+					if (parentRow > parentRowNumber) {
+						break;
+					} else if (parentRow < parentRowNumber) {
+						fail("parent# must be sorted in ascending order: " + child.fileName
+								+ " (row " + child.pending.getRowNumber() + ")");
+					}
+					CsvRow<?> row = child.pending;
+					child.advance();
+					child.attach(parent, row);
+				}
+			}
+		}
+
+		private void attach(Object parent, CsvRow<?> row) {
+			Object fact = createFact(row);
+			attachChildren(fact, row.getRowNumber());
+			CsvTestHelper.putChild(parent, attribute, fact);
+			// create child -> parent relation
+			if (csvFile.getParentAttr() != null) {
+				CsvTestHelper.setProperty(fact, csvFile.getParentAttr(), parent);
+			}
+		}
+
+		void checkRemainingChildren() {
+			for (FileNode child : children) {
+				CsvRow<?> remaining = child.pending;
+				if (child.rowsByParent != null && !child.rowsByParent.isEmpty()) {
+					remaining = child.rowsByParent.values().iterator().next().get(0);
+				}
+				if (remaining != null) {
+					fail("parent row " + remaining.getParentRow() + " is not found: " + child.fileName
+							+ " (row " + remaining.getRowNumber() + ")");
+				}
+				child.checkRemainingChildren();
+			}
+		}
+
+		void close() {
+			if (reader != null) {
+				reader.close();
+			}
+			for (FileNode child : children) {
+				child.close();
+			}
+		}
+	}
+}
@@ -15,12 +15,18 @@
  */
 package com.redhat.example.rules.unittest;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
-import org.junit.AfterClass;
 import org.junit.Before;
-import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
 import org.kie.api.KieBase;
 import org.kie.api.KieServices;
 import org.kie.api.command.Command;
@@ -31,23 +37,86 @@ import org.kie.api.runtime.KieSession;
 import org.kie.api.runtime.StatelessKieSession;
 
 /**
- * Baseテストケース
+ * Baseテストケース<BR>
+ * <BR>
+ * - KieBases are looked up once per name and shared by all test classes.<BR>
+ * - set "-Drules.unittest.warmup=N" to fire N empty sessions of a KieBase when it's looked up for the first time.<BR>
+ * - set "-Drules.unittest.sessionpool=N" to reuse up to N idle sessions in executeStateless and executeStateful.<BR>
+ *   a session from executeStateful is returned to the pool by {@link #releaseSession(KieSession)}.<BR>
+ *   with the pool, executeStateless runs the commands and fireAllRules on a pooled KieSession instead of<BR>
+ *   a new StatelessKieSession. the session is reset on release, so the facts, activations, globals and<BR>
+ *   listeners of a test are not seen by the next test.<BR>
+ * - set "-Drules.unittest.hotrules=N" to print the N most fired rules with the coverage.<BR>
+ * - set "-Drules.unittest.profile=true" to report the time of rules and ruleflow-groups with the coverage.<BR>
+ * - set kieBaseName and ruleFlowName in a @BeforeClass method of the test class.<BR>
+ * - test methods and test classes can run concurrently (e.g. Surefire parallel=methods or classes).<BR>
+ *   test classes of different KieBases or ruleflows running at the same time must set them by<BR>
+ *   {@link #setKieBaseName(String)} and {@link #setRuleFlowName(String)} in their constructors instead,<BR>
+ *   and use {@link #getKieBase()} instead of kieBase. the static fields are the defaults of them.<BR>
+ *   the coverage is shared by the test classes running at the same time, and cleared after the last of them.<BR>
  */
 public class TestCaseBase {
-	protected static RuleCoverageLogger ruleCoverageLogger;
-	protected static String ruleFlowName = null;
+	protected static volatile RuleCoverageLogger ruleCoverageLogger;
+	protected static volatile RuleProfilingLogger ruleProfilingLogger;
+	/** default ruleflow of {@link #getRuleFlowName()} */
+	protected static volatile String ruleFlowName = null;
 
 	public static String kieBaseNameProperty = "rules.unittest.kiebasename";
-	protected static String kieBaseName = null;
-	protected static KieBase kieBase = null;
+	public static String warmUpProperty = "rules.unittest.warmup";
+	public static String sessionPoolProperty = "rules.unittest.sessionpool";
+	public static String hotRulesProperty = "rules.unittest.hotrules";
+	public static String profileProperty = "rules.unittest.profile";
+	/** default KieBase name of {@link #getKieBaseName()} */
+	protected static volatile String kieBaseName = null;
+	/** the KieBase prepared last, use {@link #getKieBase()} for the KieBase of the test */
+	protected static volatile KieBase kieBase = null;
+	private String instanceKieBaseName = null;
+	private String instanceRuleFlowName = null;
+	private KieBase instanceKieBase = null;
+	protected KieSessionPool sessionPool = null;
+
+	private static final String DEFAULT_KIEBASE = "";
+	private static final Map<String, KieBase> kieBases = new ConcurrentHashMap<String, KieBase>();
+	private static final Map<KieBase, KieSessionPool> sessionPools = new ConcurrentHashMap<KieBase, KieSessionPool>();
+	/** test class -> ruleflow name to print the coverage after the class */
+	private static final Map<Class<?>, String> ruleFlowNames = new ConcurrentHashMap<Class<?>, String>();
+	private static final AtomicInteger runningClasses = new AtomicInteger();
 			
 	protected static KieServices ks = KieServices.Factory.get();
 	protected static KieContainer kieContainer = ks.newKieClasspathContainer();
 	protected static KieCommands kieCommands = ks.getCommands();
 
-	@BeforeClass
+	/**
+	 * calls {@link #setUpBeforeClass()} and {@link #tearDownAfterClass(Class)} with the test class.<BR>
+	 * it runs around the @BeforeClass and @AfterClass methods of the test class.
+	 */
+	@ClassRule
+	public static final TestRule testClassRule = new TestWatcher() {
+		@Override
+		protected void starting(Description description) {
+			setUpBeforeClass();
+		}
+
+		@Override
+		protected void finished(Description description) {
+			tearDownAfterClass(description.getTestClass());
+		}
+	};
+
 	public static void setUpBeforeClass() {
-		ruleCoverageLogger = new RuleCoverageLogger();
+		synchronized (TestCaseBase.class) {
+			// the coverage is shared, so is the logger among test classes running in parallel
+			if (runningClasses.getAndIncrement() == 0 || ruleCoverageLogger == null) {
+				ruleCoverageLogger = new RuleCoverageLogger();
+				ruleProfilingLogger = Boolean.getBoolean(profileProperty) ? new RuleProfilingLogger() : null;
+			}
+		}
+		// pre-warm the KieBase specified by the property
+		String targetKieBaseName = System.getProperty(kieBaseNameProperty);
+		if (targetKieBaseName != null &&
+				kieContainer.getKieBaseNames().contains(targetKieBaseName)) {
+			getKieBase(targetKieBaseName);
+		}
 	}
 	
 	@Before
@@ -55,25 +124,146 @@ public class TestCaseBase {
 		String targetKieBaseName = System.getProperty(kieBaseNameProperty);
 		if (targetKieBaseName != null &&
 				kieContainer.getKieBaseNames().contains(targetKieBaseName)) {
-			kieBaseName = targetKieBaseName;
+			instanceKieBaseName = targetKieBaseName;
 		}
-		System.out.println("kieBaseName is \"" + kieBaseName + "\"");
+		String name = getKieBaseName();
+		System.out.println("kieBaseName is \"" + name + "\"");
 		System.out.println("(*) Can change kieBaseName by \"-D" + kieBaseNameProperty + "=...\"");
-		if (kieBaseName == null || kieBaseName.length() == 0) {
-			kieBase = kieContainer.getKieBase();
-		} else {
-			kieBase = kieContainer.getKieBase(kieBaseName);
+		instanceKieBase = getKieBase(name);
+		kieBase = instanceKieBase;
+		sessionPool = getSessionPool(instanceKieBase);
+		String flow = getRuleFlowName();
+		if (!StringUtils.isBlank(flow)) {
+			ruleFlowNames.put(getClass(), flow);
+		}
+	}
+
+	/**
+	 * set the KieBase name of this test instance, call it in the constructor.
+	 * @param name name of the KieBase, null to use the static kieBaseName
+	 */
+	protected void setKieBaseName(String name) {
+		instanceKieBaseName = name;
+	}
+
+	/**
+	 * @return name of the KieBase of this test instance, the static kieBaseName if not set
+	 */
+	public String getKieBaseName() {
+		return (instanceKieBaseName != null) ? instanceKieBaseName : kieBaseName;
+	}
+
+	/**
+	 * set the ruleflow of this test instance, call it in the constructor.
+	 * @param name name of the ruleflow, null to use the static ruleFlowName
+	 */
+	protected void setRuleFlowName(String name) {
+		instanceRuleFlowName = name;
+	}
+
+	/**
+	 * @return name of the ruleflow to test, the static ruleFlowName if not set (null if the rules don't use a ruleflow)
+	 */
+	public String getRuleFlowName() {
+		return (instanceRuleFlowName != null) ? instanceRuleFlowName : ruleFlowName;
+	}
+
+	/**
+	 * @return the KieBase of this test instance prepared by {@link #prepareKieBase()}
+	 */
+	public KieBase getKieBase() {
+		return instanceKieBase;
+	}
+
+	/**
+	 * get the KieBase of the name, it's looked up and warmed up only once.
+	 * @param name name of the KieBase, null or empty for the default KieBase
+	 * @return the KieBase
+	 */
+	protected static KieBase getKieBase(String name) {
+		String key = (name == null) ? DEFAULT_KIEBASE : name;
+		KieBase base = kieBases.get(key);
+		if (base != null) {
+			return base;
+		}
+		synchronized (kieBases) {
+			base = kieBases.get(key);
+			if (base == null) {
+				base = key.isEmpty() ? kieContainer.getKieBase() : kieContainer.getKieBase(key);
+				warmUp(base, Integer.getInteger(warmUpProperty, 0));
+				kieBases.put(key, base);
+			}
+		}
+		return base;
+	}
+
+	/**
+	 * fire empty sessions of the KieBase to initialize the rule network and to let JIT compile it.
+	 * @param base the KieBase
+	 * @param iterations number of sessions to fire
+	 */
+	protected static void warmUp(KieBase base, int iterations) {
+		for (int i = 0; i < iterations; i++) {
+			KieSession session = base.newKieSession();
+			try {
+				session.fireAllRules();
+			} finally {
+				session.dispose();
+			}
+		}
+	}
+
+	/**
+	 * @param base the KieBase
+	 * @return the session pool of the KieBase, null if the pool is disabled
+	 */
+	protected static KieSessionPool getSessionPool(KieBase base) {
+		int size = Integer.getInteger(sessionPoolProperty, 0);
+		if (size <= 0) {
+			return null;
+		}
+		KieSessionPool pool = sessionPools.get(base);
+		if (pool == null) {
+			KieSessionPool newPool = new KieSessionPool(base, size);
+			pool = sessionPools.putIfAbsent(base, newPool);
+			if (pool == null) {
+				pool = newPool;
+			}
 		}
+		return pool;
 	}
 	
 	protected void initSession(KieRuntimeEventManager session) {
 		ruleCoverageLogger.setSession(session);
 		session.addEventListener(new RuleExecutionLogger());
+		if (ruleProfilingLogger != null) {
+			session.addEventListener(ruleProfilingLogger);
+		}
 	}
 
 
-	@AfterClass
+	/**
+	 * print the coverage of the static ruleFlowName.
+	 */
 	public static void tearDownAfterClass() {
+		tearDownAfterClass(null);
+	}
+
+	/**
+	 * print the coverage of the test class.
+	 * @param testClass the test class, the coverage of the ruleflow of its tests is printed.<BR>
+	 *        the static ruleFlowName is used if the class is null or has no ruleflow.
+	 */
+	public static void tearDownAfterClass(Class<?> testClass) {
+		String ruleFlowName = (testClass != null) ? ruleFlowNames.remove(testClass) : null;
+		if (ruleFlowName == null) {
+			ruleFlowName = TestCaseBase.ruleFlowName;
+		}
+		RuleEventJournal journal = RuleEventJournal.getDefault();
+		if (journal != null) {
+			// print the events of the test class before the coverage
+			journal.flush();
+		}
 		if (StringUtils.isBlank(ruleFlowName)) {
 			// print the coverage all RuleGroupS.
 			ruleCoverageLogger.printCoverage();
@@ -81,11 +271,43 @@ public class TestCaseBase {
 			// print the coverage for the ruleflow only.
 			ruleCoverageLogger.printCoverageOfRuleFlow(ruleFlowName);
 		}
-		RuleCoverageLogger.clear();
+		RuleProfilingLogger profilingLogger = ruleProfilingLogger;
+		if (profilingLogger != null) {
+			if (StringUtils.isBlank(ruleFlowName)) {
+				profilingLogger.printProfile();
+			} else {
+				profilingLogger.printProfileOfRuleFlow(ruleFlowName);
+			}
+		}
+		int hotRules = Integer.getInteger(hotRulesProperty, 0);
+		if (hotRules > 0) {
+			ruleCoverageLogger.printHotRules(hotRules);
+		}
+		synchronized (TestCaseBase.class) {
+			// other test classes may be running in parallel
+			if (runningClasses.decrementAndGet() <= 0) {
+				RuleCoverageLogger.clear();
+			}
+		}
 	}
 
 	public void executeStateless(List<Command<?>> cmds, KieSessionWrapper sessionWrapper) {
-		StatelessKieSession kieSession = kieBase.newStatelessKieSession();
+		if (sessionPool != null) {
+			// a pooled stateful session works as a stateless session, the KieSessionWrapper gets the KieSession
+			KieSession kieSession = sessionPool.borrow();
+			try {
+				if (sessionWrapper != null) {
+					sessionWrapper.beforeExecute(kieSession);
+				}
+				List<Command<?>> batch = new ArrayList<Command<?>>(cmds);
+				batch.add(kieCommands.newFireAllRules());
+				kieSession.execute(kieCommands.newBatchExecution(batch));
+			} finally {
+				sessionPool.release(kieSession);
+			}
+			return;
+		}
+		StatelessKieSession kieSession = instanceKieBase.newStatelessKieSession();
 		if (sessionWrapper != null) {
 			sessionWrapper.beforeExecute(kieSession);
 		}
@@ -93,7 +315,7 @@ public class TestCaseBase {
 	}
 
 	public KieSession executeStateful(KieSessionWrapper sessionWrapper) {
-		KieSession kieSession = kieBase.newKieSession();
+		KieSession kieSession = (sessionPool != null) ? sessionPool.borrow() : instanceKieBase.newKieSession();
 		if (sessionWrapper != null) {
 			sessionWrapper.beforeExecute(kieSession);
 		}
@@ -104,6 +326,18 @@ public class TestCaseBase {
 		return kieSession;
 	}
 
+	/**
+	 * return a session from executeStateful to the pool, or dispose it if the pool is disabled.
+	 * @param kieSession the session
+	 */
+	public void releaseSession(KieSession kieSession) {
+		if (sessionPool != null) {
+			sessionPool.release(kieSession);
+		} else if (kieSession != null) {
+			kieSession.dispose();
+		}
+	}
+
 	public interface KieSessionWrapper {
 		public void beforeExecute(KieRuntimeEventManager session);
 		public void afterExecute(KieRuntimeEventManager session);
@@ -115,12 +349,18 @@ public class TestCaseBase {
 		public void beforeExecute(KieRuntimeEventManager session) {
 			session.addEventListener(ruleExecLogger);
 			ruleCoverageLogger.setSession(session);
+			if (ruleProfilingLogger != null) {
+				session.addEventListener(ruleProfilingLogger);
+			}
 		}
 
 		@Override
 		public void afterExecute(KieRuntimeEventManager session) {
 			session.removeEventListener(ruleExecLogger);
 			session.removeEventListener(ruleCoverageLogger);
+			if (ruleProfilingLogger != null) {
+				session.removeEventListener(ruleProfilingLogger);
+			}
 		}
 	}
 }
@@ -0,0 +1,287 @@
+package com.redhat.example.rules.unittest;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.supercsv.cellprocessor.ift.CellProcessor;
+import org.supercsv.io.dozer.CsvDozerBeanReader;
+import org.supercsv.prefs.CsvPreference;
+
+/**
+ * BeanBinder must create the same beans as the Dozer mapping (CsvDozerBeanReader),<BR>
+ * and the classes which BeanBinder can't bind must be loaded by Dozer.
+ */
+public class TestBeanBinder {
+	private static final String DEF_HEADER = "columnName,option,format,testPK,testSkip\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_same_as_dozer() throws Exception {
+		String file = write("BoundBean",
+				"name,,,Y,\ncount,,,,\nsize,,,,\namount,,,,\nflag,,,,\nactive,,,,\nrate,,,,\n"
+						+ "date,date,yyyy/MM/dd,,\nkind,,,,\nletter,,,,\n",
+				"name,count,size,amount,flag,active,rate,date,kind,letter\n"
+						+ "a,1,2,1.50,false,true,0.5,2016/06/30,SECONDS,x\n"
+						// 空のセル
+						+ ",,,,,,,,,\n"
+						// [null] と [empty]、変換の表記
+						+ "[null],-3, 4 , 10 ,true,false,1e3,2016/07/01,DAYS,[empty]\n");
+		assertThat(CompiledColumnDef.get(file, "BoundBean").getBinder(BoundBean.class), is(notNullValue()));
+		for (boolean ignoreNull : new boolean[] { false, true }) {
+			List<BoundBean> expected = readByDozer(file, BoundBean.class, ignoreNull);
+			List<BoundBean> actual = read(file, BoundBean.class, ignoreNull);
+			assertThat(actual.size(), is(3));
+			for (int i = 0; i < actual.size(); i++) {
+				assertThat("ignoreNull=" + ignoreNull + " row " + (i + 1),
+						describe(actual.get(i)), is(describe(expected.get(i))));
+			}
+		}
+		// ignoreNull : 空のセルは初期値のまま
+		BoundBean empty = read(file, BoundBean.class, true).get(1);
+		assertThat(empty.getName(), is("default"));
+		assertThat(empty.getSize(), is(7));
+		assertThat(empty.getAmount(), is(BigDecimal.ONE));
+		assertThat(empty.isFlag(), is(true));
+		// 空のセルは null、プリミティブ型は初期値のまま
+		empty = read(file, BoundBean.class, false).get(1);
+		assertThat(empty.getName(), is(nullValue()));
+		assertThat(empty.getSize(), is(7));
+		assertThat(empty.getAmount(), is(nullValue()));
+
+		BoundBean converted = read(file, BoundBean.class, true).get(2);
+		assertThat(converted.getName(), is(nullValue()));
+		assertThat(converted.getCount(), is(-3));
+		assertThat(converted.getSize(), is(4));
+		assertThat(converted.getAmount(), is(new BigDecimal("10")));
+		assertThat(converted.getRate(), is(1000.0));
+		assertThat(converted.getKind(), is(TimeUnit.DAYS));
+		assertThat(converted.getLetter(), is(""));
+	}
+
+	@Test
+	public void test_fallback_to_dozer() throws Exception {
+		// ネストした属性
+		String nested = write("NestedBean", "id,,,Y,\nchild.name,,,,\n",
+				"id,child.name\nn1,c1\nn2,\n");
+		assertThat(CompiledColumnDef.get(nested, "NestedBean").getBinder(NestedBean.class), is(nullValue()));
+		for (boolean ignoreNull : new boolean[] { false, true }) {
+			List<NestedBean> actual = read(nested, NestedBean.class, ignoreNull);
+			List<NestedBean> expected = readByDozer(nested, NestedBean.class, ignoreNull);
+			for (int i = 0; i < actual.size(); i++) {
+				assertThat(actual.get(i).getId(), is(expected.get(i).getId()));
+				assertThat(actual.get(i).getChild().getName(), is(expected.get(i).getChild().getName()));
+			}
+			assertThat(actual.get(0).getChild().getName(), is("c1"));
+			assertThat(actual.get(1).getChild().getName(), is(ignoreNull ? "initial" : null));
+		}
+
+		// BeanBinder が変換できない型
+		String calendar = write("CalendarBean", "id,,,Y,\nday,date,yyyy/MM/dd,,\n",
+				"id,day\nd1,2016/06/30\n");
+		assertThat(CompiledColumnDef.get(calendar, "CalendarBean").getBinder(CalendarBean.class), is(nullValue()));
+		CalendarBean actual = read(calendar, CalendarBean.class, false).get(0);
+		CalendarBean expected = readByDozer(calendar, CalendarBean.class, false).get(0);
+		assertThat(actual.getDay(), is(expected.getDay()));
+		assertThat(actual.getDay().get(Calendar.DAY_OF_MONTH), is(30));
+	}
+
+	/**
+	 * write the .def file of the class and a CSV file.
+	 * @return path of the CSV file
+	 */
+	private String write(String className, String def, String csv) throws IOException {
+		Files.write(new File(folder.getRoot(), className + CsvTestHelper.DEFINITION_FILE_EXT).toPath(),
+				(DEF_HEADER + def).getBytes(CsvTestHelper.FILE_ENCODING));
+		File file = new File(folder.getRoot(), "in_" + className + "_1.csv");
+		Files.write(file.toPath(), csv.getBytes(CsvTestHelper.FILE_ENCODING));
+		return file.getPath();
+	}
+
+	/**
+	 * read the beans by CsvRowReader (BeanBinder if the class is supported)
+	 */
+	private static <T> List<T> read(String file, Class<T> clazz, boolean ignoreNull) {
+		List<T> beans = new ArrayList<T>();
+		try (CsvRowReader<T> reader = CsvRowReader.open(file, clazz, ignoreNull)) {
+			while (reader.hasNext()) {
+				beans.add(reader.next().getFact());
+			}
+		}
+		return beans;
+	}
+
+	/**
+	 * read the beans by Dozer, the attributes of empty cells are not set if ignoreNull.
+	 */
+	private static <T> List<T> readByDozer(String file, Class<T> clazz, boolean ignoreNull) throws Exception {
+		CompiledColumnDef columnDef = CompiledColumnDef.get(file, clazz.getSimpleName());
+		String[] fieldMapping = columnDef.getFileMapping();
+		CellProcessor[] processors = columnDef.getReadProcessors();
+		List<T> beans = new ArrayList<T>();
+		try (Reader fileReader = new InputStreamReader(new FileInputStream(file), CsvTestHelper.FILE_ENCODING);
+				CsvDozerBeanReader dozerReader = new CsvDozerBeanReader(fileReader, CsvPreference.STANDARD_PREFERENCE)) {
+			dozerReader.getHeader(true);
+			dozerReader.configureBeanMapping(clazz, fieldMapping);
+			T bean;
+			while ((bean = dozerReader.read(clazz, processors)) != null) {
+				if (ignoreNull) {
+					T copy = clazz.newInstance();
+					for (int i = 0; i < fieldMapping.length; i++) {
+						// get() is the raw cell (1 origin)
+						if (fieldMapping[i] != null && dozerReader.get(i + 1) != null) {
+							PropertyUtils.setProperty(copy, fieldMapping[i], PropertyUtils.getProperty(bean, fieldMapping[i]));
+						}
+					}
+					bean = copy;
+				}
+				beans.add(bean);
+			}
+		}
+		return beans;
+	}
+
+	private static Map<String, Object> describe(Object bean) throws Exception {
+		return PropertyUtils.describe(bean);
+	}
+
+	public static class BoundBean {
+		private String name = "default";
+		private Integer count;
+		private int size = 7;
+		private BigDecimal amount = BigDecimal.ONE;
+		private boolean flag = true;
+		private Boolean active;
+		private Double rate;
+		private Date date;
+		private TimeUnit kind;
+		private String letter;
+
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+		public Integer getCount() {
+			return count;
+		}
+		public void setCount(Integer count) {
+			this.count = count;
+		}
+		public int getSize() {
+			return size;
+		}
+		public void setSize(int size) {
+			this.size = size;
+		}
+		public BigDecimal getAmount() {
+			return amount;
+		}
+		public void setAmount(BigDecimal amount) {
+			this.amount = amount;
+		}
+		public boolean isFlag() {
+			return flag;
+		}
+		public void setFlag(boolean flag) {
+			this.flag = flag;
+		}
+		public Boolean getActive() {
+			return active;
+		}
+		public void setActive(Boolean active) {
+			this.active = active;
+		}
+		public Double getRate() {
+			return rate;
+		}
+		public void setRate(Double rate) {
+			this.rate = rate;
+		}
+		public Date getDate() {
+			return date;
+		}
+		public void setDate(Date date) {
+			this.date = date;
+		}
+		public TimeUnit getKind() {
+			return kind;
+		}
+		public void setKind(TimeUnit kind) {
+			this.kind = kind;
+		}
+		public String getLetter() {
+			return letter;
+		}
+		public void setLetter(String letter) {
+			this.letter = letter;
+		}
+	}
+
+	public static class NestedBean {
+		private String id;
+		private ChildBean child = new ChildBean();
+
+		public String getId() {
+			return id;
+		}
+		public void setId(String id) {
+			this.id = id;
+		}
+		public ChildBean getChild() {
+			return child;
+		}
+		public void setChild(ChildBean child) {
+			this.child = child;
+		}
+	}
+
+	public static class ChildBean {
+		private String name = "initial";
+
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	public static class CalendarBean {
+		private String id;
+		private Calendar day;
+
+		public String getId() {
+			return id;
+		}
+		public void setId(String id) {
+			this.id = id;
+		}
+		public Calendar getDay() {
+			return day;
+		}
+		public void setDay(Calendar day) {
+			this.day = day;
+		}
+	}
+}
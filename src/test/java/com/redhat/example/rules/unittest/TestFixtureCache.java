@@ -0,0 +1,179 @@
+package com.redhat.example.rules.unittest;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * FixtureCache must not return the rows of a changed or broken compiled fixture.
+ */
+public class TestFixtureCache {
+	private static final Charset UTF8 = StandardCharsets.UTF_8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File cacheFolder;
+	private FixtureCache cache;
+	private File csv;
+
+	@Before
+	public void init() throws IOException {
+		cacheFolder = folder.newFolder("cache");
+		cache = new FixtureCache(cacheFolder, 64L * 1024 * 1024);
+		csv = folder.newFile("in_Test.csv");
+	}
+
+	@Test
+	public void test_compiled_fixture() throws IOException {
+		write("id,name\n1,\"a,b\"\n2,\n");
+		assertThat(isCompiled(), is(false));
+		List<List<String>> rows = load();
+		assertThat(rows, is(Arrays.asList(Arrays.asList("id", "name"), Arrays.asList("1", "a,b"), Arrays.asList("2", null))));
+		// 2回目はコンパイル済みのファイルから読む
+		assertThat(isCompiled(), is(true));
+		assertThat(load(), is(rows));
+	}
+
+	@Test
+	public void test_changed_size() throws IOException {
+		write("id,name\n1,one\n");
+		load();
+		write("id,name\n1,one\n2,two\n");
+		assertThat(isCompiled(), is(false));
+		assertThat(load().size(), is(3));
+	}
+
+	@Test
+	public void test_changed_time_and_hash() throws IOException {
+		write("id,name\n1,one\n");
+		load();
+		long lastModified = csv.lastModified();
+		// 同じサイズで内容を変更
+		write("id,name\n1,two\n");
+		csv.setLastModified(lastModified + 10000);
+		assertThat(isCompiled(), is(false));
+		assertThat(load().get(1), is(Arrays.asList("1", "two")));
+	}
+
+	@Test
+	public void test_changed_hash_in_same_time() throws IOException {
+		write("id,name\n1,one\n");
+		load();
+		long lastModified = csv.lastModified();
+		// 同じサイズ・同じ更新時刻で内容を変更 (コンパイルと同じ秒の変更)
+		write("id,name\n1,two\n");
+		csv.setLastModified(lastModified);
+		assertThat(isCompiled(), is(false));
+		assertThat(load().get(1), is(Arrays.asList("1", "two")));
+	}
+
+	@Test
+	public void test_touched() throws IOException {
+		write("id,name\n1,one\n");
+		load();
+		// 更新時刻だけの変更ではハッシュが同じなので使われる
+		csv.setLastModified(csv.lastModified() + 10000);
+		assertThat(isCompiled(), is(true));
+		assertThat(load().get(1), is(Arrays.asList("1", "one")));
+	}
+
+	@Test
+	public void test_truncated() throws IOException {
+		write("id,name\n1,one\n2,two\n");
+		load();
+		File compiled = getCompiledFile();
+		try (RandomAccessFile file = new RandomAccessFile(compiled, "rw")) {
+			file.setLength(file.length() - 10);
+		}
+		assertThat(isCompiled(), is(false));
+		assertThat(compiled.exists(), is(false));
+		assertThat(load().get(2), is(Arrays.asList("2", "two")));
+		assertThat(isCompiled(), is(true));
+	}
+
+	@Test
+	public void test_corrupted() throws IOException {
+		write("id,name\n1,one\n2,two\n");
+		load();
+		File compiled = getCompiledFile();
+		// セルの中身を書き換え
+		byte[] bytes = Files.readAllBytes(compiled.toPath());
+		int index = new String(bytes, StandardCharsets.ISO_8859_1).lastIndexOf("two");
+		bytes[index] = 'x';
+		Files.write(compiled.toPath(), bytes);
+		assertThat(isCompiled(), is(false));
+		assertThat(load().get(2), is(Arrays.asList("2", "two")));
+	}
+
+	@Test
+	public void test_disabled() {
+		String property = System.getProperty("rules.unittest.fixturecache");
+		try {
+			System.setProperty("rules.unittest.fixturecache", "false");
+			assertThat(FixtureCache.createDefault(), is(nullValue()));
+			System.setProperty("rules.unittest.fixturecache", cacheFolder.getPath());
+			assertThat(FixtureCache.createDefault(), is(notNullValue()));
+		} finally {
+			if (property == null) {
+				System.clearProperty("rules.unittest.fixturecache");
+			} else {
+				System.setProperty("rules.unittest.fixturecache", property);
+			}
+		}
+	}
+
+	private void write(String content) throws IOException {
+		Files.write(csv.toPath(), content.getBytes(UTF8));
+	}
+
+	private boolean isCompiled() throws IOException {
+		CsvRowSource source = cache.open(csv.getPath(), UTF8);
+		if (source == null) {
+			return false;
+		}
+		source.close();
+		return true;
+	}
+
+	/**
+	 * read all rows as CsvRowSource.open() does.
+	 */
+	private List<List<String>> load() throws IOException {
+		CsvRowSource source = cache.open(csv.getPath(), UTF8);
+		if (source == null) {
+			source = cache.record(csv.getPath(), UTF8, CsvRowSource.openCsv(csv.getPath(), UTF8));
+		}
+		List<List<String>> rows = new ArrayList<List<String>>();
+		try {
+			rows.add(Arrays.asList(source.getHeader()));
+			List<String> row;
+			while ((row = source.read(null)) != null) {
+				rows.add(row);
+			}
+		} finally {
+			source.close();
+		}
+		return rows;
+	}
+
+	private File getCompiledFile() {
+		File[] files = cacheFolder.listFiles((dir, name) -> name.endsWith(".bin"));
+		assertThat(files.length, is(1));
+		return files[0];
+	}
+}
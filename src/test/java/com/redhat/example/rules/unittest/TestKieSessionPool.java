@@ -0,0 +1,120 @@
+package com.redhat.example.rules.unittest;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.DefaultRuleRuntimeEventListener;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.kie.api.runtime.KieSession;
+
+/**
+ * a released session must come back without the state of the previous borrower.
+ */
+public class TestKieSessionPool {
+	private static final String DRL = "package com.redhat.example.pool\n"
+			+ "global java.util.List list\n"
+			+ "rule \"collect\"\n"
+			+ "when\n"
+			+ "    $s : String()\n"
+			+ "then\n"
+			+ "    list.add($s);\n"
+			+ "end\n";
+
+	private static KieBase kieBase;
+
+	@BeforeClass
+	public static void buildKieBase() {
+		KieServices ks = KieServices.Factory.get();
+		KieFileSystem kfs = ks.newKieFileSystem();
+		kfs.write("src/main/resources/com/redhat/example/pool/pool.drl", DRL);
+		KieBuilder builder = ks.newKieBuilder(kfs).buildAll();
+		assertThat(builder.getResults().getMessages(Message.Level.ERROR).toString(),
+				builder.getResults().hasMessages(Message.Level.ERROR), is(false));
+		kieBase = ks.newKieContainer(builder.getKieModule().getReleaseId()).getKieBase();
+	}
+
+	@Test
+	public void test_released_session_is_clean() {
+		KieSessionPool pool = new KieSessionPool(kieBase, 1);
+		KieSession first = pool.borrow();
+		// 1人目: リスナー・グローバルを設定し、ファクトを入れて発火せずに返す
+		AgendaEventListener agendaListener = new DefaultAgendaEventListener();
+		RuleRuntimeEventListener ruleRuntimeListener = new DefaultRuleRuntimeEventListener();
+		first.addEventListener(agendaListener);
+		first.addEventListener(ruleRuntimeListener);
+		List<String> list = new ArrayList<String>();
+		first.setGlobal("list", list);
+		first.insert("a");
+		first.insert("b");
+		assertThat(first.getFactCount(), is(2L));
+		pool.release(first);
+
+		// 2人目: 同じセッションが何も残っていない状態で返る
+		KieSession second = pool.borrow();
+		assertThat(second, is(sameInstance(first)));
+		assertThat(pool.getCreatedCount(), is(1L));
+		assertThat(pool.getReusedCount(), is(1L));
+		assertThat(second.getFactCount(), is(0L));
+		assertThat(second.getGlobal("list"), is(nullValue()));
+		assertThat(second.getAgendaEventListeners(), not(hasItem(agendaListener)));
+		assertThat(second.getRuleRuntimeEventListeners(), not(hasItem(ruleRuntimeListener)));
+		List<String> list2 = new ArrayList<String>();
+		second.setGlobal("list", list2);
+		// 1人目の活性化は残っていない
+		assertThat(second.fireAllRules(), is(0));
+		second.insert("c");
+		assertThat(second.fireAllRules(), is(1));
+		assertThat(list2, contains("c"));
+		assertThat(list, is(empty()));
+		pool.release(second);
+		pool.clear();
+	}
+
+	@Test
+	public void test_disposed_by_borrower() throws InterruptedException {
+		KieSessionPool pool = new KieSessionPool(kieBase, 1);
+		// release() を呼ばずに dispose() したセッションはプールに残らない
+		KieSession session = pool.borrow();
+		assertThat(pool.getTrackedCount(), is(1));
+		session.dispose();
+		session = null;
+		for (int i = 0; i < 50 && pool.getTrackedCount() > 0; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertThat(pool.getTrackedCount(), is(0));
+		// 返却されたセッションは保持される
+		KieSession released = pool.borrow();
+		pool.release(released);
+		assertThat(pool.getTrackedCount(), is(1));
+		pool.clear();
+		assertThat(pool.getTrackedCount(), is(0));
+	}
+
+	@Test
+	public void test_max_idle() {
+		KieSessionPool pool = new KieSessionPool(kieBase, 1);
+		KieSession first = pool.borrow();
+		KieSession second = pool.borrow();
+		assertThat(second, is(not(sameInstance(first))));
+		pool.release(first);
+		// プールが一杯なので破棄される
+		pool.release(second);
+		assertThat(pool.borrow(), is(sameInstance(first)));
+		assertThat(pool.borrow(), is(not(sameInstance(second))));
+		assertThat(pool.getCreatedCount(), is(3L));
+		pool.clear();
+	}
+}
@@ -0,0 +1,143 @@
+package com.redhat.example.rules.unittest;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+/**
+ * MappedCsvTokenizer must read the same cells as Super CSV.
+ */
+public class TestMappedCsvTokenizer {
+	private static final Charset SJIS = Charset.forName("Shift_JIS");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_quoted_cells() throws IOException {
+		// 区切り文字、エスケープされた引用符、改行を含むセル
+		List<List<String>> rows = assertSameAsSuperCsv(
+				"id,name,note\n"
+				+ "1,\"a,b\",\"say \"\"hello\"\"\"\n"
+				+ "2,\"line1\nline2\",\"crlf\r\nin cell\"\n"
+				+ "3,\"\",ab\"c,d\"e\n", StandardCharsets.UTF_8);
+		assertThat(rows.get(1), is(Arrays.asList("1", "a,b", "say \"hello\"")));
+		assertThat(rows.get(2), is(Arrays.asList("2", "line1\nline2", "crlf\nin cell")));
+		assertThat(rows.get(3), is(Arrays.asList("3", null, "abc,de")));
+	}
+
+	@Test
+	public void test_line_endings() throws IOException {
+		String[] files = {
+				"a,b,c\r\n1,2,3\r\n4,5,\r\n",
+				"a,b,c\n1,2,3\n4,5,\n",
+				"a,b,c\n1,2,3\n\n4,5,",
+				"a,b,c\r1,2,3\r4,5,\r",
+		};
+		for (String csv : files) {
+			List<List<String>> rows = assertSameAsSuperCsv(csv, StandardCharsets.UTF_8);
+			// 空行は読み飛ばし、最後の空セルは null
+			assertThat(rows.size(), is(3));
+			assertThat(rows.get(2), is(Arrays.asList("4", "5", null)));
+		}
+	}
+
+	@Test
+	public void test_shift_jis() throws IOException {
+		// 表(0x95 0x5C)、ソ(0x83 0x5C) の2バイト目は ASCII の範囲
+		List<List<String>> rows = assertSameAsSuperCsv(
+				"id,name\n表,ソース\n\"表,ソ\",\"予定\"\"表\"\"\"\nabc,表示ソフト\n", SJIS);
+		assertThat(rows.get(1), is(Arrays.asList("表", "ソース")));
+		assertThat(rows.get(2), is(Arrays.asList("表,ソ", "予定\"表\"")));
+		assertThat(rows.get(3), is(Arrays.asList("abc", "表示ソフト")));
+	}
+
+	@Test
+	public void test_wanted_cells() throws IOException {
+		File file = write("a,b,c,d\n表,\"x,y\",ソ,\"p\nq\"\n1,2,3,4\n", SJIS);
+		try (MappedCsvTokenizer tokenizer = new MappedCsvTokenizer(file.getPath(), SJIS)) {
+			assertThat(tokenizer.getHeader(), is(new String[] { "a", "b", "c", "d" }));
+			boolean[] wanted = { false, true, false };
+			// 指定外のセルは null、列の区切りは変わらない
+			assertThat(tokenizer.read(wanted), is(Arrays.asList(null, "x,y", null, null)));
+			assertThat(tokenizer.read(wanted), is(Arrays.asList(null, "2", null, null)));
+			assertThat(tokenizer.read(wanted), is(nullValue()));
+			assertThat(tokenizer.getLineNumber(), is(4));
+		}
+	}
+
+	@Test
+	public void test_unsupported_encoding() throws IOException {
+		// ISO-2022-JP の2バイト文字は 0x21-0x7E で、◆ は 0x22 0x21 ("!) になる
+		Charset jis = Charset.forName("ISO-2022-JP");
+		assertThat(MappedCsvTokenizer.isSupported(jis), is(false));
+		if (Charset.isSupported("x-windows-iso2022jp")) {
+			assertThat(MappedCsvTokenizer.isSupported(Charset.forName("x-windows-iso2022jp")), is(false));
+		}
+		assertThat(MappedCsvTokenizer.isSupported(SJIS), is(true));
+		File file = write("a,b\n◆,\"◆,◆\"\n", jis);
+		try {
+			new MappedCsvTokenizer(file.getPath(), jis).close();
+			fail("ISO-2022-JP must not be tokenized on bytes");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		// Super CSV で読む
+		try (CsvRowSource source = CsvRowSource.openCsv(file.getPath(), jis)) {
+			assertThat(source, is(instanceOf(CsvRowSource.SuperCsvRowSource.class)));
+			assertThat(source.getHeader(), is(new String[] { "a", "b" }));
+			assertThat(source.read(null), is(Arrays.asList("◆", "◆,◆")));
+		}
+		File sjis = write("a,b\n表,ソ\n", SJIS);
+		try (CsvRowSource source = CsvRowSource.openCsv(sjis.getPath(), SJIS)) {
+			assertThat(source, is(instanceOf(MappedCsvTokenizer.class)));
+		}
+	}
+
+	private File write(String csv, Charset charset) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), csv.getBytes(charset));
+		return file;
+	}
+
+	/**
+	 * read all rows by MappedCsvTokenizer and Super CSV, and check they are same.
+	 * @return the rows
+	 */
+	private List<List<String>> assertSameAsSuperCsv(String csv, Charset charset) throws IOException {
+		File file = write(csv, charset);
+		List<List<String>> expected = new ArrayList<List<String>>();
+		try (CsvListReader reader = new CsvListReader(new InputStreamReader(
+				new FileInputStream(file), charset), CsvPreference.STANDARD_PREFERENCE)) {
+			List<String> row;
+			while ((row = reader.read()) != null) {
+				expected.add(new ArrayList<String>(row));
+			}
+		}
+		List<List<String>> actual = new ArrayList<List<String>>();
+		try (MappedCsvTokenizer tokenizer = new MappedCsvTokenizer(file.getPath(), charset)) {
+			List<String> row;
+			while ((row = tokenizer.read(null)) != null) {
+				actual.add(row);
+			}
+		}
+		assertThat(actual, is(expected));
+		return actual;
+	}
+}
@@ -0,0 +1,131 @@
+package com.redhat.example.rules.unittest;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.redhat.example.fact.ExampleValidationResult;
+import com.redhat.example.rules.unittest.ScenarioRunner.ScenarioResult;
+
+/**
+ * PerformanceBaseline must fail on a regression over the tolerance, and record only accepted results.
+ */
+public class TestPerformanceBaseline extends TestCaseBase {
+	private static final String SCENARIO = "testdata/parentChild2/Files_1.csv";
+	private static final String HEADER = "time,scenario,session,ruleHash,fixtureHash,scenarios,"
+			+ "executeP50,executeMean,loadP50,assertP50,firingsPerScenario,allocatedBytesPerScenario\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private PerformanceBaseline baseline;
+	private ScenarioResult result;
+
+	@Before
+	public void init() throws IOException {
+		file = new File(folder.getRoot(), "performance-baseline.csv");
+		baseline = new PerformanceBaseline(file.getPath(), Arrays.asList("src/test/resources"));
+		result = new ScenarioRunner(this, SCENARIO, (inputMap, actualsMap) -> {
+			Map<String, Object> parameterMap = new LinkedHashMap<String, Object>();
+			parameterMap.put("ExampleFactParent", inputMap.get("parent"));
+			parameterMap.put("ExampleValidationResult", new LinkedList<ExampleValidationResult>());
+			List<Object> facts = new ArrayList<Object>();
+			facts.add(parameterMap);
+			return facts;
+		}).setWarmUpIterations(0).setMeasurementIterations(1).run();
+		assertThat(result.getFiringsPerScenario(), is(greaterThan(0.0)));
+	}
+
+	@Test
+	public void test_first_result() {
+		baseline.assertNoRegression(result, 20);
+		assertThat(baseline.getHistory(SCENARIO).size(), is(1));
+		// 同じ結果は回帰ではない
+		baseline.assertNoRegression(result, 20);
+		assertThat(baseline.getHistory(SCENARIO).size(), is(2));
+	}
+
+	@Test
+	public void test_firings_within_tolerance() throws IOException {
+		// 発火数 +10% は許容範囲 (20%) 内
+		seed(result.getFiringsPerScenario() / 1.1);
+		baseline.assertNoRegression(result, 20);
+		List<PerformanceBaseline.Record> history = baseline.getHistory(SCENARIO);
+		assertThat(history.size(), is(2));
+		assertThat(history.get(1).getFiringsPerScenario(), is(result.getFiringsPerScenario()));
+	}
+
+	@Test
+	public void test_firings_over_tolerance() throws IOException {
+		// 発火数 +50% は回帰
+		seed(result.getFiringsPerScenario() / 1.5);
+		try {
+			baseline.assertNoRegression(result, 20);
+			fail("the increase of the rule firings must fail");
+		} catch (AssertionError e) {
+			assertThat(e.getMessage(), containsString("rule firings"));
+		}
+		// 回帰した結果は記録されないので、再実行しても失敗する
+		assertThat(baseline.getHistory(SCENARIO).size(), is(1));
+		try {
+			baseline.assertNoRegression(result, 20);
+			fail("the regression must not be accepted by running again");
+		} catch (AssertionError e) {
+			// expected
+		}
+		assertThat(baseline.getHistory(SCENARIO).size(), is(1));
+		// 許容範囲を広げれば回帰ではない
+		baseline.assertNoRegression(result, 60);
+		assertThat(baseline.getHistory(SCENARIO).size(), is(2));
+	}
+
+	@Test
+	public void test_update() throws IOException {
+		seed(result.getFiringsPerScenario() / 1.5);
+		String update = System.getProperty(PerformanceBaseline.updateProperty);
+		try {
+			System.setProperty(PerformanceBaseline.updateProperty, "true");
+			// 回帰を新しいベースラインとして記録
+			baseline.assertNoRegression(result, 20);
+		} finally {
+			if (update == null) {
+				System.clearProperty(PerformanceBaseline.updateProperty);
+			} else {
+				System.setProperty(PerformanceBaseline.updateProperty, update);
+			}
+		}
+		assertThat(baseline.getHistory(SCENARIO).size(), is(2));
+		// 以降は新しいベースラインと比較する
+		baseline.assertNoRegression(result, 20);
+		assertThat(baseline.getHistory(SCENARIO).size(), is(3));
+	}
+
+	/**
+	 * write a baseline record of the scenario, its execute time never regresses.
+	 * @param firingsPerScenario rule firings of the baseline
+	 */
+	private void seed(double firingsPerScenario) throws IOException {
+		String record = String.join(",", "2015/01/01 00:00:00", SCENARIO, result.isStateful() ? "stateful" : "stateless",
+				"seeded", PerformanceBaseline.getFixtureHash(SCENARIO), "1",
+				String.valueOf(Long.MAX_VALUE / 4), String.valueOf(Long.MAX_VALUE / 4), "0", "0",
+				String.valueOf(firingsPerScenario), "-1");
+		Files.write(file.toPath(), (HEADER + record + "\n").getBytes(StandardCharsets.UTF_8));
+		assertThat(baseline.getHistory(SCENARIO).size(), is(1));
+	}
+}
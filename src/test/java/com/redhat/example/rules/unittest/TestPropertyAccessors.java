@@ -0,0 +1,168 @@
+package com.redhat.example.rules.unittest;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.example.fact.ExampleFactChild;
+import com.redhat.example.fact.ExampleFactParent;
+
+/**
+ * PropertyAccessors must read and write the same values, and throw the same exceptions, as PropertyUtils.
+ */
+public class TestPropertyAccessors {
+	private ExampleFactParent parent;
+	private ExampleFactChild orphan;
+	private Map<String, Object> map;
+
+	@Before
+	public void init() {
+		PropertyAccessors.clearCache();
+		parent = createParent();
+		orphan = new ExampleFactChild();
+		orphan.setId("c9");
+		map = new HashMap<String, Object>();
+		map.put("parent", parent);
+		map.put("name", "map");
+		map.put("nothing", null);
+	}
+
+	@Test
+	public void test_get_nested() {
+		assertSameGet(parent, "childList[0].parent.name", "p1");
+		assertSameGet(parent.getChildList().get(1), "parent.id", "P1");
+		assertSameGet(parent, "childList[1].attrBigDecimal", new BigDecimal("2"));
+	}
+
+	@Test
+	public void test_get_indexed() {
+		assertSameGet(parent, "childList[1].strList[0]", "b");
+		assertSameGet(parent.getChildList().get(0), "strList[1]", "y");
+		// 範囲外
+		assertSameGet(parent, "childList[2]", null);
+		assertSameGet(parent.getChildList().get(0), "strList[-1]", null);
+	}
+
+	@Test
+	public void test_get_map() {
+		assertSameGet(map, "name", "map");
+		assertSameGet(map, "parent.childList[0].id", "c1");
+		assertSameGet(map, "nothing", null);
+		assertSameGet(map, "unknown", null);
+		// Integer キーの Map は文字列のキーでは見つからない
+		assertSameGet(parent, "childList[0].mapAttr.1", null);
+		// mapped property は PropertyUtils に委譲する
+		assertSameGet(parent, "childList[0].mapAttr(1)", null);
+	}
+
+	@Test
+	public void test_get_null_intermediate() {
+		assertSameGet(orphan, "parent.name", null);
+		assertSameGet(map, "nothing.name", null);
+		orphan.setStrList(null);
+		assertSameGet(orphan, "strList[0]", null);
+	}
+
+	@Test
+	public void test_get_inaccessible() {
+		assertSameGet(new Hidden(), "name", null);
+		// public なインタフェースのメソッドで読む
+		assertSameGet(new NamedImpl(), "name", "named");
+		assertSameGet(parent, "unknown", null);
+	}
+
+	@Test
+	public void test_set() {
+		assertSameSet("childList[0].parent.name", "p2");
+		assertSameSet("childList[1].strList[0]", "c");
+		assertSameSet("childList[0].attrBigDecimal", BigDecimal.TEN);
+		// 型の不一致、null の途中、範囲外
+		assertSameSet("childList[0].attrBigDecimal", "10");
+		assertSameSet("childList[1].parent.childList[5].name", "x");
+		assertSameSet("childList[1].unknown", "x");
+		Map<String, Object> expected = new HashMap<String, Object>(map);
+		Map<String, Object> actual = new HashMap<String, Object>(map);
+		assertThat(result(() -> { PropertyAccessors.setProperty(actual, "name", "changed"); return actual; }),
+				is(result(() -> { PropertyUtils.setProperty(expected, "name", "changed"); return expected; })));
+		assertThat(result(() -> { PropertyAccessors.setProperty(orphan, "parent.name", "x"); return null; }),
+				is(result(() -> { PropertyUtils.setProperty(orphan, "parent.name", "x"); return null; })));
+	}
+
+	/**
+	 * get the property by PropertyAccessors and PropertyUtils
+	 * @param value expected value, or null if only the results are compared
+	 */
+	private static void assertSameGet(Object bean, String path, Object value) {
+		Object expected = result(() -> PropertyUtils.getProperty(bean, path));
+		Object actual = result(() -> PropertyAccessors.getProperty(bean, path));
+		assertThat(path, actual, is(expected));
+		if (value != null) {
+			assertThat(path, actual, is(value));
+		}
+	}
+
+	/**
+	 * set the property of two copies of the beans by PropertyAccessors and PropertyUtils
+	 */
+	private static void assertSameSet(String path, Object value) {
+		ExampleFactParent expected = createParent();
+		ExampleFactParent actual = createParent();
+		Object expectedResult = result(() -> { PropertyUtils.setProperty(expected, path, value); return null; });
+		Object actualResult = result(() -> { PropertyAccessors.setProperty(actual, path, value); return null; });
+		assertThat(path, actualResult, is(expectedResult));
+		assertThat(path, result(() -> PropertyUtils.getProperty(actual, path)),
+				is(result(() -> PropertyUtils.getProperty(expected, path))));
+	}
+
+	/**
+	 * @return the value, or the class of the exception
+	 */
+	private static Object result(Callable<Object> call) {
+		try {
+			return call.call();
+		} catch (Exception e) {
+			return e.getClass();
+		}
+	}
+
+	private static ExampleFactParent createParent() {
+		ExampleFactParent parent = new ExampleFactParent();
+		parent.setId("P1");
+		parent.setName("p1");
+		for (int i = 1; i <= 2; i++) {
+			ExampleFactChild child = new ExampleFactChild();
+			child.setId("c" + i);
+			child.setParent(parent);
+			child.setAttrBigDecimal(new BigDecimal(i));
+			child.getStrList().add(i == 1 ? "x" : "b");
+			child.getStrList().add("y");
+			parent.getChildList().add(child);
+		}
+		return parent;
+	}
+
+	public interface Named {
+		String getName();
+	}
+
+	private static class NamedImpl implements Named {
+		@Override
+		public String getName() {
+			return "named";
+		}
+	}
+
+	static class Hidden {
+		public String getName() {
+			return "hidden";
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.redhat.example.rules.unittest;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
+
+import org.junit.Test;
+import org.kie.api.KieServices;
+import org.kie.api.runtime.KieSession;
+
+import com.redhat.example.fact.ExampleValidationResult;
+
+/**
+ * RuleFactWatchers must route the match objects to the watchers as each watcher received all of them.
+ */
+public class TestRuleFactWatchers {
+	private static final String FILE_LIST = "testdata/parentChild2/Files_1.csv";
+	private static final String EX_FILE = "testdata/parentChild2/ex_ValidationResult_1.csv";
+
+	@Test
+	public void test_custom_predicate_receives_all_classes() {
+		Set<Class<?>> tested = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+		BiPredicate<ExpectedRecord, Object> predicate = (expect, obj) -> {
+			tested.add(obj.getClass());
+			return false;
+		};
+		List<ExpectedRecord> expectedRecords = CsvTestHelper.readExpectedCsv(EX_FILE, ExampleValidationResult.class, null);
+		RuleFactWatcher custom = new RuleFactWatcher(expectedRecords, ExampleValidationResult.class, null, false,
+				predicate, new HashMap<String, Boolean>());
+		RuleFactWatchers watchers = new RuleFactWatchers();
+		watchers.add(custom);
+		run(watchers);
+		// 独自の述語はクラスで事前に絞り込まれない
+		assertThat(tested, hasItem(ExampleValidationResult.class));
+		assertThat(tested, hasItem(typeCompatibleWith(Map.class)));
+	}
+
+	@Test
+	public void test_targets() {
+		RuleFactWatcher helper = CsvTestHelper.createRuleFactWatcher(EX_FILE, ExampleValidationResult.class);
+		assertThat(helper.isTarget(ExampleValidationResult.class), is(true));
+		// CsvTestHelper の述語はクラスを確認するので、他のクラスは渡さない
+		assertThat(helper.isTarget(HashMap.class), is(false));
+		// null は "Skipping a null record" を出力するために渡す
+		assertThat(helper.isTarget(null), is(true));
+
+		RuleFactWatcher custom = new RuleFactWatcher(helper.expectedRecords, ExampleValidationResult.class, null, false,
+				(expect, obj) -> false, new HashMap<String, Boolean>());
+		assertThat(custom.isTarget(HashMap.class), is(true));
+		assertThat(custom.isTarget(null), is(true));
+	}
+
+	private static void run(RuleFactWatchers watchers) {
+		Map<String, List<?>> inputMap = CsvTestHelper.loadInputMap(FILE_LIST);
+		Map<String, List<?>> parameterMap = new HashMap<String, List<?>>();
+		parameterMap.put("ExampleFactParent", inputMap.get("parent"));
+		parameterMap.put("ExampleValidationResult", new LinkedList<Object>());
+		KieSession kieSession = KieServices.Factory.get().getKieClasspathContainer().newKieSession();
+		try {
+			watchers.setRuntime(kieSession);
+			kieSession.insert(parameterMap);
+			kieSession.fireAllRules();
+			watchers.resetRuntime();
+		} finally {
+			kieSession.dispose();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.redhat.example.rules.unittest;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kie.api.KieServices;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+import com.redhat.example.rules.unittest.RuleTraceReader.TraceEvent;
+
+/**
+ * RuleTraceReader must read the events recorded by RuleTraceRecorder<BR>
+ * as RuleExecutionLogger and RuleFactWatcher log them.
+ */
+public class TestRuleTraceRecorder {
+	private static final String FILE_LIST = "testdata/parentChild2/Files_1.csv";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_same_as_log() throws IOException {
+		File trace = folder.newFile("trace.bin");
+		List<String> logLines = run(trace);
+		List<String> traceLines = new ArrayList<String>();
+		try (RuleTraceReader reader = new RuleTraceReader(trace.getPath())) {
+			// 挿入イベントはログに出力されない
+			for (TraceEvent event : reader.read(event -> !event.isFactInserted())) {
+				traceLines.addAll(event.toLogLines());
+			}
+		}
+		assertThat(traceLines.size(), is(greaterThan(0)));
+		assertThat(traceLines, is(logLines));
+	}
+
+	@Test
+	public void test_filters() throws IOException {
+		File trace = folder.newFile("trace.bin");
+		run(trace);
+		List<TraceEvent> events = readAll(trace, null);
+		TraceEvent attribute = null;
+		for (TraceEvent event : events) {
+			if (event.isAttribute() && !StringUtils.isEmpty(event.getAttrName())) {
+				attribute = event;
+				break;
+			}
+		}
+		assertThat(attribute, is(notNullValue()));
+		String ruleName = attribute.getRuleName();
+		String className = attribute.getClassName();
+		int identity = attribute.getIdentity();
+		String attrName = attribute.getAttrName();
+
+		// 発火・属性のイベントをルール名で
+		List<TraceEvent> byRule = readAll(trace, RuleTraceReader.byRule(ruleName));
+		assertThat(toLogLines(byRule), is(toLogLines(filter(events, event -> ruleName.equals(event.getRuleName())))));
+		assertThat(byRule, hasItem(hasProperty("ruleFired", is(true))));
+		assertThat(byRule, hasItem(hasProperty("attribute", is(true))));
+
+		// ファクトのイベントをクラス名と identity で
+		List<TraceEvent> byFact = readAll(trace, RuleTraceReader.byFact(className, identity));
+		assertThat(toLogLines(byFact), is(toLogLines(filter(events,
+				event -> className.equals(event.getClassName()) && event.getIdentity() == identity))));
+		for (TraceEvent event : byFact) {
+			assertThat(event.getIdentity(), is(identity));
+		}
+
+		// 属性のイベントだけを属性名で
+		List<TraceEvent> byAttribute = readAll(trace, RuleTraceReader.byAttribute(attrName));
+		assertThat(toLogLines(byAttribute), is(toLogLines(filter(events,
+				event -> event.isAttribute() && attrName.equals(event.getAttrName())))));
+		for (TraceEvent event : byAttribute) {
+			assertThat(event.isAttribute(), is(true));
+		}
+
+		assertThat(readAll(trace, RuleTraceReader.byRule("no such rule")), is(empty()));
+	}
+
+	@Test
+	public void test_region_rollover() throws IOException {
+		File trace = folder.newFile("trace.bin");
+		List<String> expected = new ArrayList<String>();
+		// 64バイトの領域を跨ぐレコード、領域より大きいレコード
+		try (RuleTraceRecorder recorder = new RuleTraceRecorder(trace.getPath(), 64)) {
+			for (int i = 0; i < 200; i++) {
+				String value = StringUtils.repeat("値" + i, (i % 40 == 39) ? 100 : i % 7);
+				recorder.attribute("rule" + (i % 3), "Fact", i, "attr", null, i % 2 == 0, "before", value, value, true);
+				expected.add(value);
+			}
+		}
+		List<String> actual = new ArrayList<String>();
+		for (TraceEvent event : readAll(trace, null)) {
+			assertThat(event.getRuleName(), is("rule" + (actual.size() % 3)));
+			assertThat(event.getIdentity(), is(actual.size()));
+			actual.add(StringUtils.defaultString(event.getActualValue()));
+		}
+		assertThat(actual, is(expected));
+		// ファイルは終端(長さ 0)の直後で切り詰められる
+		try (RandomAccessFile file = new RandomAccessFile(trace, "r")) {
+			file.seek(file.length() - 4);
+			assertThat(file.readInt(), is(0));
+		}
+	}
+
+	/**
+	 * run the rules of parentChild2 with the loggers, the watchers and the recorder.
+	 * @return lines logged by RuleExecutionLogger and RuleFactWatcher
+	 */
+	private List<String> run(File trace) throws IOException {
+		Map<String, List<?>> inputMap = CsvTestHelper.loadInputMap(FILE_LIST);
+		Map<String, List<?>> parameterMap = new HashMap<String, List<?>>();
+		parameterMap.put("ExampleFactParent", inputMap.get("parent"));
+		parameterMap.put("ExampleValidationResult", new LinkedList<Object>());
+
+		ListAppender<ILoggingEvent> appender = new ListAppender<ILoggingEvent>();
+		appender.start();
+		Logger[] loggers = {
+				(Logger)LoggerFactory.getLogger(RuleExecutionLogger.class),
+				(Logger)LoggerFactory.getLogger(RuleFactWatcher.class) };
+		KieSession kieSession = KieServices.Factory.get().getKieClasspathContainer().newKieSession();
+		try (RuleTraceRecorder recorder = new RuleTraceRecorder(trace.getPath())) {
+			for (Logger logger : loggers) {
+				logger.addAppender(appender);
+			}
+			// ログと同じ順に記録するため、リスナーを同じ順に登録する
+			recorder.setRuntime(kieSession);
+			kieSession.addEventListener(new RuleExecutionLogger());
+			RuleFactWatchers watchers = CsvTestHelper.createRuleFactWatchers(FILE_LIST);
+			watchers.setTraceRecorder(recorder);
+			watchers.setRuntime(kieSession);
+			kieSession.insert(parameterMap);
+			kieSession.fireAllRules();
+			watchers.resetRuntime();
+		} finally {
+			for (Logger logger : loggers) {
+				logger.detachAppender(appender);
+			}
+			kieSession.dispose();
+		}
+		List<String> lines = new ArrayList<String>();
+		for (ILoggingEvent event : appender.list) {
+			lines.add(event.getFormattedMessage());
+		}
+		return lines;
+	}
+
+	private static List<TraceEvent> readAll(File trace, Predicate<TraceEvent> filter) throws IOException {
+		try (RuleTraceReader reader = new RuleTraceReader(trace.getPath())) {
+			return reader.read(filter);
+		}
+	}
+
+	private static List<TraceEvent> filter(List<TraceEvent> events, Predicate<TraceEvent> filter) {
+		List<TraceEvent> filtered = new ArrayList<TraceEvent>();
+		for (TraceEvent event : events) {
+			if (filter.test(event)) {
+				filtered.add(event);
+			}
+		}
+		assertThat(filtered, is(not(empty())));
+		return filtered;
+	}
+
+	private static List<String> toLogLines(List<TraceEvent> events) {
+		List<String> lines = new ArrayList<String>();
+		for (TraceEvent event : events) {
+			lines.addAll(event.toLogLines());
+		}
+		return lines;
+	}
+}
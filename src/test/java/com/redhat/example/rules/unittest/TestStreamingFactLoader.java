@@ -0,0 +1,143 @@
+package com.redhat.example.rules.unittest;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.redhat.example.fact.ExampleFactChild;
+import com.redhat.example.fact.ExampleFactParent;
+import com.redhat.example.json.JsonUtils;
+
+/**
+ * the streaming loaders must load the same facts as loadCsv / loadInputMap.
+ */
+public class TestStreamingFactLoader {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_loadCsvAsStream() throws Exception {
+		String fileName = "testdata/parentChild2/in_ChildFact_1.csv";
+		List<ExampleFactChild> expected = CsvTestHelper.loadCsv(fileName, ExampleFactChild.class, true);
+		try (Stream<ExampleFactChild> stream = CsvTestHelper.loadCsvAsStream(fileName, ExampleFactChild.class, true)) {
+			assertThat(toJson(stream.collect(Collectors.toList())), is(toJson(expected)));
+		}
+	}
+
+	@Test
+	public void test_parentChild2() throws Exception {
+		assertSameAsInputMap("testdata/parentChild2/Files_1.csv");
+	}
+
+	@Test
+	public void test_map2() throws Exception {
+		assertSameAsInputMap("testdata/map2/Files_1.csv");
+	}
+
+	@Test
+	public void test_checkByIndex() throws Exception {
+		assertSameAsInputMap("testdata/checkByIndex/Files_1.csv");
+	}
+
+	@Test
+	public void test_not_sorted_children() throws Exception {
+		// 子ファイルの行を逆順にして parent# を降順にする
+		String fileList = copyScenario("parentChild2", "in_ChildFact_1.csv");
+		List<Object> facts = assertSameAsInputMap(fileList);
+		ExampleFactParent parent = (ExampleFactParent)facts.get(1);
+		assertThat(parent.getChildList().size(), is(2));
+		for (ExampleFactChild child : parent.getChildList()) {
+			assertThat(child.getParent(), is(sameInstance(parent)));
+		}
+	}
+
+	@Test
+	public void test_not_sorted_grandchildren() throws Exception {
+		// 子ファイルを逆順にすると、孫ファイルの親(子の行)の順序も崩れる
+		assertSameAsInputMap(copyScenario("checkByIndex", "in_ChildFact_1.csv"));
+		assertSameAsInputMap(copyScenario("checkByIndex", "in_String_1.csv", "in_Date_1.csv"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_deleteAfterFire_requires_fireEachBatch() {
+		new StreamingFactLoader("testdata/parentChild2/Files_1.csv", 10).insertInto(null, false, true);
+	}
+
+	/**
+	 * load the root facts by batches of 2 facts, and check they are same as loadInputMap.
+	 * @return the root facts
+	 */
+	private List<Object> assertSameAsInputMap(String fileList) throws Exception {
+		Map<String, List<?>> inputMap = CsvTestHelper.loadInputMap(fileList);
+		// root paths in the order of "path"
+		List<String> roots = new ArrayList<String>();
+		for (String path : inputMap.keySet()) {
+			if (!inputMap.containsKey(CsvTestHelper.separateParentPath(path)[0])) {
+				roots.add(path);
+			}
+		}
+		Collections.sort(roots);
+		List<Object> expected = new ArrayList<Object>();
+		for (String root : roots) {
+			expected.addAll(inputMap.get(root));
+		}
+		List<Object> actual = new ArrayList<Object>();
+		List<Integer> batchSizes = new ArrayList<Integer>();
+		long count = CsvTestHelper.loadInputMapAsStream(fileList, 2).load(batch -> {
+			batchSizes.add(batch.size());
+			actual.addAll(batch);
+		});
+		assertThat(count, is((long)expected.size()));
+		for (int size : batchSizes) {
+			assertThat(size, is(lessThanOrEqualTo(2)));
+		}
+		assertThat(toJson(actual), is(toJson(expected)));
+		return actual;
+	}
+
+	/**
+	 * copy a scenario of testdata, and reverse the rows of the files.
+	 * @return path of Files_1.csv of the copy
+	 */
+	private String copyScenario(String scenario, String... reversedFiles) throws IOException {
+		File target = folder.newFolder();
+		for (File file : new File("testdata", scenario).listFiles()) {
+			Files.copy(file.toPath(), new File(target, file.getName()).toPath());
+		}
+		for (String name : reversedFiles) {
+			File file = new File(target, name);
+			// ISO-8859-1 keeps the bytes of Shift_JIS
+			List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1);
+			List<String> rows = new ArrayList<String>(lines.subList(1, lines.size()));
+			Collections.reverse(rows);
+			List<String> reversed = new ArrayList<String>(Arrays.asList(lines.get(0)));
+			reversed.addAll(rows);
+			Files.write(file.toPath(), reversed, StandardCharsets.ISO_8859_1);
+		}
+		return new File(target, "Files_1.csv").getPath();
+	}
+
+	private static String toJson(List<?> facts) throws Exception {
+		StringBuilder json = new StringBuilder();
+		for (Object fact : facts) {
+			json.append(JsonUtils.fact2Json(fact)).append('\n');
+		}
+		return json.toString();
+	}
+}
@@ -4,10 +4,12 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BiFunction;
 
 import static org.junit.Assert.*;
@@ -28,9 +30,12 @@ import com.redhat.example.fact.ExampleFactParent;
 import com.redhat.example.fact.ExampleValidationResult;
 import com.redhat.example.fact.plan.CustomerProfileAll;
 import com.redhat.example.json.JsonUtils;
+import com.redhat.example.rules.unittest.CsvFixtureGenerator;
 import com.redhat.example.rules.unittest.CsvTestHelper;
+import com.redhat.example.rules.unittest.PerformanceBaseline;
 import com.redhat.example.rules.unittest.RuleFactWatcher;
 import com.redhat.example.rules.unittest.RuleFactWatchers;
+import com.redhat.example.rules.unittest.ScenarioRunner;
 import com.redhat.example.rules.unittest.TestCaseBase;
 
 import org.slf4j.Logger;
@@ -105,6 +110,41 @@ public class TestExampleParentChild extends TestCaseBase {
 				"parent");
 	}
 	
+	/**
+	 * run the scenario of test_with_csv_v2() as a performance test.
+	 */
+	@Test
+	public void test_scenario_runner() {
+		ScenarioRunner.ScenarioBinder binder = new ScenarioRunner.ScenarioBinder() {
+			@Override
+			public List<Object> createFacts(Map<String, List<?>> inputMap, Map<String, List<?>> actualsMap) {
+				Map<String, Object> parameterMap = new LinkedHashMap<String, Object>();
+				parameterMap.put("ExampleFactParent", inputMap.get("parent"));
+				LinkedList<ExampleValidationResult> results =
+						new LinkedList<ExampleValidationResult>();
+				parameterMap.put("ExampleValidationResult", results);
+				// 実行後にチェックするリスト
+				actualsMap.put("parent", inputMap.get("parent"));
+				actualsMap.put("validationResult", results);
+				List<Object> facts = new ArrayList<Object>();
+				facts.add(parameterMap);
+				return facts;
+			}
+		};
+		// 実行結果を履歴に記録 (回帰の判定は TestPerformanceBaseline で確認)
+		PerformanceBaseline baseline = new PerformanceBaseline("target/performance-baseline.csv");
+		for (boolean stateful : new boolean[] { false, true }) {
+			ScenarioRunner.ScenarioResult result =
+					new ScenarioRunner(this, "testdata/parentChild2/Files_1.csv", binder)
+					.setWarmUpIterations(1).setMeasurementIterations(3).setStateful(stateful).run();
+			assertThat(result.getScenarios(), is(3L));
+			assertThat(result.getFirings(), greaterThan(0L));
+			int recorded = baseline.getHistory(result.getScenario()).size();
+			baseline.record(result);
+			assertThat(baseline.getHistory(result.getScenario()).size(), is(recorded + 1));
+		}
+	}
+
 	@Test
 	public void test_null_value_ignore() {
 		// 指定がない属性を上書きしない
@@ -190,6 +230,59 @@ public class TestExampleParentChild extends TestCaseBase {
 				"validationResult");
 	}
 	
+	@Test
+	public void test_loadInputMap_parallel() {
+		Map<String, List<?>> sequentialMap =
+				CsvTestHelper.loadInputMap("testdata/immutableList/Files_1.csv");
+		Map<String, List<?>> parallelMap =
+				CsvTestHelper.loadInputMap("testdata/immutableList/Files_1.csv", true);
+		// 並列ロードでも同じ順序・同じ親子関係になること
+		assertThat(new ArrayList<String>(parallelMap.keySet()), is(new ArrayList<String>(sequentialMap.keySet())));
+		@SuppressWarnings("unchecked")
+		List<ExampleFactParent> sequentialList = (List<ExampleFactParent>) sequentialMap.get("parent");
+		@SuppressWarnings("unchecked")
+		List<ExampleFactParent> parallelList = (List<ExampleFactParent>) parallelMap.get("parent");
+		assertThat(parallelList.size(), is(sequentialList.size()));
+		for (int i = 0; i < sequentialList.size(); i++) {
+			List<ExampleFactChild> sequentialChildren = sequentialList.get(i).getChildList();
+			List<ExampleFactChild> parallelChildren = parallelList.get(i).getChildList();
+			assertThat(parallelChildren.size(), is(sequentialChildren.size()));
+			for (int j = 0; j < sequentialChildren.size(); j++) {
+				assertThat(parallelChildren.get(j).getId(), is(sequentialChildren.get(j).getId()));
+				assertThat(parallelChildren.get(j).getStrList(), is(sequentialChildren.get(j).getStrList()));
+				assertThat(parallelChildren.get(j).getDateList(), is(sequentialChildren.get(j).getDateList()));
+			}
+		}
+	}
+
+	@Test
+	public void test_fixture_generator() {
+		// 親3件(子1件,2件,0件)を30件に拡大する
+		String fileList = new CsvFixtureGenerator("testdata/parentChild2/Files_1.csv")
+				.setRows(30).generate("target/generated-fixtures/parentChild2");
+		Map<String, List<?>> inputMap = CsvTestHelper.loadInputMap(fileList);
+		@SuppressWarnings("unchecked")
+		List<ExampleFactParent> parentList = (List<ExampleFactParent>) inputMap.get("parent");
+		assertThat(parentList.size(), is(30));
+		Set<String> parentIds = new HashSet<String>();
+		Set<String> childIds = new HashSet<String>();
+		for (int i = 0; i < parentList.size(); i++) {
+			ExampleFactParent parent = parentList.get(i);
+			parentIds.add(parent.getId());
+			// 子の件数と親子関係が元データと同じになること
+			List<ExampleFactChild> children = parent.getChildList();
+			assertThat(children == null ? 0 : children.size(), is(new int[] { 1, 2, 0 }[i % 3]));
+			if (children != null) {
+				for (ExampleFactChild child : children) {
+					assertThat(child.getId(), startsWith("p" + (i % 3 + 1) + "c"));
+					childIds.add(child.getId());
+				}
+			}
+		}
+		assertThat(parentIds.size(), is(30));
+		assertThat(childIds.size(), is(30));
+	}
+
 	@Test
 	public void test_Map() {
 		Map<String, List<?>> inputMap =